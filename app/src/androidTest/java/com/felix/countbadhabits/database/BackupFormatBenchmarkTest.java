@@ -0,0 +1,117 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.backup.DataExporter;
+import com.felix.countbadhabits.backup.DataImporter;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 备份格式对比：五年合成数据分别导出为CSV和二进制格式，比较文件体积、导出（编码）和导入到空数据库（解码并写入）的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class BackupFormatBenchmarkTest {
+    private static final String TAG = "BackupFormatBenchmark";
+    private static final String TEST_DB = "backup-format-test.db";
+    private static final String IMPORT_DB = "backup-format-import-test.db";
+    private static final int YEARS = 5;
+    private static final String[] DESCRIPTIONS = {null, "无具体描述", "饭后", "工作压力大", "和朋友一起", "睡前"};
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(IMPORT_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(IMPORT_DB);
+    }
+
+    @Test
+    public void binaryComparedWithCsv() throws Exception {
+        int total = insertFiveYears();
+        DataExporter exporter = new DataExporter(helper);
+
+        StringBuilder report = new StringBuilder(String.format(Locale.US, "%d条记录:", total));
+        for (DataExporter.Format format : new DataExporter.Format[]{DataExporter.Format.CSV,
+                DataExporter.Format.BINARY}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            assertEquals(total, exporter.export(out, format, null));
+            long encodeNanos = System.nanoTime() - start;
+            byte[] bytes = out.toByteArray();
+
+            context.deleteDatabase(IMPORT_DB);
+            DatabaseHelper importHelper = new DatabaseHelper(context, IMPORT_DB);
+            try {
+                start = System.nanoTime();
+                DataImporter.Result result = new DataImporter(importHelper).importFrom(
+                        new ByteArrayInputStream(bytes), 0, null);
+                long decodeNanos = System.nanoTime() - start;
+                assertEquals(total, result.getImported());
+
+                report.append(String.format(Locale.US, " %s %dKB (导出 %dms, 导入 %dms);", format.name(),
+                        bytes.length / 1024, encodeNanos / 1_000_000, decodeNanos / 1_000_000));
+            } finally {
+                importHelper.close();
+            }
+        }
+        Log.i(TAG, report.toString());
+    }
+
+    /**
+     * 三个习惯五年的记录，每个习惯每天 0~dailyLimit+2 条
+     */
+    private int insertFiveYears() {
+        BadHabitDao habitDao = new BadHabitDao(helper);
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        Random random = new Random(42);
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        int total = 0;
+        for (BadHabit habit : Arrays.asList(new BadHabit("抽烟", 5), new BadHabit("刷手机", 10),
+                new BadHabit("熬夜", 1))) {
+            long habitId = habitDao.insertHabit(habit);
+            List<TriggerRecord> records = new ArrayList<>();
+            for (long day = firstDay; day < firstDay + YEARS * 365; day++) {
+                int count = random.nextInt(habit.getDailyLimit() + 3);
+                for (int i = 0; i < count; i++) {
+                    String dateTime = DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY
+                            + random.nextInt(86400) * 1000L);
+                    records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                            dateTime, DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)], 0));
+                }
+            }
+            total += recordDao.insertRecords(records);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,109 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 批量插入对比：同一批记录分别逐条 insertRecord（每条一个事务）和一次 insertRecords（整批一个事务），
+ * 在空数据库中记录 1万/10万 条的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchInsertBenchmarkTest {
+    private static final String TAG = "BatchInsertBenchmark";
+    private static final String TEST_DB = "batch-insert-test.db";
+    private static final int[] SIZES = {10_000, 100_000};
+    private static final String[] DESCRIPTIONS = {null, "饭后", "工作压力大", "和朋友一起", "睡前"};
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        if (helper != null) {
+            helper.close();
+        }
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void batchComparedWithPerRow() {
+        for (int size : SIZES) {
+            long perRowNanos = insertInFreshDatabase(size, false);
+            long batchNanos = insertInFreshDatabase(size, true);
+            Log.i(TAG, String.format(Locale.US, "%d 条记录: 逐条 insertRecord %dms, insertRecords %dms",
+                    size, perRowNanos / 1_000_000, batchNanos / 1_000_000));
+        }
+    }
+
+    /**
+     * 重建数据库后插入 size 条记录，返回插入耗时
+     */
+    private long insertInFreshDatabase(int size, boolean batch) {
+        if (helper != null) {
+            helper.close();
+        }
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+
+        long habitId = new BadHabitDao(helper).insertHabit(new BadHabit("抽烟", 10));
+        List<TriggerRecord> records = generateRecords(habitId, size);
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+
+        long start = System.nanoTime();
+        if (batch) {
+            assertEquals(size, recordDao.insertRecords(records));
+        } else {
+            for (TriggerRecord record : records) {
+                assertTrue(recordDao.insertRecord(record) > 0);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(size, recordDao.getTotalRecordCount());
+        return elapsed;
+    }
+
+    /**
+     * 从2020年起按时间顺序生成记录，每天 1~20 条
+     */
+    private static List<TriggerRecord> generateRecords(long habitId, int size) {
+        Random random = new Random(size);
+        long day = DateUtils.toEpochDay(2020, 1, 1);
+        List<TriggerRecord> records = new ArrayList<>(size);
+        while (records.size() < size) {
+            int count = Math.min(1 + random.nextInt(20), size - records.size());
+            for (int i = 0; i < count; i++) {
+                String dateTime = DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY + i * 60_000L);
+                records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                        dateTime, DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)], 0));
+            }
+            day++;
+        }
+        return records;
+    }
+}
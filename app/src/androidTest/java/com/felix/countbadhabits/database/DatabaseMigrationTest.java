@@ -0,0 +1,199 @@
+package com.felix.countbadhabits.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.TriggerRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据库迁移测试：从 v1 升级到最新版本后数据不丢失
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseMigrationTest {
+    private static final String TEST_DB = "migration-test.db";
+
+    // v1 的建表语句，需保持与最初发布版本一致
+    private static final String V1_CREATE_BAD_HABITS = "CREATE TABLE bad_habits ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "name TEXT NOT NULL, "
+            + "daily_limit INTEGER NOT NULL DEFAULT 5, "
+            + "created_date TEXT NOT NULL, "
+            + "is_active INTEGER DEFAULT 1)";
+    private static final String V1_CREATE_TRIGGER_RECORDS = "CREATE TABLE trigger_records ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "habit_id INTEGER NOT NULL, "
+            + "trigger_date TEXT NOT NULL, "
+            + "trigger_time TEXT NOT NULL, "
+            + "trigger_datetime TEXT NOT NULL, "
+            + "description TEXT, "
+            + "sequence_number INTEGER NOT NULL, "
+            + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE)";
+
+    private static final int HABIT_COUNT = 3;
+    private static final int DAYS = 40;
+    private static final int RECORDS_PER_DAY = 4;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void upgradeFromV1_keepsAllRows() {
+        createV1Database();
+
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertEquals(DatabaseHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(HABIT_COUNT, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_BAD_HABITS));
+        assertEquals(HABIT_COUNT * DAYS * RECORDS_PER_DAY,
+                DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_TRIGGER_RECORDS));
+
+        assertEquals(HABIT_COUNT * DAYS * RECORDS_PER_DAY, DatabaseUtils.longForQuery(db,
+                "SELECT SUM(" + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + ") FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY, null));
+
+        assertEquals(0, new SummaryDao(helper).verifyAll());
+
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        assertEquals(RECORDS_PER_DAY, recordDao.getRecordCountByDate(1, "2025-01-05"));
+        List<TriggerRecord> records = recordDao.getRecordsByDate(2, "2025-02-01");
+        assertEquals(RECORDS_PER_DAY, records.size());
+        assertEquals("09:15", records.get(0).getTriggerTime());
+        assertEquals("2025-02-01 09:15:00", records.get(0).getTriggerDateTime());
+        assertEquals("描述1", records.get(0).getDescription());
+        // 重复的描述合并为字典中的一行，读取时共用同一个String
+        assertEquals(RECORDS_PER_DAY, DatabaseUtils.queryNumEntries(db, DatabaseHelper.TABLE_DESCRIPTIONS));
+        assertSame(records.get(0).getDescription(), recordDao.getRecordsByDate(1, "2025-01-05").get(0).getDescription());
+        assertEquals(DAYS, recordDao.searchRecords("描述1", 1, null, DAYS * RECORDS_PER_DAY).getRecords().size());
+        assertEquals(Integer.valueOf(RECORDS_PER_DAY * 31), recordDao.getYearlyStatistics(3, 2025).get("2025-01"));
+
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromV1_deletesHabitInBatches() {
+        createV1Database();
+
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        BadHabitDao habitDao = new BadHabitDao(helper);
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+
+        assertEquals(DAYS * RECORDS_PER_DAY, habitDao.markPendingDelete(1));
+        assertEquals(HABIT_COUNT - 1, habitDao.getAllActiveHabits().size());
+        assertEquals(1, habitDao.getPendingDeleteHabitIds().size());
+
+        int batches = 0;
+        while (recordDao.deleteHabitRecords(1, 100) > 0) {
+            batches++;
+        }
+        assertEquals((DAYS * RECORDS_PER_DAY + 99) / 100, batches);
+        assertEquals(1, habitDao.permanentDeleteHabit(1));
+
+        assertTrue(habitDao.getPendingDeleteHabitIds().isEmpty());
+        assertEquals(0, new SummaryDao(helper).verifyAll());
+
+        helper.close();
+    }
+
+    @Test
+    public void upgradeFromV1_createsIndexes() {
+        createV1Database();
+
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_HABIT_DAY));
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_DESCRIPTION));
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_DAY));
+        assertFalse(indexExists(db, "idx_trigger_records_habit_description"));
+
+        helper.close();
+    }
+
+    @Test
+    public void freshInstall_matchesMigratedSchema() {
+        DatabaseHelper helper = new DatabaseHelper(context, TEST_DB);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_HABIT_DAY));
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_DESCRIPTION));
+        assertTrue(indexExists(db, DatabaseHelper.INDEX_RECORDS_DAY));
+        assertFalse(indexExists(db, "idx_trigger_records_habit_description"));
+
+        helper.close();
+    }
+
+    private void createV1Database() {
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        db.execSQL(V1_CREATE_BAD_HABITS);
+        db.execSQL(V1_CREATE_TRIGGER_RECORDS);
+
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int habit = 1; habit <= HABIT_COUNT; habit++) {
+                values.clear();
+                values.put("name", "习惯" + habit);
+                values.put("daily_limit", 5);
+                values.put("created_date", "2025-01-01");
+                values.put("is_active", 1);
+                db.insert("bad_habits", null, values);
+
+                for (int day = 0; day < DAYS; day++) {
+                    String date = String.format("2025-%02d-%02d", 1 + day / 31, 1 + day % 31);
+                    for (int seq = 1; seq <= RECORDS_PER_DAY; seq++) {
+                        String time = String.format("%02d:%02d", 8 + seq, 15);
+                        values.clear();
+                        values.put("habit_id", habit);
+                        values.put("trigger_date", date);
+                        values.put("trigger_time", time);
+                        values.put("trigger_datetime", date + " " + time + ":00");
+                        values.put("description", "描述" + seq);
+                        values.put("sequence_number", seq);
+                        db.insert("trigger_records", null, values);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        db.setVersion(1);
+        db.close();
+    }
+
+    private boolean indexExists(SQLiteDatabase db, String indexName) {
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'index' AND name = ?",
+                new String[]{indexName});
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 描述字典测试：重复描述只存一份、读取时共用String、清理未引用的描述，
+ * 以及在合成数据上与每行保存描述文本（v8表结构）对比数据库大小和堆占用
+ */
+@RunWith(AndroidJUnit4.class)
+public class DescriptionDictionaryTest {
+    private static final String TAG = "DescriptionDictionaryTest";
+    private static final String TEST_DB = "description-test.db";
+    private static final String INLINE_DB = "description-inline-test.db";
+    private static final int SYNTHETIC_RECORDS = 100_000;
+    private static final int RECORDS_PER_DAY = 10;
+    // 合成数据的描述：少数几种反复出现，大致符合实际使用
+    private static final String[] DESCRIPTIONS = {
+            "无具体描述", "饭后", "工作压力大", "和朋友聚会", "睡前刷手机", "开会间隙",
+            "在公司楼下", "等公交的时候", "心情不好", "周末在家无聊", "after lunch with colleagues",
+            "waiting for the train", null
+    };
+
+    // v8 的记录表：描述文本直接存在每一行，全文索引按记录建立
+    private static final String[] V8_CREATE_INLINE_RECORDS = {
+            "CREATE TABLE trigger_records ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "habit_id INTEGER NOT NULL, "
+                    + "trigger_day INTEGER NOT NULL, "
+                    + "trigger_millis INTEGER NOT NULL, "
+                    + "description TEXT, "
+                    + "sequence_number INTEGER NOT NULL)",
+            "CREATE INDEX idx_trigger_records_habit_day ON trigger_records (habit_id, trigger_day, trigger_millis)",
+            "CREATE VIRTUAL TABLE trigger_records_fts USING fts4("
+                    + "content=\"trigger_records\", description, tokenize=unicode61)",
+            "CREATE TRIGGER trigger_records_fts_ai AFTER INSERT ON trigger_records"
+                    + " WHEN new.description IS NOT NULL BEGIN"
+                    + " INSERT INTO trigger_records_fts (docid, description) VALUES (new.id, new.description); END"
+    };
+
+    private Context context;
+    private DatabaseHelper helper;
+    private TriggerRecordDao recordDao;
+    private long habitId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(INLINE_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        recordDao = new TriggerRecordDao(helper);
+        habitId = new BadHabitDao(helper).insertHabit(new BadHabit("测试习惯", 5));
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(INLINE_DB);
+    }
+
+    @Test
+    public void duplicateDescriptionsShareOneRowAndString() {
+        recordDao.insertRecord(new TriggerRecord(habitId, "饭后"));
+        recordDao.insertRecord(new TriggerRecord(habitId, "饭后"));
+        recordDao.insertRecord(new TriggerRecord(habitId, null));
+        recordDao.insertRecords(Collections.singletonList(new TriggerRecord(habitId, "饭后")));
+
+        assertEquals(1, DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), DatabaseHelper.TABLE_DESCRIPTIONS));
+
+        // 清空缓存后从字典表读取，同一描述仍只创建一个String
+        helper.getDescriptionCache().invalidateAll();
+        List<TriggerRecord> records = recordDao.getTodayRecords(habitId);
+        assertEquals(4, records.size());
+        String shared = null;
+        int nullCount = 0;
+        for (TriggerRecord record : records) {
+            if (record.getDescription() == null) {
+                nullCount++;
+            } else if (shared == null) {
+                assertEquals("饭后", record.getDescription());
+                shared = record.getDescription();
+            } else {
+                assertSame(shared, record.getDescription());
+            }
+        }
+        assertEquals(1, nullCount);
+    }
+
+    @Test
+    public void unusedDescriptionsAreDeleted() {
+        DescriptionDao descriptionDao = new DescriptionDao(helper);
+        long id = recordDao.insertRecord(new TriggerRecord(habitId, "旧描述"));
+        recordDao.insertRecord(new TriggerRecord(habitId, "保留"));
+
+        TriggerRecord record = recordDao.getTodayRecords(habitId).stream()
+                .filter(r -> r.getId() == id).findFirst().get();
+        record.setDescription("新描述");
+        recordDao.updateRecord(record);
+
+        assertEquals(1, descriptionDao.deleteUnused());
+        assertEquals(2, DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), DatabaseHelper.TABLE_DESCRIPTIONS));
+        assertTrue(recordDao.searchRecords("旧描述", habitId, null, 10).getRecords().isEmpty());
+
+        // 删除后再次使用同一描述时重新加入字典，而不是引用已删除的ID
+        recordDao.insertRecord(new TriggerRecord(habitId, "旧描述"));
+        assertEquals(1, recordDao.searchRecords("旧描述", habitId, null, 10).getRecords().size());
+        assertEquals(0, descriptionDao.deleteUnused());
+    }
+
+    @Test
+    public void sizeAndHeapComparedWithInlineDescriptions() {
+        List<TriggerRecord> records = syntheticRecords();
+        recordDao.insertRecords(records);
+        new ArchiveDao(helper).vacuum();
+        // 字典版数据库还包含汇总表，节省的空间只会被低估
+        long dictionaryBytes = databaseBytes(helper.getWritableDatabase());
+
+        SQLiteDatabase inline = context.openOrCreateDatabase(INLINE_DB, Context.MODE_PRIVATE, null);
+        try {
+            insertInline(inline, records);
+            inline.execSQL("VACUUM");
+            long inlineBytes = databaseBytes(inline);
+
+            String endDate = records.get(records.size() - 1).getTriggerDate();
+            helper.getDescriptionCache().invalidateAll();
+            long dictionaryHeap = retainedDescriptionBytes(descriptionsOf(
+                    recordDao.getRecordsByDateRange(habitId, records.get(0).getTriggerDate(), endDate)));
+            long inlineHeap = retainedDescriptionBytes(readInlineDescriptions(inline));
+
+            Log.i(TAG, String.format("%d条记录, %d种描述: 数据库 %dKB -> %dKB, 描述String %dKB -> %dKB",
+                    SYNTHETIC_RECORDS, DESCRIPTIONS.length - 1, inlineBytes / 1024, dictionaryBytes / 1024,
+                    inlineHeap / 1024, dictionaryHeap / 1024));
+            assertTrue(dictionaryBytes < inlineBytes);
+            assertTrue(dictionaryHeap * 100 < inlineHeap);
+        } finally {
+            inline.close();
+        }
+    }
+
+    private List<TriggerRecord> syntheticRecords() {
+        List<TriggerRecord> records = new ArrayList<>(SYNTHETIC_RECORDS);
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        for (int i = 0; i < SYNTHETIC_RECORDS; i++) {
+            long day = firstDay + i / RECORDS_PER_DAY;
+            long millis = day * DateUtils.MILLIS_PER_DAY + (8 * 60 + (i % RECORDS_PER_DAY) * 60) * 60_000L;
+            String dateTime = DateUtils.formatLocalMillis(millis);
+            // 前几种描述出现得更频繁
+            String description = DESCRIPTIONS[(i * 7 % 13) * (i % 3 + 1) % DESCRIPTIONS.length];
+            records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                    dateTime, description, 0));
+        }
+        return records;
+    }
+
+    private void insertInline(SQLiteDatabase db, List<TriggerRecord> records) {
+        for (String sql : V8_CREATE_INLINE_RECORDS) {
+            db.execSQL(sql);
+        }
+        SQLiteStatement statement = db.compileStatement("INSERT INTO trigger_records "
+                + "(habit_id, trigger_day, trigger_millis, description, sequence_number) VALUES (?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (TriggerRecord record : records) {
+                long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+                statement.bindLong(1, record.getHabitId());
+                statement.bindLong(2, DateUtils.epochDayOfLocalMillis(millis));
+                statement.bindLong(3, millis);
+                if (record.getDescription() != null) {
+                    statement.bindString(4, record.getDescription());
+                } else {
+                    statement.bindNull(4);
+                }
+                statement.bindLong(5, record.getSequenceNumber());
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    private static List<String> readInlineDescriptions(SQLiteDatabase db) {
+        List<String> descriptions = new ArrayList<>(SYNTHETIC_RECORDS);
+        Cursor cursor = db.rawQuery("SELECT description FROM trigger_records ORDER BY id", null);
+        try {
+            while (cursor.moveToNext()) {
+                descriptions.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return descriptions;
+    }
+
+    private static List<String> descriptionsOf(List<TriggerRecord> records) {
+        assertEquals(SYNTHETIC_RECORDS, records.size());
+        List<String> descriptions = new ArrayList<>(records.size());
+        for (TriggerRecord record : records) {
+            descriptions.add(record.getDescription());
+        }
+        return descriptions;
+    }
+
+    /**
+     * 按实例去重估算描述String占用的堆：对象头+字段约24字节，字符数组约16字节加每字符2字节
+     */
+    private static long retainedDescriptionBytes(List<String> descriptions) {
+        Map<String, Boolean> instances = new IdentityHashMap<>();
+        long bytes = 0;
+        for (String description : descriptions) {
+            if (description != null && instances.put(description, Boolean.TRUE) == null) {
+                bytes += 40 + 2L * description.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static long databaseBytes(SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(db, "PRAGMA page_size", null);
+    }
+}
@@ -0,0 +1,219 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.storage.EventLogHabitStore;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 追加日志存储引擎测试：读取合并、压缩、分批预留ID、重新打开，以及追加与 TriggerRecordDao.insertRecord 的延迟对比
+ */
+@RunWith(AndroidJUnit4.class)
+public class EventLogStoreTest {
+    private static final String TAG = "EventLogStoreTest";
+    private static final String TEST_DB = "event-log-test.db";
+    private static final int SAMPLES = 500;
+    private Context context;
+    private DatabaseHelper helper;
+    private File logDirectory;
+    private EventLogHabitStore store;
+    private long habitId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        logDirectory = new File(context.getCacheDir(), "event-log-test");
+        deleteDirectory(logDirectory);
+        store = new EventLogHabitStore(helper, logDirectory);
+        habitId = store.insertHabit(new BadHabit("测试习惯", 5));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        deleteDirectory(logDirectory);
+    }
+
+    @Test
+    public void appendedRecordsAreMergedIntoReads() {
+        long databaseId = new TriggerRecordDao(helper).insertRecord(new TriggerRecord(habitId, "数据库中"));
+        TriggerRecord logged = new TriggerRecord(habitId, "日志中");
+        long id = store.insertRecord(logged);
+
+        assertTrue(id > databaseId);
+        assertEquals(2, logged.getSequenceNumber());
+        assertEquals(2, store.getRecordCountByDate(habitId, DateUtils.getTodayString()));
+        assertEquals(2, store.getTodayRecords(habitId).size());
+        // 数据库本身还没有这条记录
+        assertEquals(1, new TriggerRecordDao(helper).getTodayRecordCount(habitId));
+
+        int year = DateUtils.getYear(DateUtils.getTodayString());
+        int month = DateUtils.getMonth(DateUtils.getTodayString());
+        assertEquals(Integer.valueOf(2), store.getMonthlyStatistics(habitId, year, month).get(DateUtils.getTodayString()));
+    }
+
+    @Test
+    public void compactFoldsLogIntoDatabase() {
+        TriggerRecord logged = new TriggerRecord(habitId, "日志中");
+        long id = store.insertRecord(logged);
+        store.compact();
+
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        List<TriggerRecord> records = recordDao.getTodayRecords(habitId);
+        assertEquals(1, records.size());
+        assertEquals("日志中", records.get(0).getDescription());
+        // 压缩沿用追加时分配的ID
+        assertEquals(id, records.get(0).getId());
+        assertEquals(1, store.getRecordCountByDate(habitId, DateUtils.getTodayString()));
+
+        assertEquals(1, store.deleteRecord(id));
+        assertEquals(0, recordDao.getTodayRecordCount(habitId));
+    }
+
+    @Test
+    public void pagesAndSearchIncludeLogWithoutCompacting() {
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        recordDao.insertRecord(new TriggerRecord(habitId, "coffee 数据库中"));
+        store.insertRecord(new TriggerRecord(habitId, "coffee 日志中"));
+        store.insertRecord(new TriggerRecord(habitId, "tea"));
+
+        String today = DateUtils.getTodayString();
+        Set<Long> ids = new HashSet<>();
+        TriggerRecord last = null;
+        List<TriggerRecord> page;
+        while (!(page = store.getRecordsPage(habitId, today, today, last, 2)).isEmpty()) {
+            for (TriggerRecord record : page) {
+                assertTrue(ids.add(record.getId()));
+            }
+            last = page.get(page.size() - 1);
+        }
+        assertEquals(3, ids.size());
+
+        TriggerRecordDao.SearchPage result = recordDao.searchRecords("coff", habitId, null, 10,
+                store.getPendingRecords());
+        assertEquals(2, result.getRecords().size());
+        assertEquals("coffee 日志中", result.getRecords().get(0).getDescription());
+        // 读取没有触发压缩
+        assertEquals(1, recordDao.getTodayRecordCount(habitId));
+    }
+
+    @Test
+    public void databaseInsertsSkipReservedIds() {
+        long loggedId = store.insertRecord(new TriggerRecord(habitId, "日志中"));
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        long databaseId = recordDao.insertRecord(new TriggerRecord(habitId, "数据库中"));
+        assertTrue(databaseId > loggedId);
+        // 只预留了一小批ID，数据库的ID序列没有被推远
+        assertTrue(databaseId - loggedId <= 128);
+
+        store.compact();
+        assertTrue(recordDao.recordExists(loggedId));
+        assertTrue(recordDao.recordExists(databaseId));
+        assertEquals(2, recordDao.getTodayRecordCount(habitId));
+    }
+
+    @Test
+    public void idsStayUniqueAcrossReservedBlocks() {
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            assertTrue(ids.add(store.insertRecord(new TriggerRecord(habitId, null))));
+        }
+        store.compact();
+
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        assertEquals(200, recordDao.getTodayRecordCount(habitId));
+        for (long id : ids) {
+            assertTrue(recordDao.recordExists(id));
+        }
+    }
+
+    @Test
+    public void reopenedLogKeepsUncompactedEvents() throws Exception {
+        long first = store.insertRecord(new TriggerRecord(habitId, "a"));
+        long second = store.insertRecord(new TriggerRecord(habitId, null));
+        assertEquals(first + 1, second);
+        store.close();
+
+        store = new EventLogHabitStore(helper, logDirectory);
+        List<TriggerRecord> records = store.getTodayRecords(habitId);
+        assertEquals(2, records.size());
+        assertEquals(first, records.get(0).getId());
+        assertEquals(second, records.get(1).getId());
+        assertEquals(0, new TriggerRecordDao(helper).getTodayRecordCount(habitId));
+    }
+
+    @Test
+    public void sequenceNumbersContinueAcrossCompaction() {
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        recordDao.insertRecord(new TriggerRecord(habitId, "数据库中"));
+        TriggerRecord first = new TriggerRecord(habitId, "日志中");
+        store.insertRecord(first);
+        store.compact();
+        TriggerRecord second = new TriggerRecord(habitId, "压缩后");
+        store.insertRecord(second);
+
+        assertEquals(2, first.getSequenceNumber());
+        assertEquals(3, second.getSequenceNumber());
+        assertEquals(3, store.getRecordCountByDate(habitId, DateUtils.getTodayString()));
+    }
+
+    @Test
+    public void appendLatencyComparedWithInsertRecord() {
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        long[] daoNanos = new long[SAMPLES];
+        long[] logNanos = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            recordDao.insertRecord(new TriggerRecord(habitId, "dao"));
+            daoNanos[i] = System.nanoTime() - start;
+        }
+        // 分开测量：连续追加时序号只来自内存计数器和日志本身，不依赖穿插的数据库写入
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            store.insertRecord(new TriggerRecord(habitId, "log"));
+            logNanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(daoNanos);
+        Arrays.sort(logNanos);
+
+        Log.i(TAG, String.format(Locale.US, "insertRecord p50=%.3fms p99=%.3fms, 日志追加 p50=%.3fms p99=%.3fms",
+                daoNanos[SAMPLES / 2] / 1e6, daoNanos[SAMPLES * 99 / 100] / 1e6,
+                logNanos[SAMPLES / 2] / 1e6, logNanos[SAMPLES * 99 / 100] / 1e6));
+        assertTrue(logNanos[SAMPLES / 2] < daoNanos[SAMPLES / 2]);
+        assertEquals(SAMPLES * 2, store.getRecordCountByDate(habitId, DateUtils.getTodayString()));
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,296 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 执行计划回归测试
+ * 调用 BadHabitDao 和 TriggerRecordDao 的每个方法，收集实际发出的SQL（Cursor查询和预编译语句缓存），
+ * 在设备自带的SQLite上逐条 EXPLAIN QUERY PLAN：出现全表扫描或临时B树排序即失败。
+ * 另外对多天范围逐页读取，确认分页游标让每页从上一页结束处开始查索引。
+ * 例外：习惯表只有几十行；没有WHERE的语句本来就读全表。
+ */
+@RunWith(AndroidJUnit4.class)
+public class QueryPlanTest {
+    private static final String TAG = "QueryPlanTest";
+    private static final String TEST_DB = "query-plan-test.db";
+    private static final String QUERY_PREFIX = "SQLiteQuery: ";
+    private static final int PAGED_DAYS = 600;
+    private static final int PAGED_RECORDS_PER_DAY = 100;
+    private static final int PAGE_SIZE = 100;
+    private static final Set<String> SMALL_TABLES = Collections.singleton(DatabaseHelper.TABLE_BAD_HABITS);
+
+    private Context context;
+    private DatabaseHelper helper;
+    private BadHabitDao habitDao;
+    private TriggerRecordDao recordDao;
+    private final Set<String> issuedSql = Collections.synchronizedSet(new LinkedHashSet<>());
+    private volatile boolean capturing;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB, (db, driver, editTable, query) -> {
+            String sql = query.toString();
+            if (capturing && sql.startsWith(QUERY_PREFIX)) {
+                issuedSql.add(sql.substring(QUERY_PREFIX.length()));
+            }
+            return new SQLiteCursor(driver, editTable, query);
+        });
+        habitDao = new BadHabitDao(helper);
+        recordDao = new TriggerRecordDao(helper);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void daoStatementsUseIndexes() throws IOException {
+        capturing = true;
+        exerciseDaos();
+        capturing = false;
+
+        Set<String> statements = new LinkedHashSet<>(issuedSql);
+        statements.addAll(helper.getStatementCache().getCachedSql());
+        SQLiteDatabase db = helper.getReadableDatabase();
+        List<String> problems = new ArrayList<>();
+        for (String sql : statements) {
+            List<String> plan = explain(db, sql);
+            Log.i(TAG, sql + "\n    " + String.join("\n    ", plan));
+            for (String problem : violations(sql, plan)) {
+                problems.add(sql + "\n    -> " + problem);
+            }
+        }
+
+        assertTrue(String.join("\n", problems), problems.isEmpty());
+        // 确认确实收集到了记录、汇总和全文索引上的查询
+        assertTrue(containsTable(statements, DatabaseHelper.TABLE_TRIGGER_RECORDS));
+        assertTrue(containsTable(statements, DatabaseHelper.TABLE_DAILY_SUMMARY));
+        assertTrue(containsTable(statements, DatabaseHelper.TABLE_PERIOD_SUMMARY));
+        assertTrue(containsTable(statements, DatabaseHelper.TABLE_DESCRIPTIONS_FTS));
+    }
+
+    @Test
+    public void checkerFlagsScansAndSorts() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String records = DatabaseHelper.TABLE_TRIGGER_RECORDS;
+
+        // 不带习惯条件的时间过滤只能逐行扫描
+        String scan = "SELECT id FROM " + records + " WHERE trigger_millis > ?";
+        assertFalse(violations(scan, explain(db, scan)).isEmpty());
+
+        // 索引是 (habit_id, trigger_day, trigger_millis)，只按时间排序需要额外排序
+        String sort = "SELECT id FROM " + records + " WHERE habit_id = ? ORDER BY trigger_millis DESC";
+        assertFalse(violations(sort, explain(db, sort)).isEmpty());
+
+        String indexed = "SELECT id FROM " + records + " WHERE habit_id = ? AND trigger_day = ? ORDER BY trigger_millis";
+        assertTrue(violations(indexed, explain(db, indexed)).isEmpty());
+    }
+
+    @Test
+    public void recordPagesSeekPastPreviousPage() {
+        long habitId = habitDao.insertHabit(new BadHabit("分页", 5));
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        List<TriggerRecord> batch = new ArrayList<>();
+        for (int i = 0; i < PAGED_DAYS * PAGED_RECORDS_PER_DAY; i++) {
+            // 每天的记录时间相同，只能靠ID区分先后
+            long millis = (firstDay + i / PAGED_RECORDS_PER_DAY) * DateUtils.MILLIS_PER_DAY + 12 * 3_600_000L;
+            String dateTime = DateUtils.formatLocalMillis(millis);
+            batch.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                    dateTime, null, 0));
+            if (batch.size() == 10_000) {
+                recordDao.insertRecords(batch);
+                batch.clear();
+            }
+        }
+        recordDao.insertRecords(batch);
+
+        String startDate = DateUtils.formatEpochDay(firstDay);
+        String endDate = DateUtils.formatEpochDay(firstDay + PAGED_DAYS - 1);
+        List<Long> pageNanos = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        TriggerRecord after = null;
+        List<TriggerRecord> page;
+        do {
+            long start = System.nanoTime();
+            page = recordDao.getRecordsPage(habitId, startDate, endDate, after, PAGE_SIZE);
+            pageNanos.add(System.nanoTime() - start);
+            for (TriggerRecord record : page) {
+                assertTrue(seen.add(record.getId()));
+                if (after != null) {
+                    int order = after.getTriggerDateTime().compareTo(record.getTriggerDateTime());
+                    assertTrue(order < 0 || (order == 0 && after.getId() < record.getId()));
+                }
+                after = record;
+            }
+        } while (page.size() == PAGE_SIZE);
+        assertEquals(PAGED_DAYS * PAGED_RECORDS_PER_DAY, seen.size());
+
+        // 从上一页结束处查索引时，最后几页与最前几页的耗时相当；每页重读范围开头时随页码线性增长
+        long first = medianNanos(pageNanos.subList(1, 21));
+        long last = medianNanos(pageNanos.subList(pageNanos.size() - 21, pageNanos.size() - 1));
+        Log.i(TAG, String.format(Locale.US, "%d页: 前20页中位数 %.2fms, 后20页中位数 %.2fms",
+                pageNanos.size(), first / 1e6, last / 1e6));
+        assertTrue(last < first * 4 + 1_000_000L);
+    }
+
+    /**
+     * 调用两个DAO的全部公开方法，覆盖各个查询分支
+     */
+    private void exerciseDaos() throws IOException {
+        long habitId = habitDao.insertHabit(new BadHabit("测试习惯", 5));
+        long otherHabitId = habitDao.insertHabit(new BadHabit("另一个习惯", 3));
+        helper.getHabitCache().invalidateAll();
+        BadHabit habit = habitDao.getHabitById(habitId);
+        habit.setDailyLimit(6);
+        habitDao.updateHabit(habit);
+        habitDao.getAllActiveHabits();
+        habitDao.getAllHabits();
+        habitDao.getFirstActiveHabitId();
+        habitDao.getDailyLimit(otherHabitId);
+
+        List<TriggerRecord> records = new ArrayList<>();
+        long firstDay = DateUtils.toEpochDay(2024, 1, 1);
+        for (int i = 0; i < 500; i++) {
+            long millis = (firstDay + i / 5) * DateUtils.MILLIS_PER_DAY + (9 + i % 5) * 3_600_000L;
+            String dateTime = DateUtils.formatLocalMillis(millis);
+            records.add(new TriggerRecord(0, i % 2 == 0 ? habitId : otherHabitId, dateTime.substring(0, 10),
+                    dateTime.substring(11, 16), dateTime, i % 3 == 0 ? "after coffee" : "meeting " + i % 7, 0));
+        }
+        recordDao.insertRecords(records);
+        long recordId = recordDao.insertRecord(new TriggerRecord(habitId, "coffee break"));
+
+        TriggerRecord record = recordDao.getTodayRecords(habitId).get(0);
+        record.setDescription("tea");
+        recordDao.updateRecord(record);
+        recordDao.getRecordsByDate(habitId, "2024-01-10");
+        recordDao.getTodayRecordCount(habitId);
+        recordDao.getRecordCountByDate(habitId, "2024-01-10");
+        recordDao.getMonthlyStatistics(habitId, 2024, 1);
+        recordDao.getYearlyStatistics(habitId, 2024);
+        recordDao.getMonthlyStatistics(new long[]{habitId, otherHabitId}, 2024, 2);
+        recordDao.getYearlyStatistics(new long[]{habitId, otherHabitId}, 2024);
+        recordDao.getRecordsByDateRange(habitId, "2024-01-01", "2024-03-31");
+        List<TriggerRecord> page = recordDao.getRecordsPage(habitId, "2024-01-01", "2024-03-31", null, 20);
+        recordDao.getRecordsPage(habitId, "2024-01-01", "2024-03-31", page.get(page.size() - 1), 20);
+        TriggerRecordDao.SearchPage search = recordDao.searchRecords("coff", -1, null, 10);
+        recordDao.searchRecords("coff", -1, search.getNext(), 10);
+        recordDao.searchRecords("meeting", habitId, null, 500);
+        recordDao.forEachRecord(habitId, (id, millis, description, sequenceNumber) -> {
+        });
+        recordDao.getTotalRecordCount();
+        recordDao.deleteRecord(recordId);
+
+        habitDao.deleteHabit(otherHabitId);
+        habitDao.markPendingDelete(otherHabitId);
+        habitDao.getPendingDeleteHabitIds();
+        recordDao.deleteHabitRecords(otherHabitId, 100);
+        habitDao.permanentDeleteHabit(otherHabitId);
+    }
+
+    private static List<String> explain(SQLiteDatabase db, String sql) {
+        List<String> plan = new ArrayList<>();
+        // 未绑定的参数按NULL处理，不影响索引选择
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+
+    /**
+     * 检查一条语句的执行计划，返回不符合要求的步骤
+     */
+    private static List<String> violations(String sql, List<String> plan) {
+        String upper = sql.toUpperCase(Locale.ROOT);
+        boolean wholeTable = !upper.contains(" WHERE ");
+
+        Set<String> tables = new HashSet<>();
+        List<String> scans = new ArrayList<>();
+        boolean tempSort = false;
+        for (String detail : plan) {
+            String table = tableOf(detail);
+            if (table != null) {
+                tables.add(table);
+                if (detail.startsWith("SCAN ") && !detail.contains("VIRTUAL TABLE") && !SMALL_TABLES.contains(table)) {
+                    scans.add(detail);
+                }
+            }
+            tempSort |= detail.startsWith("USE TEMP B-TREE");
+        }
+
+        List<String> problems = new ArrayList<>();
+        if (!wholeTable) {
+            problems.addAll(scans);
+        }
+        if (tempSort && !SMALL_TABLES.containsAll(tables)) {
+            problems.add("USE TEMP B-TREE");
+        }
+        return problems;
+    }
+
+    /**
+     * SCAN/SEARCH 步骤访问的表（兼容 "SCAN TABLE t" 和 3.36 起的 "SCAN t"），其他步骤返回null
+     */
+    private static String tableOf(String detail) {
+        String[] words = detail.split(" ");
+        if (words.length < 2 || !(words[0].equals("SCAN") || words[0].equals("SEARCH"))) {
+            return null;
+        }
+        String table = words[1].equals("TABLE") && words.length > 2 ? words[2] : words[1];
+        if (table.equals("SUBQUERY") || table.equals("CONSTANT")) {
+            return null;
+        }
+        return table;
+    }
+
+    private static long medianNanos(List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static boolean containsTable(Set<String> statements, String table) {
+        for (String sql : statements) {
+            if (sql.contains(" " + table + " ") || sql.endsWith(" " + table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,185 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.backup.DataExporter;
+import com.felix.countbadhabits.backup.DataImporter;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 数据保留测试：归档前后日历/图表的统计完全相同，汇总校验仍然通过，导出不丢记录或只剩计数的归档
+ */
+@RunWith(AndroidJUnit4.class)
+public class RetentionTest {
+    private static final String TEST_DB = "retention-test.db";
+    private static final String IMPORT_DB = "retention-import-test.db";
+    private static final String HABIT_NAME = "测试习惯";
+    private static final int YEAR = 2023;
+    private static final int RECORDS_PER_DAY = 3;
+    private Context context;
+    private DatabaseHelper helper;
+    private TriggerRecordDao recordDao;
+    private ArchiveDao archiveDao;
+    private long habitId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        recordDao = new TriggerRecordDao(helper);
+        archiveDao = new ArchiveDao(helper);
+        habitId = new BadHabitDao(helper).insertHabit(new BadHabit(HABIT_NAME, 5));
+
+        List<TriggerRecord> records = new ArrayList<>();
+        long firstDay = DateUtils.toEpochDay(YEAR, 1, 1);
+        for (long day = firstDay; day < firstDay + 365; day++) {
+            for (int i = 0; i < RECORDS_PER_DAY; i++) {
+                long millis = day * DateUtils.MILLIS_PER_DAY + (8 + i * 5) * 3_600_000L;
+                String dateTime = DateUtils.formatLocalMillis(millis);
+                records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                        dateTime, i == 0 ? "饭后" : null, 0));
+            }
+        }
+        recordDao.insertRecords(records);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+        context.deleteDatabase(IMPORT_DB);
+    }
+
+    @Test
+    public void statisticsAreIdenticalAfterArchiving() {
+        List<Map<String, Integer>> monthlyBefore = monthlyStatistics();
+        Map<String, Integer> yearlyBefore = recordDao.getYearlyStatistics(habitId, YEAR);
+
+        int archived = archiveAll(DateUtils.toEpochDay(YEAR, 7, 1), false);
+
+        assertEquals(181 * RECORDS_PER_DAY, archived);
+        assertEquals(monthlyBefore, monthlyStatistics());
+        assertEquals(yearlyBefore, recordDao.getYearlyStatistics(habitId, YEAR));
+        assertEquals(RECORDS_PER_DAY, recordDao.getRecordCountByDate(habitId, YEAR + "-03-15"));
+        assertTrue(recordDao.getRecordsByDate(habitId, YEAR + "-03-15").isEmpty());
+        assertEquals(184 * RECORDS_PER_DAY, DatabaseUtils.queryNumEntries(helper.getReadableDatabase(),
+                DatabaseHelper.TABLE_TRIGGER_RECORDS));
+
+        // 校验与重建把归档计数计入
+        SummaryDao summaryDao = new SummaryDao(helper);
+        assertEquals(0, summaryDao.verifyAll());
+        summaryDao.rebuildAll();
+        assertEquals(monthlyBefore, monthlyStatistics());
+
+        // 删除进度只按原始记录计算，归档计数随习惯级联删除
+        assertEquals(184 * RECORDS_PER_DAY, new BadHabitDao(helper).markPendingDelete(habitId));
+    }
+
+    @Test
+    public void keptDescriptionsAreExported() throws Exception {
+        archiveAll(DateUtils.toEpochDay(YEAR, 7, 1), true);
+        // 归档后又补记了一条已归档那天的记录，再次归档时与已有归档合并
+        recordDao.insertRecord(new TriggerRecord(0, habitId, YEAR + "-01-01", "23:00",
+                YEAR + "-01-01 23:00:00", "补记", 0));
+        archiveAll(DateUtils.toEpochDay(YEAR, 7, 1), true);
+
+        List<String> exported = new ArrayList<>();
+        recordDao.forEachRecord(habitId, (id, triggerMillis, description, sequenceNumber) ->
+                exported.add(DateUtils.formatLocalMillis(triggerMillis) + " " + description));
+
+        assertEquals(365 * RECORDS_PER_DAY + 1, exported.size());
+        assertEquals(YEAR + "-01-01 08:00:00 饭后", exported.get(0));
+        assertEquals(YEAR + "-01-01 23:00:00 补记", exported.get(RECORDS_PER_DAY));
+        assertEquals(RECORDS_PER_DAY + 1, recordDao.getRecordCountByDate(habitId, YEAR + "-01-01"));
+        assertEquals(0, new SummaryDao(helper).verifyAll());
+    }
+
+    @Test
+    public void countOnlyDaysSurviveExportAndImport() throws Exception {
+        // 1月先只归档计数，之后补记一条并保存描述归档：当天一部分只剩计数，一部分有记录
+        archiveAll(DateUtils.toEpochDay(YEAR, 2, 1), false);
+        recordDao.insertRecord(new TriggerRecord(0, habitId, YEAR + "-01-01", "23:00",
+                YEAR + "-01-01 23:00:00", "补记", 0));
+        archiveAll(DateUtils.toEpochDay(YEAR, 7, 1), true);
+        List<Map<String, Integer>> monthlyBefore = monthlyStatistics();
+        long total = recordDao.getTotalRecordCount();
+        assertEquals(365 * RECORDS_PER_DAY + 1, total);
+
+        for (DataExporter.Format format : DataExporter.Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(format.name(), total, new DataExporter(helper).export(out, format, null));
+
+            context.deleteDatabase(IMPORT_DB);
+            DatabaseHelper importHelper = new DatabaseHelper(context, IMPORT_DB);
+            try {
+                DataImporter.Result result = new DataImporter(importHelper).importFrom(
+                        new ByteArrayInputStream(out.toByteArray()), 0, null);
+                assertEquals(format.name(), total, result.getImported());
+
+                TriggerRecordDao importedDao = new TriggerRecordDao(importHelper);
+                assertEquals(format.name(), total, importedDao.getTotalRecordCount());
+                long importedHabitId = findHabitId(importHelper, HABIT_NAME);
+                for (int month = 1; month <= 12; month++) {
+                    assertEquals(format.name(), monthlyBefore.get(month - 1),
+                            importedDao.getMonthlyStatistics(importedHabitId, YEAR, month));
+                }
+                assertEquals(RECORDS_PER_DAY + 1, importedDao.getRecordCountByDate(importedHabitId, YEAR + "-01-01"));
+                assertEquals(0, new SummaryDao(importHelper).verifyAll());
+
+                // 再次导入同一文件，已有数据的天整体视为重复
+                DataImporter.Result again = new DataImporter(importHelper).importFrom(
+                        new ByteArrayInputStream(out.toByteArray()), 0, null);
+                assertEquals(format.name(), 0, again.getImported());
+                assertEquals(format.name(), total, importedDao.getTotalRecordCount());
+            } finally {
+                importHelper.close();
+            }
+        }
+    }
+
+    private int archiveAll(long cutoffDay, boolean keepDescriptions) {
+        int total = 0;
+        int archived;
+        while ((archived = archiveDao.archiveBatch(habitId, cutoffDay, 30, keepDescriptions)) > 0) {
+            total += archived;
+        }
+        return total;
+    }
+
+    private static long findHabitId(DatabaseHelper dbHelper, String name) {
+        for (BadHabit habit : new BadHabitDao(dbHelper).getAllHabits()) {
+            if (habit.getName().equals(name)) {
+                return habit.getId();
+            }
+        }
+        throw new AssertionError("没有导入习惯: " + name);
+    }
+
+    private List<Map<String, Integer>> monthlyStatistics() {
+        List<Map<String, Integer>> result = new ArrayList<>();
+        for (int month = 1; month <= 12; month++) {
+            result.add(recordDao.getMonthlyStatistics(habitId, YEAR, month));
+        }
+        return result;
+    }
+}
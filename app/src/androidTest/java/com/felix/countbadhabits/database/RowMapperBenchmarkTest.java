@@ -0,0 +1,145 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * 行映射对比：5万条记录分别按旧写法（SELECT *，每行每列 getColumnIndexOrThrow，默认构造+setter）
+ * 和 RowMapper（显式投影，列索引每个Cursor解析一次，全字段构造）转换为 TriggerRecord，记录耗时中位数
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMapperBenchmarkTest {
+    private static final String TAG = "RowMapperBenchmark";
+    private static final String TEST_DB = "row-mapper-test.db";
+    private static final int ROWS = 50_000;
+    private static final int PER_DAY = 20;
+    private static final int RUNS = 5;
+
+    // 与 TriggerRecordDao 的记录映射器相同的投影；描述只读字典ID，两种写法都不查字典
+    private static final RowMapper<TriggerRecord> RECORD_MAPPER = new RowMapper<TriggerRecord>(
+            DatabaseHelper.COLUMN_RECORD_ID,
+            DatabaseHelper.COLUMN_RECORD_HABIT_ID,
+            DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY,
+            DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS,
+            DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER) {
+        @Override
+        protected TriggerRecord map(Cursor cursor, int[] columns) {
+            long millis = cursor.getLong(columns[3]);
+            return new TriggerRecord(
+                    cursor.getLong(columns[0]),
+                    cursor.getLong(columns[1]),
+                    DateUtils.formatEpochDay(cursor.getLong(columns[2])),
+                    DateUtils.formatLocalMillisTime(millis),
+                    DateUtils.formatLocalMillis(millis),
+                    null,
+                    cursor.getInt(columns[4]));
+        }
+    };
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void rowMapperComparedWithPerRowLookup() {
+        long habitId = new BadHabitDao(helper).insertHabit(new BadHabit("抽烟", PER_DAY));
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        List<TriggerRecord> records = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            String dateTime = DateUtils.formatLocalMillis((firstDay + i / PER_DAY) * DateUtils.MILLIS_PER_DAY
+                    + (i % PER_DAY) * 60_000L);
+            records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                    dateTime, null, 0));
+        }
+        assertEquals(ROWS, new TriggerRecordDao(helper).insertRecords(records));
+
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(habitId)};
+        String orderBy = DatabaseHelper.COLUMN_RECORD_ID + " ASC";
+        long[] perRowNanos = new long[RUNS];
+        long[] mapperNanos = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            List<TriggerRecord> perRow = new ArrayList<>();
+            try (Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, null, selection, selectionArgs,
+                    null, null, orderBy)) {
+                while (cursor.moveToNext()) {
+                    perRow.add(cursorToRecord(cursor));
+                }
+            }
+            perRowNanos[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<TriggerRecord> mapped = RECORD_MAPPER.mapAll(db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS,
+                    RECORD_MAPPER.getProjection(), selection, selectionArgs, null, null, orderBy), ROWS);
+            mapperNanos[run] = System.nanoTime() - start;
+
+            assertEquals(ROWS, perRow.size());
+            assertEquals(ROWS, mapped.size());
+            assertEquals(perRow.get(ROWS - 1).getTriggerDateTime(), mapped.get(ROWS - 1).getTriggerDateTime());
+        }
+
+        Log.i(TAG, String.format(Locale.US, "%d 行: 逐行解析列 %.1fms, RowMapper %.1fms",
+                ROWS, median(perRowNanos), median(mapperNanos)));
+    }
+
+    /**
+     * RowMapper 引入前的写法：每行每列都按列名查找索引，先用默认构造再逐个 setter
+     */
+    private static TriggerRecord cursorToRecord(Cursor cursor) {
+        TriggerRecord record = new TriggerRecord();
+
+        long millis = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS));
+
+        record.setId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_ID)));
+        record.setHabitId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_HABIT_ID)));
+        record.setTriggerDate(DateUtils.formatEpochDay(
+                cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY))));
+        record.setTriggerTime(DateUtils.formatLocalMillisTime(millis));
+        record.setTriggerDateTime(DateUtils.formatLocalMillis(millis));
+        record.setDescription(null);
+        record.setSequenceNumber(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER)));
+
+        return record;
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
@@ -0,0 +1,184 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 描述全文搜索测试：索引随增删改同步、前缀匹配、习惯过滤、相关度级别排序与分页
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchTest {
+    private static final String TAG = "SearchTest";
+    private static final String TEST_DB = "search-test.db";
+    private static final int LARGE_RECORD_COUNT = 200_000;
+    private static final String[] WORDS = {"coffee", "tea", "meeting", "stress", "lunch", "phone", "bored", "tired"};
+    private Context context;
+    private DatabaseHelper helper;
+    private TriggerRecordDao recordDao;
+    private long habitId;
+    private long otherHabitId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        recordDao = new TriggerRecordDao(helper);
+        BadHabitDao habitDao = new BadHabitDao(helper);
+        habitId = habitDao.insertHabit(new BadHabit("测试习惯", 5));
+        otherHabitId = habitDao.insertHabit(new BadHabit("另一个习惯", 5));
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void indexFollowsInsertUpdateAndDelete() {
+        long id = recordDao.insertRecord(new TriggerRecord(habitId, "after coffee"));
+        recordDao.insertRecord(new TriggerRecord(habitId, null));
+        assertEquals(1, search("coffee", -1).size());
+
+        TriggerRecord record = recordDao.getTodayRecords(habitId).stream()
+                .filter(r -> r.getId() == id).findFirst().get();
+        record.setDescription("after tea");
+        recordDao.updateRecord(record);
+        assertTrue(search("coffee", -1).isEmpty());
+        assertEquals(1, search("tea", -1).size());
+
+        record.setDescription(null);
+        recordDao.updateRecord(record);
+        assertTrue(search("tea", -1).isEmpty());
+
+        record.setDescription("tea again");
+        recordDao.updateRecord(record);
+        recordDao.deleteRecord(id);
+        assertTrue(search("tea", -1).isEmpty());
+    }
+
+    @Test
+    public void prefixMatchesAndHabitFilter() {
+        recordDao.insertRecord(new TriggerRecord(habitId, "Meeting ran late"));
+        recordDao.insertRecord(new TriggerRecord(otherHabitId, "meetings all day"));
+        recordDao.insertRecord(new TriggerRecord(habitId, "饭后无聊"));
+
+        assertEquals(2, search("meet", -1).size());
+        assertEquals(1, search("meet", habitId).size());
+        // 大小写不敏感，多个词同时匹配
+        assertEquals(1, search("MEETING late", -1).size());
+        assertEquals(1, search("饭后", -1).size());
+        assertTrue(search("\"\" *", -1).isEmpty());
+    }
+
+    @Test
+    public void exactMatchesRankBeforePrefixMatches() {
+        long exactOld = recordDao.insertRecord(new TriggerRecord(habitId, "tea"));
+        long prefixNew = recordDao.insertRecord(new TriggerRecord(habitId, "teammate"));
+        long exactNew = recordDao.insertRecord(new TriggerRecord(habitId, "green tea"));
+
+        List<TriggerRecord> results = search("tea", -1);
+
+        assertEquals(3, results.size());
+        assertEquals(exactNew, results.get(0).getId());
+        assertEquals(exactOld, results.get(1).getId());
+        assertEquals(prefixNew, results.get(2).getId());
+    }
+
+    @Test
+    public void sameTierOrderedByTriggerTime() {
+        long recent = recordDao.insertRecord(record(habitId, 10, "coffee"));
+        // 后补录的较早记录ID更大，仍排在较新的记录之后
+        long backfilled = recordDao.insertRecord(record(otherHabitId, 1, "coffee"));
+
+        List<TriggerRecord> results = search("coffee", -1);
+
+        assertEquals(2, results.size());
+        assertEquals(recent, results.get(0).getId());
+        assertEquals(backfilled, results.get(1).getId());
+    }
+
+    @Test
+    public void pagesCoverAllMatchesWithoutDuplicates() {
+        List<TriggerRecord> records = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            records.add(record(habitId, i, i % 3 == 0 ? "phone" : "phones"));
+        }
+        recordDao.insertRecords(records);
+
+        Set<Long> seen = new HashSet<>();
+        int pages = 0;
+        TriggerRecordDao.SearchCursor cursor = null;
+        do {
+            TriggerRecordDao.SearchPage page = recordDao.searchRecords("phone", habitId, cursor, 10);
+            for (TriggerRecord record : page.getRecords()) {
+                assertTrue(seen.add(record.getId()));
+            }
+            cursor = page.getNext();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(95, seen.size());
+        assertEquals(10, pages);
+    }
+
+    @Test
+    public void firstPageTimingOnLargeTable() {
+        List<TriggerRecord> batch = new ArrayList<>();
+        for (int i = 0; i < LARGE_RECORD_COUNT; i++) {
+            String description = WORDS[i % WORDS.length] + " " + WORDS[(i / WORDS.length) % WORDS.length] + " " + i;
+            batch.add(record(i % 2 == 0 ? habitId : otherHabitId, i / 20, description));
+            if (batch.size() == 10_000) {
+                recordDao.insertRecords(batch);
+                batch.clear();
+            }
+        }
+
+        long start = System.nanoTime();
+        TriggerRecordDao.SearchPage exact = recordDao.searchRecords("coffee", -1, null, 50);
+        long exactNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        TriggerRecordDao.SearchPage prefix = recordDao.searchRecords("tir", habitId, null, 50);
+        long prefixNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("%d条记录: 完整匹配首页 %.1fms, 前缀匹配首页 %.1fms",
+                LARGE_RECORD_COUNT, exactNanos / 1e6, prefixNanos / 1e6));
+        assertEquals(50, exact.getRecords().size());
+        assertEquals(50, prefix.getRecords().size());
+        // 宽松上限，只防止退化为逐行扫描描述
+        assertTrue(exactNanos < 2_000_000_000L);
+        assertTrue(prefixNanos < 2_000_000_000L);
+    }
+
+    private List<TriggerRecord> search(String query, long habitId) {
+        return recordDao.searchRecords(query, habitId, null, 50).getRecords();
+    }
+
+    private static TriggerRecord record(long habitId, int dayOffset, String description) {
+        long millis = (DateUtils.toEpochDay(2023, 1, 1) + dayOffset) * DateUtils.MILLIS_PER_DAY + 12 * 3_600_000L;
+        String dateTime = DateUtils.formatLocalMillis(millis);
+        return new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                dateTime, description, 0);
+    }
+}
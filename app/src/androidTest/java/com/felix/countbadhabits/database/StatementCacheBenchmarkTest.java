@@ -0,0 +1,118 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * 预编译语句缓存对比：同一条按(习惯, 日)查询日汇总的标量查询，
+ * 分别用 db.query + Cursor 和 StatementCache 执行，记录单次调用耗时的 p50/p99
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatementCacheBenchmarkTest {
+    private static final String TAG = "StatementCacheBenchmark";
+    private static final String TEST_DB = "statement-cache-test.db";
+    private static final int DAYS = 365;
+    private static final int CALLS = 10_000;
+    private static final int WARMUP = 500;
+    private static final String DAILY_COUNT_SQL = "SELECT " + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT
+            + " FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY
+            + " WHERE " + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_SUMMARY_DAY + " = ?";
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void dailyCountPerCall() {
+        long habitId = new BadHabitDao(helper).insertHabit(new BadHabit("抽烟", 5));
+        long firstDay = DateUtils.toEpochDay(2024, 1, 1);
+        List<TriggerRecord> records = new ArrayList<>();
+        for (long day = firstDay; day < firstDay + DAYS; day++) {
+            for (int i = 0; i < day % 4 + 1; i++) {
+                String dateTime = DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY + i * 3_600_000L);
+                records.add(new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                        dateTime, null, 0));
+            }
+        }
+        new TriggerRecordDao(helper).insertRecords(records);
+
+        SQLiteDatabase db = helper.getReadableDatabase();
+        StatementCache cache = helper.getStatementCache();
+        long[] queryNanos = new long[CALLS];
+        long[] cachedNanos = new long[CALLS];
+        for (int i = -WARMUP; i < CALLS; i++) {
+            long day = firstDay + Math.floorMod(i, DAYS);
+
+            long start = System.nanoTime();
+            long queried = queryDailyCount(db, habitId, day);
+            long queryElapsed = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long cached = cache.simpleQueryForLong(db, DAILY_COUNT_SQL, 0, habitId, day);
+            long cachedElapsed = System.nanoTime() - start;
+
+            assertEquals(queried, cached);
+            if (i >= 0) {
+                queryNanos[i] = queryElapsed;
+                cachedNanos[i] = cachedElapsed;
+            }
+        }
+
+        Log.i(TAG, String.format(Locale.US, "日汇总标量查询 %d 次: db.query p50 %.1fus p99 %.1fus, "
+                        + "StatementCache p50 %.1fus p99 %.1fus",
+                CALLS, percentile(queryNanos, 50), percentile(queryNanos, 99),
+                percentile(cachedNanos, 50), percentile(cachedNanos, 99)));
+    }
+
+    /**
+     * 缓存引入前的写法：每次拼装查询并通过 Cursor 读取
+     */
+    private static long queryDailyCount(SQLiteDatabase db, long habitId, long epochDay) {
+        try (Cursor cursor = db.query(DatabaseHelper.TABLE_DAILY_SUMMARY,
+                new String[]{DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT},
+                DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ? AND " + DatabaseHelper.COLUMN_SUMMARY_DAY + " = ?",
+                new String[]{String.valueOf(habitId), String.valueOf(epochDay)}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    private static double percentile(long[] nanos, int percent) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)] / 1e3;
+    }
+}
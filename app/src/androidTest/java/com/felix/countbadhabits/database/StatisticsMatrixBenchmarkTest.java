@@ -0,0 +1,161 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多习惯统计测试：一次查询得到的矩阵与逐个习惯查询的结果一致，
+ * 并在 5、50、200 个习惯下对比两种方式的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class StatisticsMatrixBenchmarkTest {
+    private static final String TAG = "StatisticsMatrixBenchmark";
+    private static final String TEST_DB = "statistics-matrix-test.db";
+    private static final int YEAR = 2024;
+    private static final int RECORDS_PER_HABIT = 1000;
+    private static final int RUNS = 21;
+
+    private Context context;
+    private DatabaseHelper helper;
+    private BadHabitDao habitDao;
+    private TriggerRecordDao recordDao;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        habitDao = new BadHabitDao(helper);
+        recordDao = new TriggerRecordDao(helper);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void fiveHabits() {
+        benchmark(5);
+    }
+
+    @Test
+    public void fiftyHabits() {
+        benchmark(50);
+    }
+
+    @Test
+    public void twoHundredHabits() {
+        benchmark(200);
+    }
+
+    private void benchmark(int habitCount) {
+        long[] habitIds = insertHabits(habitCount);
+
+        long[] perHabitMonth = new long[RUNS];
+        long[] matrixMonth = new long[RUNS];
+        long[] perHabitYear = new long[RUNS];
+        long[] matrixYear = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            int month = run % 12 + 1;
+
+            long start = System.nanoTime();
+            List<Map<String, Integer>> monthly = new ArrayList<>(habitCount);
+            for (long habitId : habitIds) {
+                monthly.add(recordDao.getMonthlyStatistics(habitId, YEAR, month));
+            }
+            perHabitMonth[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            StatisticsMatrix monthMatrix = recordDao.getMonthlyStatistics(habitIds, YEAR, month);
+            matrixMonth[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Map<String, Integer>> yearly = new ArrayList<>(habitCount);
+            for (long habitId : habitIds) {
+                yearly.add(recordDao.getYearlyStatistics(habitId, YEAR));
+            }
+            perHabitYear[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            StatisticsMatrix yearMatrix = recordDao.getYearlyStatistics(habitIds, YEAR);
+            matrixYear[run] = System.nanoTime() - start;
+
+            if (run == 0) {
+                assertSameCounts(monthly, monthMatrix, month);
+                assertSameCounts(yearly, yearMatrix);
+            }
+        }
+
+        Log.i(TAG, String.format("%d个习惯 月统计: 逐个 %.2fms, 一次 %.2fms; 年统计: 逐个 %.2fms, 一次 %.2fms",
+                habitCount, median(perHabitMonth), median(matrixMonth), median(perHabitYear), median(matrixYear)));
+    }
+
+    private long[] insertHabits(int habitCount) {
+        long[] habitIds = new long[habitCount];
+        Random random = new Random(habitCount);
+        long firstDay = DateUtils.toEpochDay(YEAR, 1, 1);
+        for (int i = 0; i < habitCount; i++) {
+            habitIds[i] = habitDao.insertHabit(new BadHabit("习惯" + i, 5));
+            List<TriggerRecord> records = new ArrayList<>(RECORDS_PER_HABIT);
+            for (int j = 0; j < RECORDS_PER_HABIT; j++) {
+                long millis = (firstDay + random.nextInt(366)) * DateUtils.MILLIS_PER_DAY
+                        + random.nextInt(86400) * 1000L;
+                String dateTime = DateUtils.formatLocalMillis(millis);
+                records.add(new TriggerRecord(0, habitIds[i], dateTime.substring(0, 10),
+                        dateTime.substring(11, 16), dateTime, null, 0));
+            }
+            recordDao.insertRecords(records);
+        }
+        return habitIds;
+    }
+
+    private static void assertSameCounts(List<Map<String, Integer>> monthly, StatisticsMatrix matrix, int month) {
+        for (int row = 0; row < monthly.size(); row++) {
+            for (int day = 1; day <= matrix.getBucketCount(); day++) {
+                Integer expected = monthly.get(row).get(DateUtils.buildDateString(YEAR, month, day));
+                assertEquals(expected == null ? 0 : expected, matrix.getCount(row, day - 1));
+            }
+        }
+    }
+
+    private static void assertSameCounts(List<Map<String, Integer>> yearly, StatisticsMatrix matrix) {
+        int total = 0;
+        for (int row = 0; row < yearly.size(); row++) {
+            for (int month = 1; month <= 12; month++) {
+                Integer expected = yearly.get(row).get(String.format("%04d-%02d", YEAR, month));
+                assertEquals(expected == null ? 0 : expected, matrix.getCount(row, month - 1));
+            }
+            total += matrix.getRowTotal(row);
+        }
+        assertEquals(yearly.size() * RECORDS_PER_HABIT, total);
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
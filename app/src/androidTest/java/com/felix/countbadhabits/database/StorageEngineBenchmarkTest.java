@@ -0,0 +1,118 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.storage.HabitStore;
+import com.felix.countbadhabits.storage.InMemoryHabitStore;
+import com.felix.countbadhabits.storage.SQLiteHabitStore;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 存储引擎对比：五年数据上 60 次月统计 + 5 次年统计，内存实现与SQLite实现的结果一致，并记录两者的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageEngineBenchmarkTest {
+    private static final String TAG = "StorageEngineBenchmark";
+    private static final String TEST_DB = "storage-engine-test.db";
+    private static final int FIRST_YEAR = 2020;
+    private static final int YEARS = 5;
+    private static final int RUNS = 11;
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void statisticsOverFiveYears() {
+        HabitStore sqlite = new SQLiteHabitStore(helper);
+        HabitStore memory = new InMemoryHabitStore();
+        long sqliteHabitId = sqlite.insertHabit(new BadHabit("抽烟", 5));
+        long memoryHabitId = memory.insertHabit(new BadHabit("抽烟", 5));
+
+        Random random = new Random(2);
+        long firstDay = DateUtils.toEpochDay(FIRST_YEAR, 1, 1);
+        List<TriggerRecord> records = new ArrayList<>();
+        for (long day = firstDay; day < firstDay + YEARS * 365; day++) {
+            int count = random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                String dateTime = DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY + i * 3_600_000L);
+                records.add(new TriggerRecord(0, sqliteHabitId, dateTime.substring(0, 10),
+                        dateTime.substring(11, 16), dateTime, null, 0));
+                memory.insertRecord(new TriggerRecord(0, memoryHabitId, dateTime.substring(0, 10),
+                        dateTime.substring(11, 16), dateTime, null, 0));
+            }
+        }
+        new TriggerRecordDao(helper).insertRecords(records);
+
+        long[] sqliteNanos = new long[RUNS];
+        long[] memoryNanos = new long[RUNS];
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            int sqliteTotal = queryStatistics(sqlite, sqliteHabitId);
+            sqliteNanos[run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int memoryTotal = queryStatistics(memory, memoryHabitId);
+            memoryNanos[run] = System.nanoTime() - start;
+
+            assertEquals(records.size(), sqliteTotal);
+            assertEquals(records.size(), memoryTotal);
+        }
+
+        Log.i(TAG, String.format(Locale.US, "五年 %d 条记录, 60次月统计 + 5次年统计: SQLite %.2fms, 内存 %.2fms",
+                records.size(), median(sqliteNanos), median(memoryNanos)));
+    }
+
+    /**
+     * 依次查询每年各月和全年的统计，返回按月统计的合计
+     */
+    private static int queryStatistics(HabitStore store, long habitId) {
+        int total = 0;
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + YEARS; year++) {
+            for (int month = 1; month <= 12; month++) {
+                for (int value : store.getMonthlyStatistics(habitId, year, month).values()) {
+                    total += value;
+                }
+            }
+            store.getYearlyStatistics(habitId, year);
+        }
+        return total;
+    }
+
+    private static double median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2] / 1e6;
+    }
+}
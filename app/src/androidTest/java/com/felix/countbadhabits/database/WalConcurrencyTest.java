@@ -0,0 +1,124 @@
+package com.felix.countbadhabits.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * WAL并发测试：写事务进行中读取不被阻塞，并统计并发插入下的读取延迟
+ */
+@RunWith(AndroidJUnit4.class)
+public class WalConcurrencyTest {
+    private static final String TAG = "WalConcurrencyTest";
+    private static final String TEST_DB = "wal-test.db";
+    private Context context;
+    private DatabaseHelper helper;
+    private long habitId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(TEST_DB);
+        helper = new DatabaseHelper(context, TEST_DB);
+        habitId = new BadHabitDao(helper).insertHabit(new BadHabit("测试习惯", 5));
+    }
+
+    @After
+    public void tearDown() {
+        helper.close();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void walIsEnabled() {
+        assertTrue(helper.getWritableDatabase().isWriteAheadLoggingEnabled());
+    }
+
+    @Test
+    public void readDoesNotWaitForOpenWriteTransaction() throws Exception {
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        recordDao.insertRecord(new TriggerRecord(habitId, "已提交"));
+
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                recordDao.insertRecord(new TriggerRecord(habitId, "未提交"));
+                writing.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                db.setTransactionSuccessful();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                db.endTransaction();
+            }
+        });
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // 写事务未提交时，读取应立即返回已提交的数据
+        long start = System.nanoTime();
+        int count = recordDao.getTodayRecords(habitId).size();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        release.countDown();
+        writer.join();
+
+        assertEquals(1, count);
+        assertTrue("读取被写事务阻塞了 " + elapsedMillis + "ms", elapsedMillis < 1000);
+    }
+
+    @Test
+    public void readLatencyUnderConcurrentInserts() throws Exception {
+        TriggerRecordDao recordDao = new TriggerRecordDao(helper);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                recordDao.insertRecord(new TriggerRecord(habitId, "压力测试"));
+            }
+        });
+        writer.start();
+
+        int reads = 500;
+        long[] latencies = new long[reads];
+        try {
+            for (int i = 0; i < reads; i++) {
+                long start = System.nanoTime();
+                recordDao.getTodayRecordCount(habitId);
+                recordDao.getMonthlyStatistics(habitId, 2025, 1);
+                latencies[i] = System.nanoTime() - start;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+
+        Arrays.sort(latencies);
+        long p50 = TimeUnit.NANOSECONDS.toMicros(latencies[reads / 2]);
+        long p99 = TimeUnit.NANOSECONDS.toMicros(latencies[reads * 99 / 100]);
+        Log.i(TAG, "并发插入下的读取延迟 p50=" + p50 + "us p99=" + p99 + "us");
+
+        assertTrue("p99读取延迟过高: " + p99 + "us", p99 < TimeUnit.MILLISECONDS.toMicros(200));
+    }
+}
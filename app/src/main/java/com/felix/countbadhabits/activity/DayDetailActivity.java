@@ -14,11 +14,8 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.felix.countbadhabits.R;
 import com.felix.countbadhabits.adapter.TriggerRecordAdapter;
-import com.felix.countbadhabits.database.BadHabitDao;
-import com.felix.countbadhabits.database.DatabaseHelper;
-import com.felix.countbadhabits.database.TriggerRecordDao;
-import com.felix.countbadhabits.model.BadHabit;
 import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.repository.HabitRepository;
 import com.felix.countbadhabits.utils.DateUtils;
 
 import java.util.ArrayList;
@@ -30,6 +27,7 @@ import java.util.List;
 public class DayDetailActivity extends AppCompatActivity {
     private static final String EXTRA_DATE = "extra_date";
     private static final String EXTRA_HABIT_ID = "extra_habit_id";
+    private static final int PAGE_SIZE = 50;
 
     private Toolbar toolbar;
     private TextView tvDateTitle;
@@ -39,8 +37,11 @@ public class DayDetailActivity extends AppCompatActivity {
 
     private String date;
     private long habitId;
-    private TriggerRecordDao recordDao;
-    private BadHabitDao habitDao;
+    private int dailyLimit = -1;
+    private int totalCount;
+    private boolean loadingPage;
+    private boolean allPagesLoaded;
+    private HabitRepository repository;
     private TriggerRecordAdapter adapter;
     private List<TriggerRecord> recordList;
 
@@ -57,7 +58,7 @@ public class DayDetailActivity extends AppCompatActivity {
         setContentView(R.layout.activity_day_detail);
 
         getIntentData();
-        initDatabase();
+        repository = HabitRepository.getInstance(this);
         initViews();
         setupToolbar();
         setupRecyclerView();
@@ -74,12 +75,6 @@ public class DayDetailActivity extends AppCompatActivity {
         }
     }
 
-    private void initDatabase() {
-        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
-        recordDao = new TriggerRecordDao(dbHelper);
-        habitDao = new BadHabitDao(dbHelper);
-    }
-
     private void initViews() {
         toolbar = findViewById(R.id.toolbar);
         tvDateTitle = findViewById(R.id.tv_date_title);
@@ -120,27 +115,46 @@ public class DayDetailActivity extends AppCompatActivity {
             }
         });
         
+        // 滚动到接近末尾时加载下一页，内存中只随浏览进度增长
+        adapter.setOnLoadMoreListener(this::loadNextPage);
+        
         rvRecords.setLayoutManager(new LinearLayoutManager(this));
         rvRecords.setAdapter(adapter);
     }
 
     private void loadDayRecords() {
-        recordList.clear();
-        List<TriggerRecord> dayRecords = recordDao.getRecordsByDate(habitId, date);
-        recordList.addAll(dayRecords);
-        adapter.notifyDataSetChanged();
+        repository.getDailyLimit(habitId, limit -> {
+            if (isFinishing() || isDestroyed()) return;
+            dailyLimit = limit;
+            updateSummary();
+        });
+        // 总数来自每日汇总，不必等所有记录加载完
+        repository.getRecordCountByDate(habitId, date, count -> {
+            if (isFinishing() || isDestroyed()) return;
+            totalCount = count;
+            updateSummary();
+        });
+        loadNextPage();
+    }
 
-        updateSummary();
-        updateEmptyView();
+    private void loadNextPage() {
+        if (loadingPage || allPagesLoaded) return;
+        loadingPage = true;
+
+        TriggerRecord last = recordList.isEmpty() ? null : recordList.get(recordList.size() - 1);
+        repository.getRecordsPage(habitId, date, date, last, PAGE_SIZE, page -> {
+            if (isFinishing() || isDestroyed()) return;
+            loadingPage = false;
+            allPagesLoaded = page.size() < PAGE_SIZE;
+            adapter.appendRecords(page);
+            updateEmptyView();
+        });
     }
 
     private void updateSummary() {
-        BadHabit habit = habitDao.getHabitById(habitId);
-        int totalCount = recordList.size();
-        
         tvTotalCount.setText(getString(R.string.total_count, totalCount));
         
-        if (habit != null && totalCount > habit.getDailyLimit()) {
+        if (dailyLimit >= 0 && totalCount > dailyLimit) {
             tvTotalCount.setTextColor(getResources().getColor(R.color.status_exceeded));
         } else {
             tvTotalCount.setTextColor(getResources().getColor(R.color.status_normal));
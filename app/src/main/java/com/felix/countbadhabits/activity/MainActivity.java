@@ -1,6 +1,9 @@
 package com.felix.countbadhabits.activity;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
@@ -8,20 +11,23 @@ import android.widget.Spinner;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.fragment.app.Fragment;
 
 import com.felix.countbadhabits.R;
-import com.felix.countbadhabits.database.BadHabitDao;
-import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.InvalidationTracker;
 import com.felix.countbadhabits.fragment.HistoryFragment;
 import com.felix.countbadhabits.fragment.SettingsFragment;
 import com.felix.countbadhabits.fragment.TodayFragment;
 import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.repository.HabitRepository;
 import com.felix.countbadhabits.utils.PreferenceUtils;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,7 +39,9 @@ public class MainActivity extends AppCompatActivity {
     private Spinner habitSpinner;
     private Toolbar toolbar;
 
-    private BadHabitDao habitDao;
+    private HabitRepository repository;
+    // 习惯表变化（设置页增删改）时刷新下拉列表
+    private final InvalidationTracker.Observer habitsObserver = this::loadHabitList;
     private List<BadHabit> habitList;
     private ArrayAdapter<BadHabit> spinnerAdapter;
     private long currentHabitId = -1;
@@ -48,24 +56,47 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        initDatabase();
+        repository = HabitRepository.getInstance(this);
         initViews();
         setupToolbar();
         setupHabitSpinner();
         setupBottomNavigation();
         loadDefaultFragment();
+        repository.getInvalidationTracker().addHabitObserver(habitsObserver);
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        // 从设置页面返回时可能需要刷新习惯列表
-        refreshHabitList();
+    protected void onDestroy() {
+        super.onDestroy();
+        repository.getInvalidationTracker().removeObserver(habitsObserver);
     }
 
-    private void initDatabase() {
-        DatabaseHelper dbHelper = DatabaseHelper.getInstance(this);
-        habitDao = new BadHabitDao(dbHelper);
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_search) {
+            startActivity(SearchActivity.newIntent(this, currentHabitId));
+            return true;
+        } else if (item.getItemId() == R.id.action_query_metrics) {
+            startActivity(new Intent(this, QueryMetricsActivity.class));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * adb shell dumpsys activity com.felix.countbadhabits 时输出缓存和查询耗时统计
+     */
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer,
+                     @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        repository.dump(prefix, writer);
     }
 
     private void initViews() {
@@ -149,8 +180,14 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadHabitList() {
+        repository.getAllActiveHabits(habits -> {
+            if (isFinishing() || isDestroyed()) return;
+            showHabitList(habits);
+        });
+    }
+
+    private void showHabitList(List<BadHabit> habits) {
         habitList.clear();
-        List<BadHabit> habits = habitDao.getAllActiveHabits();
         
         if (habits.isEmpty()) {
             // 如果没有习惯，显示提示信息
@@ -179,13 +216,6 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * 刷新习惯列表（从设置页面调用）
-     */
-    public void refreshHabitList() {
-        loadHabitList();
-    }
-
     /**
      * 通知所有Fragment习惯发生了变化
      */
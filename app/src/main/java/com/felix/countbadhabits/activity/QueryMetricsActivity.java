@@ -0,0 +1,105 @@
+package com.felix.countbadhabits.activity;
+
+import android.os.Bundle;
+import android.view.MenuItem;
+import android.widget.Button;
+import android.widget.Switch;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+
+import com.felix.countbadhabits.R;
+import com.felix.countbadhabits.database.QueryMetrics;
+import com.felix.countbadhabits.repository.HabitRepository;
+import com.felix.countbadhabits.utils.PreferenceUtils;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * 调试用：查看DAO查询耗时直方图、慢查询和缓存命中情况
+ * 内容与 adb shell dumpsys activity 的输出相同。
+ */
+public class QueryMetricsActivity extends AppCompatActivity {
+    private Toolbar toolbar;
+    private Switch switchEnabled;
+    private Button btnRefresh, btnReset;
+    private TextView tvMetrics;
+
+    private HabitRepository repository;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_query_metrics);
+
+        repository = HabitRepository.getInstance(this);
+        initViews();
+        setupToolbar();
+        setupClickListeners();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer,
+                     @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        repository.dump(prefix, writer);
+    }
+
+    private void initViews() {
+        toolbar = findViewById(R.id.toolbar);
+        switchEnabled = findViewById(R.id.switch_enabled);
+        btnRefresh = findViewById(R.id.btn_refresh);
+        btnReset = findViewById(R.id.btn_reset);
+        tvMetrics = findViewById(R.id.tv_metrics);
+    }
+
+    private void setupToolbar() {
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setTitle(R.string.query_metrics);
+        }
+    }
+
+    private void setupClickListeners() {
+        switchEnabled.setChecked(QueryMetrics.isEnabled());
+        switchEnabled.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            PreferenceUtils.setQueryMetricsEnabled(this, isChecked);
+            QueryMetrics.setEnabled(isChecked);
+            refresh();
+        });
+        btnRefresh.setOnClickListener(v -> refresh());
+        btnReset.setOnClickListener(v -> {
+            QueryMetrics.reset();
+            refresh();
+        });
+    }
+
+    private void refresh() {
+        StringWriter text = new StringWriter();
+        PrintWriter writer = new PrintWriter(text);
+        repository.dump("", writer);
+        writer.flush();
+        tvMetrics.setText(text.toString());
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
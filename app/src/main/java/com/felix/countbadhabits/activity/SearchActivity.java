@@ -0,0 +1,195 @@
+package com.felix.countbadhabits.activity;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.Toolbar;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.felix.countbadhabits.R;
+import com.felix.countbadhabits.adapter.TriggerRecordAdapter;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.repository.HabitRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按描述搜索记录的Activity
+ */
+public class SearchActivity extends AppCompatActivity {
+    private static final String EXTRA_HABIT_ID = "extra_habit_id";
+    private static final int PAGE_SIZE = 50;
+    // 输入停顿后再搜索，避免每个字符都查询一次
+    private static final long SEARCH_DELAY_MS = 300;
+
+    private Toolbar toolbar;
+    private EditText etSearch;
+    private CheckBox cbCurrentHabitOnly;
+    private TextView tvNoResults;
+    private RecyclerView rvResults;
+
+    private long habitId;
+    private String query = "";
+    // 每次重新搜索加一，丢弃旧搜索晚到的结果
+    private int generation;
+    private boolean loadingPage;
+    private TriggerRecordDao.SearchCursor nextCursor;
+    private HabitRepository repository;
+    private TriggerRecordAdapter adapter;
+    private List<TriggerRecord> recordList;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable searchRunnable = this::startSearch;
+
+    public static Intent newIntent(Context context, long habitId) {
+        Intent intent = new Intent(context, SearchActivity.class);
+        intent.putExtra(EXTRA_HABIT_ID, habitId);
+        return intent;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        habitId = getIntent().getLongExtra(EXTRA_HABIT_ID, -1);
+        repository = HabitRepository.getInstance(this);
+        initViews();
+        setupToolbar();
+        setupRecyclerView();
+        setupSearchInput();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(searchRunnable);
+    }
+
+    private void initViews() {
+        toolbar = findViewById(R.id.toolbar);
+        etSearch = findViewById(R.id.et_search);
+        cbCurrentHabitOnly = findViewById(R.id.cb_current_habit_only);
+        tvNoResults = findViewById(R.id.tv_no_results);
+        rvResults = findViewById(R.id.rv_results);
+    }
+
+    private void setupToolbar() {
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setDisplayShowTitleEnabled(false);
+        }
+    }
+
+    private void setupRecyclerView() {
+        recordList = new ArrayList<>();
+        adapter = new TriggerRecordAdapter(recordList, new TriggerRecordAdapter.OnRecordClickListener() {
+            @Override
+            public void onEditRecord(TriggerRecord record) {
+                // 搜索结果只显示
+            }
+
+            @Override
+            public void onDeleteRecord(TriggerRecord record) {
+                // 搜索结果只显示
+            }
+        });
+        adapter.setShowDate(true);
+        adapter.setOnLoadMoreListener(this::loadNextPage);
+
+        rvResults.setLayoutManager(new LinearLayoutManager(this));
+        rvResults.setAdapter(adapter);
+    }
+
+    private void setupSearchInput() {
+        // 没有当前习惯时只能搜索全部
+        cbCurrentHabitOnly.setVisibility(habitId == -1 ? View.GONE : View.VISIBLE);
+        cbCurrentHabitOnly.setOnCheckedChangeListener((buttonView, isChecked) -> startSearch());
+
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                handler.removeCallbacks(searchRunnable);
+                handler.postDelayed(searchRunnable, SEARCH_DELAY_MS);
+            }
+        });
+        etSearch.requestFocus();
+    }
+
+    private void startSearch() {
+        handler.removeCallbacks(searchRunnable);
+        query = etSearch.getText().toString().trim();
+        generation++;
+        loadingPage = false;
+        nextCursor = null;
+        adapter.clearRecords();
+
+        if (query.isEmpty()) {
+            tvNoResults.setVisibility(View.GONE);
+            rvResults.setVisibility(View.VISIBLE);
+            return;
+        }
+        loadPage(null);
+    }
+
+    private void loadNextPage() {
+        if (loadingPage || nextCursor == null) return;
+        loadPage(nextCursor);
+    }
+
+    private void loadPage(TriggerRecordDao.SearchCursor after) {
+        loadingPage = true;
+        int requestGeneration = generation;
+        long searchHabitId = cbCurrentHabitOnly.isChecked() ? habitId : -1;
+
+        repository.searchRecords(query, searchHabitId, after, PAGE_SIZE, page -> {
+            if (isFinishing() || isDestroyed() || requestGeneration != generation) return;
+            loadingPage = false;
+            nextCursor = page.getNext();
+            adapter.appendRecords(page.getRecords());
+            updateEmptyView();
+        });
+    }
+
+    private void updateEmptyView() {
+        if (recordList.isEmpty()) {
+            tvNoResults.setVisibility(View.VISIBLE);
+            rvResults.setVisibility(View.GONE);
+        } else {
+            tvNoResults.setVisibility(View.GONE);
+            rvResults.setVisibility(View.VISIBLE);
+        }
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
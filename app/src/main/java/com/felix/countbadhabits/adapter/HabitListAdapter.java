@@ -13,6 +13,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.felix.countbadhabits.R;
 import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
 
 import java.util.List;
 
@@ -22,6 +23,8 @@ import java.util.List;
 public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.ViewHolder> {
     private List<BadHabit> habitList;
     private OnHabitActionListener actionListener;
+    // 所有习惯本月的统计，加载完成前为null
+    private StatisticsMatrix statistics;
 
     public interface OnHabitActionListener {
         void onEditHabit(BadHabit habit);
@@ -34,6 +37,14 @@ public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.View
         this.actionListener = actionListener;
     }
 
+    /**
+     * 设置各习惯本月的统计并刷新列表
+     */
+    public void setStatistics(StatisticsMatrix statistics) {
+        this.statistics = statistics;
+        notifyDataSetChanged();
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -56,6 +67,7 @@ public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.View
     class ViewHolder extends RecyclerView.ViewHolder {
         private TextView tvHabitName;
         private TextView tvDailyLimit;
+        private TextView tvMonthCount;
         private TextView tvCreatedDate;
         private Switch switchActive;
         private ImageButton btnEdit;
@@ -65,6 +77,7 @@ public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.View
             super(itemView);
             tvHabitName = itemView.findViewById(R.id.tv_habit_name);
             tvDailyLimit = itemView.findViewById(R.id.tv_daily_limit);
+            tvMonthCount = itemView.findViewById(R.id.tv_month_count);
             tvCreatedDate = itemView.findViewById(R.id.tv_created_date);
             switchActive = itemView.findViewById(R.id.switch_active);
             btnEdit = itemView.findViewById(R.id.btn_edit);
@@ -100,6 +113,14 @@ public class HabitListAdapter extends RecyclerView.Adapter<HabitListAdapter.View
             tvHabitName.setText(habit.getName());
             tvDailyLimit.setText(itemView.getContext().getString(R.string.daily_limit, habit.getDailyLimit()));
             tvCreatedDate.setText(itemView.getContext().getString(R.string.created_on, habit.getCreatedDate()));
+            int row = statistics != null ? statistics.rowOf(habit.getId()) : -1;
+            if (row >= 0) {
+                tvMonthCount.setText(itemView.getContext().getString(R.string.habit_month_total,
+                        statistics.getRowTotal(row)));
+                tvMonthCount.setVisibility(View.VISIBLE);
+            } else {
+                tvMonthCount.setVisibility(View.GONE);
+            }
 
             // 设置开关状态（需要先移除监听器再设置，避免触发回调）
             switchActive.setOnCheckedChangeListener(null);
@@ -10,6 +10,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.felix.countbadhabits.R;
 import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
 
 import java.util.List;
 
@@ -17,19 +18,57 @@ import java.util.List;
  * 触发记录列表适配器
  */
 public class TriggerRecordAdapter extends RecyclerView.Adapter<TriggerRecordAdapter.ViewHolder> {
+    // 距列表末尾不足该条数时请求下一页
+    private static final int LOAD_MORE_THRESHOLD = 10;
+
     private List<TriggerRecord> recordList;
     private OnRecordClickListener clickListener;
+    private OnLoadMoreListener loadMoreListener;
+    // 记录来自不同日期时（搜索结果）在时间前显示日期
+    private boolean showDate;
 
     public interface OnRecordClickListener {
         void onEditRecord(TriggerRecord record);
         void onDeleteRecord(TriggerRecord record);
     }
 
+    /**
+     * 滚动接近末尾时回调，用于分页加载
+     */
+    public interface OnLoadMoreListener {
+        void onLoadMore();
+    }
+
     public TriggerRecordAdapter(List<TriggerRecord> recordList, OnRecordClickListener clickListener) {
         this.recordList = recordList;
         this.clickListener = clickListener;
     }
 
+    public void setOnLoadMoreListener(OnLoadMoreListener loadMoreListener) {
+        this.loadMoreListener = loadMoreListener;
+    }
+
+    public void setShowDate(boolean showDate) {
+        this.showDate = showDate;
+    }
+
+    /**
+     * 清空列表（重新搜索时）
+     */
+    public void clearRecords() {
+        recordList.clear();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * 追加一页记录
+     */
+    public void appendRecords(List<TriggerRecord> records) {
+        int start = recordList.size();
+        recordList.addAll(records);
+        notifyItemRangeInserted(start, records.size());
+    }
+
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -42,6 +81,10 @@ public class TriggerRecordAdapter extends RecyclerView.Adapter<TriggerRecordAdap
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         TriggerRecord record = recordList.get(position);
         holder.bind(record);
+
+        if (loadMoreListener != null && position >= recordList.size() - LOAD_MORE_THRESHOLD) {
+            loadMoreListener.onLoadMore();
+        }
     }
 
     @Override
@@ -79,7 +122,11 @@ public class TriggerRecordAdapter extends RecyclerView.Adapter<TriggerRecordAdap
 
         public void bind(TriggerRecord record) {
             tvSequenceNumber.setText(itemView.getContext().getString(R.string.sequence_number, record.getSequenceNumber()));
-            tvTime.setText(record.getDisplayTime());
+            if (showDate) {
+                tvTime.setText(DateUtils.formatDateForDisplay(record.getTriggerDate()) + " " + record.getDisplayTime());
+            } else {
+                tvTime.setText(record.getDisplayTime());
+            }
             tvDescription.setText(record.getDisplayDescription());
         }
     }
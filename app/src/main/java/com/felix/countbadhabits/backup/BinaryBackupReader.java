@@ -0,0 +1,244 @@
+package com.felix.countbadhabits.backup;
+
+import com.felix.countbadhabits.model.BadHabit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 二进制备份读取
+ * 按 BinaryBackupWriter 的格式逐段读取并校验CRC，解码后的习惯、记录和归档计数依次交给 Visitor，
+ * 只缓存当前一段和描述字典。
+ */
+public class BinaryBackupReader {
+    // 单段负载的上限，防止损坏的长度字段导致分配过大的内存
+    private static final int MAX_SECTION_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 解码结果的接收者
+     */
+    public interface Visitor {
+        /**
+         * 习惯段，在该习惯的记录之前回调；习惯ID是备份时的ID
+         */
+        void visitHabits(List<BadHabit> habits) throws IOException;
+
+        void visitRecord(long habitId, long triggerMillis, String description) throws IOException;
+
+        /**
+         * 只剩计数的归档日
+         */
+        void visitArchivedCount(long habitId, long epochDay, int count) throws IOException;
+    }
+
+    private final InputStream in;
+    private final List<String> dictionary = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    public BinaryBackupReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * 检查输入开头的魔数判断是否为二进制备份，不消耗输入（输入流需支持mark）
+     */
+    public static boolean isBinaryBackup(InputStream in) throws IOException {
+        byte[] magic = new byte[BinaryBackupWriter.MAGIC.length];
+        in.mark(magic.length);
+        int read = 0;
+        while (read < magic.length) {
+            int n = in.read(magic, read, magic.length - read);
+            if (n < 0) break;
+            read += n;
+        }
+        in.reset();
+        return read == magic.length && Arrays.equals(magic, BinaryBackupWriter.MAGIC);
+    }
+
+    /**
+     * 读取整个备份
+     * @return 记录总数（不含归档计数）
+     */
+    public long read(Visitor visitor) throws IOException {
+        byte[] magic = new byte[BinaryBackupWriter.MAGIC.length];
+        readFully(magic, magic.length);
+        if (!Arrays.equals(magic, BinaryBackupWriter.MAGIC)) {
+            throw new IOException("不是二进制备份文件");
+        }
+        long version = readStreamVarLong();
+        if (version > BinaryBackupWriter.VERSION) {
+            throw new IOException("不支持的备份版本: " + version);
+        }
+
+        long records = 0;
+        while (true) {
+            int type = readSection();
+            switch (type) {
+                case BinaryBackupWriter.SECTION_HABITS:
+                    visitor.visitHabits(decodeHabits());
+                    break;
+                case BinaryBackupWriter.SECTION_RECORDS:
+                    records += decodeRecords(visitor);
+                    break;
+                case BinaryBackupWriter.SECTION_ARCHIVED_COUNTS:
+                    decodeArchivedCounts(visitor);
+                    break;
+                case BinaryBackupWriter.SECTION_END:
+                    long expected = readVarLong();
+                    if (expected != records) {
+                        throw new IOException("记录数不一致: " + records + " / " + expected);
+                    }
+                    return records;
+                default:
+                    // 更高版本新增的段类型，跳过
+                    break;
+            }
+        }
+    }
+
+    private List<BadHabit> decodeHabits() throws IOException {
+        int count = (int) readVarLong();
+        List<BadHabit> habits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = readVarLong();
+            String name = readString();
+            int dailyLimit = (int) readVarLong();
+            String createdDate = readString();
+            boolean active = readByte() != 0;
+            habits.add(new BadHabit(id, name, dailyLimit, createdDate, active));
+        }
+        return habits;
+    }
+
+    private int decodeRecords(Visitor visitor) throws IOException {
+        long habitId = readVarLong();
+        int count = (int) readVarLong();
+        long seconds = 0;
+        for (int i = 0; i < count; i++) {
+            seconds += unzigzag(readVarLong());
+            visitor.visitRecord(habitId, seconds * 1000, readDescription());
+        }
+        return count;
+    }
+
+    private void decodeArchivedCounts(Visitor visitor) throws IOException {
+        long habitId = readVarLong();
+        int days = (int) readVarLong();
+        long epochDay = 0;
+        for (int i = 0; i < days; i++) {
+            epochDay += unzigzag(readVarLong());
+            visitor.visitArchivedCount(habitId, epochDay, (int) readVarLong());
+        }
+    }
+
+    private String readDescription() throws IOException {
+        long code = readVarLong();
+        if (code == BinaryBackupWriter.DESCRIPTION_NULL) {
+            return null;
+        }
+        if (code == BinaryBackupWriter.DESCRIPTION_LITERAL) {
+            String description = readString();
+            if (dictionary.size() < BinaryBackupWriter.MAX_DICTIONARY_SIZE) {
+                dictionary.add(description);
+            }
+            return description;
+        }
+        long index = code - BinaryBackupWriter.DESCRIPTION_FIRST_INDEX;
+        if (index >= dictionary.size()) {
+            throw new IOException("描述字典序号越界: " + index);
+        }
+        return dictionary.get((int) index);
+    }
+
+    /**
+     * 读取下一段的负载到缓冲区并校验CRC
+     * @return 段类型
+     */
+    private int readSection() throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException("备份文件不完整");
+        }
+        long size = readStreamVarLong();
+        if (size > MAX_SECTION_SIZE) {
+            throw new IOException("段长度无效: " + size);
+        }
+        if (buffer.length < size + 4) {
+            buffer = new byte[(int) size + 4];
+        }
+        readFully(buffer, (int) size + 4);
+
+        crc.reset();
+        crc.update(type);
+        crc.update(buffer, 0, (int) size);
+        int expected = ((buffer[(int) size] & 0xFF) << 24) | ((buffer[(int) size + 1] & 0xFF) << 16)
+                | ((buffer[(int) size + 2] & 0xFF) << 8) | (buffer[(int) size + 3] & 0xFF);
+        if ((int) crc.getValue() != expected) {
+            throw new IOException("备份文件校验失败");
+        }
+
+        position = 0;
+        limit = (int) size;
+        return type;
+    }
+
+    private int readByte() throws IOException {
+        if (position >= limit) {
+            throw new IOException("段数据不完整");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("varint过长");
+    }
+
+    private String readString() throws IOException {
+        long length = readVarLong();
+        if (length > limit - position) {
+            throw new IOException("段数据不完整");
+        }
+        String value = new String(buffer, position, (int) length, StandardCharsets.UTF_8);
+        position += (int) length;
+        return value;
+    }
+
+    private long readStreamVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("备份文件不完整");
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("varint过长");
+    }
+
+    private void readFully(byte[] target, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(target, read, length - read);
+            if (n < 0) throw new EOFException("备份文件不完整");
+            read += n;
+        }
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
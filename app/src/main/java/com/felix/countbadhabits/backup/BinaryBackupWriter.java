@@ -0,0 +1,270 @@
+package com.felix.countbadhabits.backup;
+
+import com.felix.countbadhabits.model.BadHabit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 二进制备份写入
+ * 文件结构：魔数 + 版本号，之后是若干段，每段为 [类型(1字节)][负载长度(varint)][负载][CRC32(4字节)]，
+ * CRC覆盖类型和负载，读取时逐段校验。
+ * - 习惯段：所有习惯的完整信息
+ * - 记录段：同一习惯的一块记录（最多 RECORDS_PER_BLOCK 条），时间为本地秒数，按块内前一条做差后以zigzag varint存储；
+ *   描述按全文件共享的字典编码，首次出现时写入原文，之后只写字典序号
+ * - 归档计数段：同一习惯只剩计数的归档日（最多 RECORDS_PER_BLOCK 天），纪元日按前一天做差后以zigzag varint存储，
+ *   之后是当天次数；旧版本读取时跳过
+ * - 结束段：记录总数（不含归档计数），用于确认文件完整
+ * 只缓冲当前一段，可以边读数据库边写出。
+ */
+public class BinaryBackupWriter {
+    static final byte[] MAGIC = {'C', 'B', 'H', 'B'};
+    static final int VERSION = 1;
+
+    static final int SECTION_END = 0;
+    static final int SECTION_HABITS = 1;
+    static final int SECTION_RECORDS = 2;
+    static final int SECTION_ARCHIVED_COUNTS = 3;
+
+    static final int RECORDS_PER_BLOCK = 4096;
+    // 描述字典的容量，超出后新描述只写原文、不再加入字典（读写两端按同样规则处理）
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    // 描述编码：0 表示null，1 表示后跟原文的新描述，n>=2 表示字典中第 n-2 项
+    static final int DESCRIPTION_NULL = 0;
+    static final int DESCRIPTION_LITERAL = 1;
+    static final int DESCRIPTION_FIRST_INDEX = 2;
+
+    private final OutputStream out;
+    private final SectionBuffer section = new SectionBuffer();
+    private final SectionBuffer block = new SectionBuffer();
+    private final SectionBuffer countBlock = new SectionBuffer();
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private long blockHabitId = -1;
+    private int blockCount;
+    private long previousSeconds;
+    private long totalRecords;
+    private int countBlockDays;
+    private long previousDay;
+
+    /**
+     * 创建写入器并写出文件头（输出流由调用方关闭）
+     */
+    public BinaryBackupWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        section.reset();
+        section.writeVarLong(VERSION);
+        out.write(section.bytes, 0, section.size);
+    }
+
+    /**
+     * 写入习惯段
+     */
+    public void writeHabits(List<BadHabit> habits) throws IOException {
+        section.reset();
+        section.writeVarLong(habits.size());
+        for (BadHabit habit : habits) {
+            section.writeVarLong(habit.getId());
+            section.writeString(habit.getName());
+            section.writeVarLong(habit.getDailyLimit());
+            section.writeString(habit.getCreatedDate());
+            section.writeByte(habit.isActive() ? 1 : 0);
+        }
+        writeSection(SECTION_HABITS, section);
+    }
+
+    /**
+     * 开始写入某个习惯的记录（记录需按时间升序写入）
+     */
+    public void beginRecords(long habitId) throws IOException {
+        flushBlock();
+        blockHabitId = habitId;
+    }
+
+    /**
+     * 写入一条记录
+     * @param triggerMillis 本地毫秒数（精确到秒）
+     */
+    public void writeRecord(long triggerMillis, String description) throws IOException {
+        if (blockHabitId < 0) {
+            throw new IllegalStateException("写入记录前需要先调用 beginRecords");
+        }
+        if (blockCount == RECORDS_PER_BLOCK) {
+            flushBlock();
+        }
+
+        long seconds = Math.floorDiv(triggerMillis, 1000);
+        block.writeVarLong(zigzag(seconds - previousSeconds));
+        previousSeconds = seconds;
+
+        if (description == null) {
+            block.writeVarLong(DESCRIPTION_NULL);
+        } else {
+            Integer index = dictionary.get(description);
+            if (index != null) {
+                block.writeVarLong(DESCRIPTION_FIRST_INDEX + index);
+            } else {
+                block.writeVarLong(DESCRIPTION_LITERAL);
+                block.writeString(description);
+                if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+                    dictionary.put(description, dictionary.size());
+                }
+            }
+        }
+        blockCount++;
+        totalRecords++;
+    }
+
+    /**
+     * 写入当前习惯一个只剩计数的归档日（按日期升序写入，在 endRecords 之前）
+     */
+    public void writeArchivedCount(long epochDay, int count) throws IOException {
+        if (blockHabitId < 0) {
+            throw new IllegalStateException("写入归档计数前需要先调用 beginRecords");
+        }
+        if (countBlockDays == RECORDS_PER_BLOCK) {
+            flushCountBlock();
+        }
+
+        countBlock.writeVarLong(zigzag(epochDay - previousDay));
+        previousDay = epochDay;
+        countBlock.writeVarLong(count);
+        countBlockDays++;
+    }
+
+    /**
+     * 结束当前习惯的记录
+     */
+    public void endRecords() throws IOException {
+        flushBlock();
+        flushCountBlock();
+        blockHabitId = -1;
+    }
+
+    /**
+     * 写入结束段并刷新输出流
+     */
+    public void finish() throws IOException {
+        flushBlock();
+        section.reset();
+        section.writeVarLong(totalRecords);
+        writeSection(SECTION_END, section);
+        out.flush();
+    }
+
+    public long getTotalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * 把当前块作为一个记录段写出：[习惯ID][条数][记录...]
+     */
+    private void flushBlock() throws IOException {
+        if (blockCount > 0) {
+            section.reset();
+            section.writeVarLong(blockHabitId);
+            section.writeVarLong(blockCount);
+            section.write(block.bytes, 0, block.size);
+            writeSection(SECTION_RECORDS, section);
+        }
+        block.reset();
+        blockCount = 0;
+        previousSeconds = 0;
+    }
+
+    /**
+     * 把当前的归档计数作为一个归档计数段写出：[习惯ID][天数][(纪元日差, 次数)...]
+     */
+    private void flushCountBlock() throws IOException {
+        if (countBlockDays > 0) {
+            section.reset();
+            section.writeVarLong(blockHabitId);
+            section.writeVarLong(countBlockDays);
+            section.write(countBlock.bytes, 0, countBlock.size);
+            writeSection(SECTION_ARCHIVED_COUNTS, section);
+        }
+        countBlock.reset();
+        countBlockDays = 0;
+        previousDay = 0;
+    }
+
+    private void writeSection(int type, SectionBuffer payload) throws IOException {
+        crc.reset();
+        crc.update(type);
+        crc.update(payload.bytes, 0, payload.size);
+
+        out.write(type);
+        writeVarLong(out, payload.size);
+        out.write(payload.bytes, 0, payload.size);
+        int value = (int) crc.getValue();
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * 可复用的段缓冲区
+     */
+    private static class SectionBuffer {
+        byte[] bytes = new byte[8192];
+        int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void write(byte[] source, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.felix.countbadhabits.backup;
+
+import android.util.JsonWriter;
+
+import com.felix.countbadhabits.database.ArchiveDao;
+import com.felix.countbadhabits.database.BadHabitDao;
+import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 数据导出
+ * 习惯列表很小，直接读取；触发记录按习惯逐个用只向前的Cursor遍历，边读边写入带缓冲的输出流，
+ * 不在内存中累积记录，峰值内存与记录总数无关。
+ * 只剩计数的归档日（归档时未保存描述）按 习惯+日期+次数 导出，导入时恢复为归档计数，导出总数与统计一致。
+ * 追加日志中还未写入数据库的记录由调用方传入，接在各习惯的数据库记录之后导出。
+ * 二进制格式见 BinaryBackupWriter，体积最小、解析最快，适合备份与恢复。
+ */
+public class DataExporter {
+    // 导出格式版本，导入时据此解析
+    public static final int FORMAT_VERSION = 1;
+    public static final String FORMAT_NAME = "countbadhabits";
+
+    // CSV 列：每行一条触发记录，附带所属习惯的信息；只剩计数的归档日一天一行，只填最后两列
+    static final String[] CSV_HEADER = {"habit_id", "habit_name", "daily_limit", "trigger_datetime",
+            "description", "sequence_number", "archived_date", "archived_count"};
+
+    // JSON 字段名
+    static final String JSON_FORMAT = "format";
+    static final String JSON_VERSION = "version";
+    static final String JSON_HABITS = "habits";
+    static final String JSON_HABIT_ID = "id";
+    static final String JSON_HABIT_NAME = "name";
+    static final String JSON_HABIT_DAILY_LIMIT = "daily_limit";
+    static final String JSON_HABIT_CREATED_DATE = "created_date";
+    static final String JSON_HABIT_ACTIVE = "active";
+    static final String JSON_RECORDS = "records";
+    static final String JSON_RECORD_DATETIME = "datetime";
+    static final String JSON_RECORD_DESCRIPTION = "description";
+    static final String JSON_RECORD_SEQUENCE = "sequence";
+    static final String JSON_ARCHIVED_COUNTS = "archived_counts";
+    static final String JSON_ARCHIVED_DATE = "date";
+    static final String JSON_ARCHIVED_COUNT = "count";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 每导出多少条记录报告一次进度
+    private static final int PROGRESS_INTERVAL = 500;
+
+    public enum Format {
+        CSV("text/csv", ".csv"),
+        JSON("application/json", ".json"),
+        BINARY("application/octet-stream", ".cbhb");
+
+        public final String mimeType;
+        public final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * 导出进度回调（在导出线程上调用）
+     */
+    public interface ProgressListener {
+        void onProgress(long exported, long total);
+    }
+
+    private final BadHabitDao habitDao;
+    private final TriggerRecordDao recordDao;
+    private final ArchiveDao archiveDao;
+
+    public DataExporter(DatabaseHelper dbHelper) {
+        this.habitDao = new BadHabitDao(dbHelper);
+        this.recordDao = new TriggerRecordDao(dbHelper);
+        this.archiveDao = new ArchiveDao(dbHelper);
+    }
+
+    /**
+     * 导出所有习惯和记录到输出流（完成后关闭输出流）
+     * @return 导出的触发次数（记录条数加上只剩计数的归档次数）
+     */
+    public long export(OutputStream out, Format format, ProgressListener listener) throws IOException {
+        return export(out, format, listener, Collections.<TriggerRecord>emptyList());
+    }
+
+    /**
+     * 同 export，一并导出还未写入数据库的记录；其中已被写入数据库的（ID相同）只导出一次
+     */
+    public long export(OutputStream out, Format format, ProgressListener listener, List<TriggerRecord> pending)
+            throws IOException {
+        Progress progress = new Progress(recordDao.getTotalRecordCount() + pending.size(), listener);
+        List<BadHabit> habits = habitDao.getAllHabits();
+        Map<Long, List<TriggerRecord>> pendingByHabit = new HashMap<>();
+        for (TriggerRecord record : pending) {
+            List<TriggerRecord> records = pendingByHabit.get(record.getHabitId());
+            if (records == null) {
+                records = new ArrayList<>();
+                pendingByHabit.put(record.getHabitId(), records);
+            }
+            records.add(record);
+        }
+        if (format == Format.BINARY) {
+            OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+            try {
+                writeBinary(buffered, habits, pendingByHabit, progress);
+            } finally {
+                buffered.close();
+            }
+            progress.finish();
+            return progress.exported;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        try {
+            if (format == Format.CSV) {
+                writeCsv(writer, habits, pendingByHabit, progress);
+            } else {
+                writeJson(writer, habits, pendingByHabit, progress);
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+        progress.finish();
+        return progress.exported;
+    }
+
+    private void writeCsv(Writer writer, List<BadHabit> habits, Map<Long, List<TriggerRecord>> pending,
+                          Progress progress) throws IOException {
+        writeCsvRow(writer, CSV_HEADER);
+
+        String[] row = new String[CSV_HEADER.length];
+        for (BadHabit habit : habits) {
+            row[0] = String.valueOf(habit.getId());
+            row[1] = habit.getName();
+            row[2] = String.valueOf(habit.getDailyLimit());
+            forEachRecord(habit.getId(), pending, (habitId, triggerMillis, description, sequenceNumber) -> {
+                row[3] = DateUtils.formatLocalMillis(triggerMillis);
+                row[4] = description;
+                row[5] = String.valueOf(sequenceNumber);
+                writeCsvRow(writer, row);
+                progress.increment();
+            });
+            row[3] = row[4] = row[5] = null;
+            archiveDao.forEachArchivedCount(habit.getId(), (epochDay, count) -> {
+                row[6] = DateUtils.formatEpochDay(epochDay);
+                row[7] = String.valueOf(count);
+                writeCsvRow(writer, row);
+                progress.add(count);
+            });
+            row[6] = row[7] = null;
+        }
+    }
+
+    private void writeJson(Writer writer, List<BadHabit> habits, Map<Long, List<TriggerRecord>> pending,
+                           Progress progress) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name(JSON_FORMAT).value(FORMAT_NAME);
+        json.name(JSON_VERSION).value(FORMAT_VERSION);
+        json.name(JSON_HABITS).beginArray();
+        for (BadHabit habit : habits) {
+            json.beginObject();
+            json.name(JSON_HABIT_ID).value(habit.getId());
+            json.name(JSON_HABIT_NAME).value(habit.getName());
+            json.name(JSON_HABIT_DAILY_LIMIT).value(habit.getDailyLimit());
+            json.name(JSON_HABIT_CREATED_DATE).value(habit.getCreatedDate());
+            json.name(JSON_HABIT_ACTIVE).value(habit.isActive());
+            json.name(JSON_RECORDS).beginArray();
+            forEachRecord(habit.getId(), pending, (habitId, triggerMillis, description, sequenceNumber) -> {
+                json.beginObject();
+                json.name(JSON_RECORD_DATETIME).value(DateUtils.formatLocalMillis(triggerMillis));
+                json.name(JSON_RECORD_DESCRIPTION).value(description);
+                json.name(JSON_RECORD_SEQUENCE).value(sequenceNumber);
+                json.endObject();
+                progress.increment();
+            });
+            json.endArray();
+            json.name(JSON_ARCHIVED_COUNTS).beginArray();
+            archiveDao.forEachArchivedCount(habit.getId(), (epochDay, count) -> {
+                json.beginObject();
+                json.name(JSON_ARCHIVED_DATE).value(DateUtils.formatEpochDay(epochDay));
+                json.name(JSON_ARCHIVED_COUNT).value(count);
+                json.endObject();
+                progress.add(count);
+            });
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        // 只刷新，输出流由 export 统一关闭
+        json.flush();
+    }
+
+    private void writeBinary(OutputStream out, List<BadHabit> habits, Map<Long, List<TriggerRecord>> pending,
+                             Progress progress) throws IOException {
+        BinaryBackupWriter writer = new BinaryBackupWriter(out);
+        writer.writeHabits(habits);
+        for (BadHabit habit : habits) {
+            writer.beginRecords(habit.getId());
+            forEachRecord(habit.getId(), pending, (habitId, triggerMillis, description, sequenceNumber) -> {
+                writer.writeRecord(triggerMillis, description);
+                progress.increment();
+            });
+            archiveDao.forEachArchivedCount(habit.getId(), (epochDay, count) -> {
+                writer.writeArchivedCount(epochDay, count);
+                progress.add(count);
+            });
+            writer.endRecords();
+        }
+        writer.finish();
+    }
+
+    /**
+     * 访问一个习惯的数据库记录，再访问其未入库的记录
+     */
+    private void forEachRecord(long habitId, Map<Long, List<TriggerRecord>> pendingByHabit,
+                               TriggerRecordDao.RecordVisitor visitor) throws IOException {
+        List<TriggerRecord> pending = pendingByHabit.get(habitId);
+        if (pending == null) {
+            recordDao.forEachRecord(habitId, visitor);
+            return;
+        }
+        Set<Long> pendingIds = new HashSet<>();
+        for (TriggerRecord record : pending) {
+            pendingIds.add(record.getId());
+        }
+        recordDao.forEachRecord(habitId, pendingIds, visitor);
+        for (TriggerRecord record : pending) {
+            visitor.visit(habitId, DateUtils.toLocalMillis(record.getTriggerDateTime()), record.getDescription(),
+                    record.getSequenceNumber());
+        }
+    }
+
+    /**
+     * 写入一行CSV（RFC 4180：含逗号、引号或换行的字段加引号，引号双写）
+     */
+    static void writeCsvRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) writer.write(',');
+            String field = fields[i];
+            if (field == null) continue;
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                    || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * 进度计数，按固定间隔回调，避免每行都通知界面
+     */
+    private static class Progress {
+        final long total;
+        final ProgressListener listener;
+        long exported;
+
+        Progress(long total, ProgressListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        void increment() {
+            add(1);
+        }
+
+        void add(long count) {
+            long previous = exported;
+            exported += count;
+            if (listener != null && exported / PROGRESS_INTERVAL != previous / PROGRESS_INTERVAL) {
+                listener.onProgress(exported, Math.max(total, exported));
+            }
+        }
+
+        void finish() {
+            if (listener != null) {
+                listener.onProgress(exported, exported);
+            }
+        }
+    }
+}
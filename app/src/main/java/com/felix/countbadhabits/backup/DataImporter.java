@@ -0,0 +1,558 @@
+package com.felix.countbadhabits.backup;
+
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.felix.countbadhabits.database.ArchiveDao;
+import com.felix.countbadhabits.database.BadHabitDao;
+import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 数据导入
+ * 读取 DataExporter 导出的CSV、JSON或二进制备份（按文件开头自动识别），边解析边写入，每 CHUNK_SIZE 条记录提交一个事务，
+ * 内存中只保留当前一批记录和用于去重的键集合。
+ * 习惯按名称匹配已有习惯，不存在时新建；与库中已有记录（习惯+时间+描述）相同的记录视为重复并跳过。
+ * 只剩计数的归档日恢复为归档计数；库中当天已有记录或归档时无法区分是否重复，整天视为重复。
+ * 每批提交后回调已处理的输入条数，中断后从该位置继续导入即可，已提交的部分不会重复写入。
+ */
+public class DataImporter {
+    // 每个事务提交的记录条数
+    static final int CHUNK_SIZE = 1000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * 导入进度回调（每批记录提交后在导入线程上调用）
+     * @param processed 已处理（已提交或已判定为重复/无效）的输入记录条数
+     */
+    public interface ProgressListener {
+        void onProgress(long processed);
+    }
+
+    /**
+     * 导入结果
+     */
+    public static class Result {
+        private final long imported;
+        private final long duplicates;
+        private final long skipped;
+        private final long elapsedMillis;
+
+        Result(long imported, long duplicates, long skipped, long elapsedMillis) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.skipped = skipped;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * 格式无效而跳过的记录条数
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        /**
+         * 每秒处理的记录条数（含重复和跳过的）
+         */
+        public long getRowsPerSecond() {
+            long rows = imported + duplicates + skipped;
+            return elapsedMillis > 0 ? rows * 1000 / elapsedMillis : rows;
+        }
+    }
+
+    private final BadHabitDao habitDao;
+    private final TriggerRecordDao recordDao;
+    private final ArchiveDao archiveDao;
+
+    public DataImporter(DatabaseHelper dbHelper) {
+        this.habitDao = new BadHabitDao(dbHelper);
+        this.recordDao = new TriggerRecordDao(dbHelper);
+        this.archiveDao = new ArchiveDao(dbHelper);
+    }
+
+    /**
+     * 从输入流导入数据（完成后关闭输入流）
+     * @param resumeFrom 跳过前多少条输入记录（上次中断时已处理的条数，首次导入为0）
+     */
+    public Result importFrom(InputStream in, long resumeFrom, ProgressListener listener) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        Session session = new Session(resumeFrom, listener);
+        try {
+            if (BinaryBackupReader.isBinaryBackup(buffered)) {
+                readBinary(buffered, session);
+            } else {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(buffered, StandardCharsets.UTF_8), BUFFER_SIZE);
+                if (isJson(reader)) {
+                    readJson(reader, session);
+                } else {
+                    readCsv(reader, session);
+                }
+            }
+            session.commit();
+        } finally {
+            buffered.close();
+        }
+        return new Result(session.imported, session.duplicates, session.skipped,
+                SystemClock.elapsedRealtime() - start);
+    }
+
+    /**
+     * 跳过BOM后按第一个非空白字符判断格式，不消耗其余输入
+     */
+    private static boolean isJson(BufferedReader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != BYTE_ORDER_MARK) {
+            reader.reset();
+        }
+        reader.mark(BUFFER_SIZE);
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        reader.reset();
+        return c == '{';
+    }
+
+    private void readCsv(BufferedReader reader, Session session) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> header = csv.readRow();
+        if (header == null) return;
+
+        int nameColumn = header.indexOf(DataExporter.CSV_HEADER[1]);
+        int limitColumn = header.indexOf(DataExporter.CSV_HEADER[2]);
+        int datetimeColumn = header.indexOf(DataExporter.CSV_HEADER[3]);
+        int descriptionColumn = header.indexOf(DataExporter.CSV_HEADER[4]);
+        int archivedDateColumn = header.indexOf(DataExporter.CSV_HEADER[6]);
+        int archivedCountColumn = header.indexOf(DataExporter.CSV_HEADER[7]);
+        if (nameColumn < 0 || datetimeColumn < 0) {
+            throw new IOException("CSV缺少必需的列: " + header);
+        }
+
+        List<String> row;
+        while ((row = csv.readRow()) != null) {
+            if (row.size() == 1 && row.get(0).isEmpty()) continue;    // 空行
+            if (row.size() <= Math.max(nameColumn, datetimeColumn)) {
+                session.skip();
+                continue;
+            }
+            String name = row.get(nameColumn);
+            int dailyLimit = parseLimit(limitColumn >= 0 && limitColumn < row.size() ? row.get(limitColumn) : null);
+            HabitTarget habit = resolveHabit(session, name, dailyLimit, null);
+            if (archivedDateColumn >= 0 && archivedCountColumn >= 0 && archivedCountColumn < row.size()
+                    && !row.get(archivedCountColumn).isEmpty()) {
+                session.acceptArchivedCount(habit, row.get(archivedDateColumn), row.get(archivedCountColumn));
+                continue;
+            }
+            String description = descriptionColumn >= 0 && descriptionColumn < row.size()
+                    ? row.get(descriptionColumn) : null;
+            session.accept(habit, row.get(datetimeColumn), description);
+        }
+    }
+
+    private void readJson(BufferedReader reader, Session session) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (DataExporter.JSON_FORMAT.equals(name)) {
+                String format = json.nextString();
+                if (!DataExporter.FORMAT_NAME.equals(format)) {
+                    throw new IOException("不支持的数据格式: " + format);
+                }
+            } else if (DataExporter.JSON_VERSION.equals(name)) {
+                int version = json.nextInt();
+                if (version > DataExporter.FORMAT_VERSION) {
+                    throw new IOException("不支持的数据版本: " + version);
+                }
+            } else if (DataExporter.JSON_HABITS.equals(name)) {
+                json.beginArray();
+                while (json.hasNext()) {
+                    readJsonHabit(json, session);
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readBinary(InputStream in, Session session) throws IOException {
+        Map<Long, HabitTarget> targets = new HashMap<>();
+        new BinaryBackupReader(in).read(new BinaryBackupReader.Visitor() {
+            @Override
+            public void visitHabits(List<BadHabit> habits) throws IOException {
+                for (BadHabit habit : habits) {
+                    targets.put(habit.getId(), resolveHabit(session, habit.getName(), habit.getDailyLimit(),
+                            habit.getCreatedDate()));
+                }
+            }
+
+            @Override
+            public void visitRecord(long habitId, long triggerMillis, String description) throws IOException {
+                HabitTarget habit = targets.get(habitId);
+                if (habit == null) {
+                    throw new IOException("记录所属的习惯不存在: " + habitId);
+                }
+                session.accept(habit, triggerMillis, description);
+            }
+
+            @Override
+            public void visitArchivedCount(long habitId, long epochDay, int count) throws IOException {
+                HabitTarget habit = targets.get(habitId);
+                if (habit == null) {
+                    throw new IOException("归档计数所属的习惯不存在: " + habitId);
+                }
+                session.acceptArchivedCount(habit, epochDay, count);
+            }
+        });
+    }
+
+    /**
+     * 读取一个习惯对象；习惯的字段在 records 和 archived_counts 之前，读到它们时即可确定目标习惯并逐条导入
+     */
+    private void readJsonHabit(JsonReader json, Session session) throws IOException {
+        String habitName = null;
+        int dailyLimit = -1;
+        String createdDate = null;
+        HabitTarget habit = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+            } else if (DataExporter.JSON_HABIT_NAME.equals(name)) {
+                habitName = json.nextString();
+            } else if (DataExporter.JSON_HABIT_DAILY_LIMIT.equals(name)) {
+                dailyLimit = json.nextInt();
+            } else if (DataExporter.JSON_HABIT_CREATED_DATE.equals(name)) {
+                createdDate = json.nextString();
+            } else if (DataExporter.JSON_RECORDS.equals(name) || DataExporter.JSON_ARCHIVED_COUNTS.equals(name)) {
+                if (habitName == null) {
+                    throw new IOException("习惯名称必须出现在记录之前");
+                }
+                if (habit == null) {
+                    habit = resolveHabit(session, habitName, dailyLimit, createdDate);
+                }
+                boolean records = DataExporter.JSON_RECORDS.equals(name);
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (records) {
+                        readJsonRecord(json, session, habit);
+                    } else {
+                        readJsonArchivedCount(json, session, habit);
+                    }
+                }
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+
+    private void readJsonRecord(JsonReader json, Session session, HabitTarget habit) throws IOException {
+        String datetime = null;
+        String description = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+            } else if (DataExporter.JSON_RECORD_DATETIME.equals(name)) {
+                datetime = json.nextString();
+            } else if (DataExporter.JSON_RECORD_DESCRIPTION.equals(name)) {
+                description = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        session.accept(habit, datetime, description);
+    }
+
+    private void readJsonArchivedCount(JsonReader json, Session session, HabitTarget habit) throws IOException {
+        String date = null;
+        String count = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (json.peek() == JsonToken.NULL) {
+                json.skipValue();
+            } else if (DataExporter.JSON_ARCHIVED_DATE.equals(name)) {
+                date = json.nextString();
+            } else if (DataExporter.JSON_ARCHIVED_COUNT.equals(name)) {
+                count = json.nextString();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        session.acceptArchivedCount(habit, date, count);
+    }
+
+    /**
+     * 按名称找到已有习惯，不存在时新建
+     */
+    private HabitTarget resolveHabit(Session session, String name, int dailyLimit, String createdDate)
+            throws IOException {
+        HabitTarget target = session.habits.get(name);
+        if (target != null) return target;
+
+        if (!session.habitsLoaded) {
+            session.habitsLoaded = true;
+            for (BadHabit habit : habitDao.getAllHabits()) {
+                session.habits.put(habit.getName(), new HabitTarget(habit.getId(), false));
+            }
+            target = session.habits.get(name);
+            if (target != null) return target;
+        }
+
+        BadHabit habit = new BadHabit(name, dailyLimit > 0 ? dailyLimit : new BadHabit().getDailyLimit());
+        if (createdDate != null) {
+            habit.setCreatedDate(createdDate);
+        }
+        long id = habitDao.insertHabit(habit);
+        if (id == -1) {
+            throw new IOException("无法创建习惯: " + name);
+        }
+        // 新建的习惯没有已有记录，不需要加载去重键
+        target = new HabitTarget(id, true);
+        session.habits.put(name, target);
+        return target;
+    }
+
+    private static int parseLimit(String value) {
+        if (value == null || value.isEmpty()) return -1;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 一次导入过程中的状态：当前批次、去重键集合和各项计数
+     */
+    private class Session {
+        final long resumeFrom;
+        final ProgressListener listener;
+        final Map<String, HabitTarget> habits = new HashMap<>();
+        boolean habitsLoaded;
+        final Set<RecordKey> seen = new HashSet<>();
+        final List<TriggerRecord> chunk = new ArrayList<>(CHUNK_SIZE);
+        // 待恢复的归档计数 {习惯ID, 纪元日, 次数}，与记录一起按批提交
+        final List<long[]> archivedCounts = new ArrayList<>();
+        long processed;
+        long imported;
+        long duplicates;
+        long skipped;
+
+        Session(long resumeFrom, ProgressListener listener) {
+            this.resumeFrom = resumeFrom;
+            this.listener = listener;
+        }
+
+        void accept(HabitTarget habit, String datetime, String description) throws IOException {
+            if (processed + 1 <= resumeFrom) {
+                processed++;    // 上次已提交的部分
+                return;
+            }
+
+            long millis;
+            try {
+                millis = DateUtils.toLocalMillis(datetime);
+            } catch (DateTimeParseException | NullPointerException e) {
+                skip();
+                return;
+            }
+            accept(habit, millis, description);
+        }
+
+        void accept(HabitTarget habit, long millis, String description) throws IOException {
+            if (++processed <= resumeFrom) return;    // 上次已提交的部分
+
+            if (description != null && description.isEmpty()) {
+                description = null;
+            }
+
+            seed(habit);
+            long day = DateUtils.epochDayOfLocalMillis(millis);
+            // 已归档的天只剩计数，无法逐条比对，视为重复
+            if (habit.archivedDays.contains(day) || !seen.add(new RecordKey(habit.id, millis, description))) {
+                duplicates++;
+                return;
+            }
+
+            chunk.add(new TriggerRecord(0, habit.id, DateUtils.formatEpochDay(day),
+                    DateUtils.formatLocalMillisTime(millis), DateUtils.formatLocalMillis(millis), description, 0));
+            if (chunk.size() + archivedCounts.size() >= CHUNK_SIZE) {
+                commit();
+            }
+        }
+
+        void acceptArchivedCount(HabitTarget habit, String date, String count) throws IOException {
+            if (processed + 1 <= resumeFrom) {
+                processed++;    // 上次已提交的部分
+                return;
+            }
+
+            long day;
+            int parsedCount;
+            try {
+                day = DateUtils.toEpochDay(date);
+                parsedCount = Integer.parseInt(count);
+            } catch (DateTimeParseException | NumberFormatException | NullPointerException e) {
+                skip();
+                return;
+            }
+            acceptArchivedCount(habit, day, parsedCount);
+        }
+
+        void acceptArchivedCount(HabitTarget habit, long day, int count) throws IOException {
+            if (++processed <= resumeFrom) return;    // 上次已提交的部分
+
+            if (count <= 0) {
+                skipped++;
+                return;
+            }
+            seed(habit);
+            // 导入前当天已有数据时，无法判断计数中有多少已经存在
+            if (habit.archivedDays.contains(day) || habit.recordDays.contains(day)) {
+                duplicates += count;
+                return;
+            }
+
+            archivedCounts.add(new long[]{habit.id, day, count});
+            if (chunk.size() + archivedCounts.size() >= CHUNK_SIZE) {
+                commit();
+            }
+        }
+
+        void skip() {
+            if (++processed > resumeFrom) {
+                skipped++;
+            }
+        }
+
+        /**
+         * 在一个事务中写入当前批次，然后报告进度
+         */
+        void commit() {
+            if (!chunk.isEmpty()) {
+                imported += recordDao.insertRecords(chunk);
+                chunk.clear();
+            }
+            if (!archivedCounts.isEmpty()) {
+                archiveDao.restoreArchivedCounts(archivedCounts);
+                for (long[] count : archivedCounts) {
+                    imported += count[2];
+                }
+                archivedCounts.clear();
+            }
+            if (listener != null && processed > resumeFrom) {
+                listener.onProgress(processed);
+            }
+        }
+
+        /**
+         * 把已有习惯在库中的记录加入去重集合，并记下已有记录和归档的天（每个习惯只加载一次）
+         */
+        private void seed(HabitTarget habit) throws IOException {
+            if (habit.seeded) return;
+
+            Set<Long> recordDays = new HashSet<>();
+            recordDao.forEachRecord(habit.id, (id, triggerMillis, description, sequenceNumber) -> {
+                seen.add(new RecordKey(id, triggerMillis, description));
+                recordDays.add(DateUtils.epochDayOfLocalMillis(triggerMillis));
+            });
+            habit.recordDays = recordDays;
+            habit.archivedDays = archiveDao.getArchivedDays(habit.id);
+            habit.seeded = true;
+        }
+    }
+
+    /**
+     * 导入目标习惯
+     */
+    private static class HabitTarget {
+        final long id;
+        boolean seeded;    // 是否已加载该习惯已有记录的去重键
+        Set<Long> archivedDays = Collections.emptySet();    // 已归档的纪元日
+        Set<Long> recordDays = Collections.emptySet();    // 导入前已有记录的纪元日
+
+        HabitTarget(long id, boolean seeded) {
+            this.id = id;
+            this.seeded = seeded;
+        }
+    }
+
+    /**
+     * 去重键：习惯+时间+描述（空描述与null视为相同）
+     */
+    private static class RecordKey {
+        final long habitId;
+        final long millis;
+        final String description;
+
+        RecordKey(long habitId, long millis, String description) {
+            this.habitId = habitId;
+            this.millis = millis;
+            this.description = description != null ? description : "";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RecordKey)) return false;
+            RecordKey other = (RecordKey) o;
+            return habitId == other.habitId && millis == other.millis && description.equals(other.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * Long.hashCode(habitId) + Long.hashCode(millis)) * 31 + description.hashCode();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.felix.countbadhabits.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.felix.countbadhabits.utils.DateUtils;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 归档数据访问对象
+ * 早于保留期限的原始记录按天折叠为 archived_daily_counts 中的计数，可选地把当天各条记录的时刻和描述
+ * 压缩保存在 archived_records 中。汇总表不随归档改变，日历和图表的统计结果与归档前完全相同。
+ */
+public class ArchiveDao {
+    private static final String ARCHIVABLE_HABITS_SQL = "SELECT " + DatabaseHelper.COLUMN_HABIT_ID
+            + " FROM " + DatabaseHelper.TABLE_BAD_HABITS
+            + " WHERE " + DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 0"
+            + " AND EXISTS (SELECT 1 FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = " + DatabaseHelper.TABLE_BAD_HABITS
+            + "." + DatabaseHelper.COLUMN_HABIT_ID
+            + " AND " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " < ?)";
+    // 某习惯最早的若干个待归档的天
+    private static final String ARCHIVABLE_DAYS_SQL = "SELECT " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY
+            + " FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " < ?"
+            + " GROUP BY " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY
+            + " ORDER BY " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " ASC"
+            + " LIMIT ?";
+    private static final String INCREMENT_COUNT_SQL = "UPDATE " + DatabaseHelper.TABLE_ARCHIVED_DAILY_COUNTS
+            + " SET " + DatabaseHelper.COLUMN_ARCHIVE_TRIGGER_COUNT + " = "
+            + DatabaseHelper.COLUMN_ARCHIVE_TRIGGER_COUNT + " + ?"
+            + " WHERE " + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_ARCHIVE_DAY + " = ?";
+    private static final String INSERT_COUNT_SQL = "INSERT INTO " + DatabaseHelper.TABLE_ARCHIVED_DAILY_COUNTS + " ("
+            + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + ", "
+            + DatabaseHelper.COLUMN_ARCHIVE_DAY + ", "
+            + DatabaseHelper.COLUMN_ARCHIVE_TRIGGER_COUNT
+            + ") VALUES (?, ?, ?)";
+    private static final String REPLACE_PAYLOAD_SQL = "INSERT OR REPLACE INTO " + DatabaseHelper.TABLE_ARCHIVED_RECORDS + " ("
+            + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + ", "
+            + DatabaseHelper.COLUMN_ARCHIVE_DAY + ", "
+            + DatabaseHelper.COLUMN_ARCHIVE_PAYLOAD
+            + ") VALUES (?, ?, ?)";
+    // 各归档日的计数及保存的记录（只归档了计数的天没有 payload）
+    private static final String ARCHIVED_COUNTS_SQL = "SELECT c." + DatabaseHelper.COLUMN_ARCHIVE_DAY
+            + ", c." + DatabaseHelper.COLUMN_ARCHIVE_TRIGGER_COUNT + ", r." + DatabaseHelper.COLUMN_ARCHIVE_PAYLOAD
+            + " FROM " + DatabaseHelper.TABLE_ARCHIVED_DAILY_COUNTS + " c"
+            + " LEFT JOIN " + DatabaseHelper.TABLE_ARCHIVED_RECORDS + " r"
+            + " ON r." + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = c." + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID
+            + " AND r." + DatabaseHelper.COLUMN_ARCHIVE_DAY + " = c." + DatabaseHelper.COLUMN_ARCHIVE_DAY
+            + " WHERE c." + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = ?"
+            + " ORDER BY c." + DatabaseHelper.COLUMN_ARCHIVE_DAY + " ASC";
+    private static final String DELETE_RECORDS_SQL = "DELETE FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " >= ?"
+            + " AND " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " < ?";
+
+    private DatabaseHelper dbHelper;
+    private DescriptionDao descriptionDao;
+    private SummaryDao summaryDao;
+
+    /**
+     * 只有计数的归档日的访问者
+     */
+    public interface ArchivedCountVisitor {
+        void visit(long epochDay, int count) throws IOException;
+    }
+
+    public ArchiveDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        this.descriptionDao = new DescriptionDao(dbHelper);
+        this.summaryDao = new SummaryDao(dbHelper);
+    }
+
+    /**
+     * 获取有早于 cutoffDay 的原始记录、需要归档的习惯ID（不含待删除的习惯）
+     */
+    public List<Long> getArchivableHabitIds(long cutoffDay) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery(ARCHIVABLE_HABITS_SQL, new String[]{String.valueOf(cutoffDay)});
+
+        List<Long> habitIds = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                habitIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return habitIds;
+    }
+
+    /**
+     * 在一个事务中归档某个习惯早于 cutoffDay 的最早 maxDays 天的原始记录
+     * 当天已有归档时计数累加，压缩的描述与已有的合并。
+     * @param keepDescriptions 是否把各条记录的时刻和描述保存到 archived_records
+     * @return 本批归档的记录条数，0表示该习惯已没有需要归档的记录
+     */
+    public int archiveBatch(long habitId, long cutoffDay, int maxDays, boolean keepDescriptions) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache cache = dbHelper.getStatementCache();
+
+        int archivedRows = 0;
+        long startDay = 0;
+        long endDay = 0;
+        db.beginTransaction();
+        try {
+            long[] range = queryDayRange(db, habitId, cutoffDay, maxDays);
+            if (range != null) {
+                startDay = range[0];
+                endDay = range[1];
+                archiveRange(db, cache, habitId, startDay, endDay, keepDescriptions);
+                archivedRows = cache.executeUpdateDelete(db, DELETE_RECORDS_SQL, habitId, startDay, endDay);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (archivedRows > 0) {
+            // 统计不变，但这些天的记录列表已变为空
+            dbHelper.getInvalidationTracker().notifyRecordsChanged(habitId, startDay, endDay - 1);
+        }
+
+        return archivedRows;
+    }
+
+    /**
+     * 获取某个习惯已归档的纪元日（导入时这些天不再接收记录）
+     */
+    public Set<Long> getArchivedDays(long habitId) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_ARCHIVED_DAILY_COUNTS,
+                new String[]{DatabaseHelper.COLUMN_ARCHIVE_DAY},
+                DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = ?", new String[]{String.valueOf(habitId)},
+                null, null, null);
+
+        Set<Long> days = new HashSet<>();
+        try {
+            while (cursor.moveToNext()) {
+                days.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return days;
+    }
+
+    /**
+     * 按时间顺序访问某个习惯保存了描述的归档记录（导出用）；只归档了计数的天没有可访问的记录
+     */
+    public void forEachArchivedRecord(long habitId, TriggerRecordDao.RecordVisitor visitor) throws IOException {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String[] projection = {DatabaseHelper.COLUMN_ARCHIVE_DAY, DatabaseHelper.COLUMN_ARCHIVE_PAYLOAD};
+        String selection = DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(habitId)};
+        String orderBy = DatabaseHelper.COLUMN_ARCHIVE_DAY + " ASC";
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_ARCHIVED_RECORDS, projection, selection, selectionArgs,
+                null, null, orderBy);
+
+        try {
+            while (cursor.moveToNext()) {
+                long dayMillis = cursor.getLong(0) * DateUtils.MILLIS_PER_DAY;
+                ArchivePayload payload = ArchivePayload.decode(cursor.getBlob(1));
+                for (int i = 0; i < payload.size(); i++) {
+                    visitor.visit(habitId, dayMillis + payload.getSecondOfDay(i) * 1000L,
+                            payload.getDescription(i), i + 1);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 按日期顺序访问某个习惯只剩计数的归档次数（导出用）
+     * 即归档计数中没有保存时刻和描述的部分：未保存描述时归档的天，或先只归档计数、之后又保存描述归档的天的前一部分。
+     * 与 forEachArchivedRecord 访问的记录合起来等于归档计数。
+     */
+    public void forEachArchivedCount(long habitId, ArchivedCountVisitor visitor) throws IOException {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        Cursor cursor = db.rawQuery(ARCHIVED_COUNTS_SQL, new String[]{String.valueOf(habitId)});
+        try {
+            while (cursor.moveToNext()) {
+                int count = cursor.getInt(1);
+                if (!cursor.isNull(2)) {
+                    count -= ArchivePayload.decode(cursor.getBlob(2)).size();
+                }
+                if (count > 0) {
+                    visitor.visit(cursor.getLong(0), count);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 在一个事务中恢复导入的归档计数：累加到 archived_daily_counts，并计入各级汇总
+     * @param counts 每项为 {习惯ID, 纪元日, 次数}
+     */
+    public void restoreArchivedCounts(List<long[]> counts) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache cache = dbHelper.getStatementCache();
+
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            for (long[] count : counts) {
+                if (cache.executeUpdateDelete(db, INCREMENT_COUNT_SQL, count[2], count[0], count[1]) == 0) {
+                    cache.executeInsert(db, INSERT_COUNT_SQL, count[0], count[1], count[2]);
+                }
+                summaryDao.adjustCounts(db, count[0], count[1], (int) count[2]);
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (!success) {
+                // 事务回滚，计数器中已做的增减作废
+                dbHelper.getDailyCounter().invalidateAll();
+            }
+            db.endTransaction();
+        }
+        dbHelper.getDailyCounter().commit();
+
+        InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+        for (long[] count : counts) {
+            tracker.notifyRecordsChanged(count[0], count[1]);
+        }
+    }
+
+    /**
+     * 重写数据库文件以回收归档后空出的页
+     * 耗时与数据库大小成正比，只在归档了大量记录后调用；不能在事务中执行。
+     */
+    public void vacuum() {
+        dbHelper.getWritableDatabase().execSQL("VACUUM");
+    }
+
+    /**
+     * 待归档的纪元日范围 [起始日, 结束日)，没有需要归档的记录时返回null
+     */
+    private long[] queryDayRange(SQLiteDatabase db, long habitId, long cutoffDay, int maxDays) {
+        Cursor cursor = db.rawQuery(ARCHIVABLE_DAYS_SQL, new String[]{String.valueOf(habitId),
+                String.valueOf(cutoffDay), String.valueOf(maxDays)});
+        try {
+            if (!cursor.moveToFirst()) return null;
+            long startDay = cursor.getLong(0);
+            cursor.moveToPosition(cursor.getCount() - 1);
+            return new long[]{startDay, cursor.getLong(0) + 1};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 逐天累计 [startDay, endDay) 内的原始记录并写入归档
+     */
+    private void archiveRange(SQLiteDatabase db, StatementCache cache, long habitId, long startDay, long endDay,
+                              boolean keepDescriptions) {
+        String[] projection = {DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY,
+                DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS,
+                DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID};
+        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " >= ? AND "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " < ?";
+        String[] selectionArgs = {String.valueOf(habitId), String.valueOf(startDay), String.valueOf(endDay)};
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_ID + " ASC";
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, projection, selection, selectionArgs,
+                null, null, orderBy);
+
+        try {
+            long day = 0;
+            int count = 0;
+            ArchivePayload payload = null;
+            while (cursor.moveToNext()) {
+                long recordDay = cursor.getLong(0);
+                if (count > 0 && recordDay != day) {
+                    archiveDay(db, cache, habitId, day, count, payload);
+                    count = 0;
+                }
+                if (count == 0) {
+                    day = recordDay;
+                    payload = keepDescriptions ? new ArchivePayload() : null;
+                }
+                count++;
+                if (payload != null) {
+                    long millisOfDay = cursor.getLong(1) - recordDay * DateUtils.MILLIS_PER_DAY;
+                    String description = cursor.isNull(2) ? null : descriptionDao.getText(cursor.getLong(2));
+                    payload.add((int) (millisOfDay / 1000), description);
+                }
+            }
+            if (count > 0) {
+                archiveDay(db, cache, habitId, day, count, payload);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void archiveDay(SQLiteDatabase db, StatementCache cache, long habitId, long day, int count,
+                            ArchivePayload payload) {
+        if (cache.executeUpdateDelete(db, INCREMENT_COUNT_SQL, count, habitId, day) == 0) {
+            cache.executeInsert(db, INSERT_COUNT_SQL, habitId, day, count);
+        }
+        if (payload == null) return;
+
+        byte[] existing = queryPayload(db, habitId, day);
+        if (existing != null) {
+            try {
+                payload.addAll(ArchivePayload.decode(existing));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        cache.executeInsert(db, REPLACE_PAYLOAD_SQL, habitId, day, payload.encode());
+    }
+
+    private byte[] queryPayload(SQLiteDatabase db, long habitId, long day) {
+        Cursor cursor = db.query(DatabaseHelper.TABLE_ARCHIVED_RECORDS,
+                new String[]{DatabaseHelper.COLUMN_ARCHIVE_PAYLOAD},
+                DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + " = ? AND " + DatabaseHelper.COLUMN_ARCHIVE_DAY + " = ?",
+                new String[]{String.valueOf(habitId), String.valueOf(day)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.felix.countbadhabits.database;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 一天内已归档记录的时刻和描述，整体用Deflate压缩后存入 archived_records
+ * 格式：条数(int)，每条：当天的秒数(int) 描述字节数(int，-1表示null) 描述UTF-8字节；按秒数升序。
+ */
+final class ArchivePayload {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] seconds = new int[INITIAL_CAPACITY];
+    private String[] descriptions = new String[INITIAL_CAPACITY];
+    private int size;
+
+    void add(int secondOfDay, String description) {
+        if (size == seconds.length) {
+            seconds = Arrays.copyOf(seconds, size * 2);
+            descriptions = Arrays.copyOf(descriptions, size * 2);
+        }
+        seconds[size] = secondOfDay;
+        descriptions[size] = description;
+        size++;
+    }
+
+    void addAll(ArchivePayload other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.seconds[i], other.descriptions[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getSecondOfDay(int index) {
+        return seconds[index];
+    }
+
+    String getDescription(int index) {
+        return descriptions[index];
+    }
+
+    /**
+     * 按秒数排序（同一秒内保持加入顺序）后压缩
+     */
+    byte[] encode() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(seconds[a], seconds[b]));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(size);
+            for (int index : order) {
+                out.writeInt(seconds[index]);
+                if (descriptions[index] == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] utf8 = descriptions[index].getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(utf8.length);
+                    out.write(utf8);
+                }
+            }
+        } catch (IOException e) {
+            // 只写内存，不会发生
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ArchivePayload decode(byte[] data) throws IOException {
+        ArchivePayload payload = new ArchivePayload();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("归档数据损坏: 条数为" + count);
+            }
+            for (int i = 0; i < count; i++) {
+                int secondOfDay = in.readInt();
+                int length = in.readInt();
+                String description = null;
+                if (length >= 0) {
+                    byte[] utf8 = new byte[length];
+                    in.readFully(utf8);
+                    description = new String(utf8, StandardCharsets.UTF_8);
+                }
+                payload.add(secondOfDay, description);
+            }
+        }
+        return payload;
+    }
+}
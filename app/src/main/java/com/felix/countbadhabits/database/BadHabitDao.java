@@ -11,6 +11,37 @@ import java.util.List;
  * 坏习惯数据访问对象
  */
 public class BadHabitDao {
+    private static final String FIRST_ACTIVE_HABIT_SQL = "SELECT " + DatabaseHelper.COLUMN_HABIT_ID
+            + " FROM " + DatabaseHelper.TABLE_BAD_HABITS
+            + " WHERE " + DatabaseHelper.COLUMN_HABIT_IS_ACTIVE + " = 1"
+            + " AND " + DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 0"
+            + " ORDER BY " + DatabaseHelper.COLUMN_HABIT_CREATED_DATE + " ASC"
+            + " LIMIT 1";
+    private static final String MARK_PENDING_DELETE_SQL = "UPDATE " + DatabaseHelper.TABLE_BAD_HABITS
+            + " SET " + DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 1"
+            + " WHERE " + DatabaseHelper.COLUMN_HABIT_ID + " = ?";
+    // 只数原始记录（走 (habit_id, trigger_day) 索引）：汇总里还含有归档的计数，分批删除时不会逐条删到
+    private static final String HABIT_RECORD_COUNT_SQL = "SELECT COUNT(*)"
+            + " FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ?";
+
+    private static final RowMapper<BadHabit> HABIT_MAPPER = new RowMapper<BadHabit>(
+            DatabaseHelper.COLUMN_HABIT_ID,
+            DatabaseHelper.COLUMN_HABIT_NAME,
+            DatabaseHelper.COLUMN_HABIT_DAILY_LIMIT,
+            DatabaseHelper.COLUMN_HABIT_CREATED_DATE,
+            DatabaseHelper.COLUMN_HABIT_IS_ACTIVE) {
+        @Override
+        protected BadHabit map(Cursor cursor, int[] columns) {
+            return new BadHabit(
+                    cursor.getLong(columns[0]),
+                    cursor.getString(columns[1]),
+                    cursor.getInt(columns[2]),
+                    cursor.getString(columns[3]),
+                    cursor.getInt(columns[4]) == 1);
+        }
+    };
+
     private DatabaseHelper dbHelper;
 
     public BadHabitDao(DatabaseHelper dbHelper) {
@@ -21,61 +52,65 @@ public class BadHabitDao {
      * 获取所有活跃的坏习惯
      */
     public List<BadHabit> getAllActiveHabits() {
-        List<BadHabit> habits = new ArrayList<>();
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String selection = DatabaseHelper.COLUMN_HABIT_IS_ACTIVE + " = ?";
+        String selection = DatabaseHelper.COLUMN_HABIT_IS_ACTIVE + " = ? AND "
+                + DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 0";
         String[] selectionArgs = {"1"};
         String orderBy = DatabaseHelper.COLUMN_HABIT_CREATED_DATE + " ASC";
         
-        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, null, selection, selectionArgs, null, null, orderBy);
-        
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                habits.add(cursorToHabit(cursor));
-            }
-            cursor.close();
-        }
+        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, HABIT_MAPPER.getProjection(),
+                selection, selectionArgs, null, null, orderBy);
         
+        List<BadHabit> habits = HABIT_MAPPER.mapAll(cursor);
+        QueryMetrics.end("BadHabitDao.getAllActiveHabits", start, habits.size());
         return habits;
     }
 
     /**
-     * 获取所有坏习惯（包括已删除的）
+     * 获取所有坏习惯（包括已停用的，不包括待删除的）
      */
     public List<BadHabit> getAllHabits() {
-        List<BadHabit> habits = new ArrayList<>();
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
+        String selection = DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 0";
         String orderBy = DatabaseHelper.COLUMN_HABIT_CREATED_DATE + " ASC";
-        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, null, null, null, null, null, orderBy);
-        
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                habits.add(cursorToHabit(cursor));
-            }
-            cursor.close();
-        }
+        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, HABIT_MAPPER.getProjection(),
+                selection, null, null, null, orderBy);
         
+        List<BadHabit> habits = HABIT_MAPPER.mapAll(cursor);
+        QueryMetrics.end("BadHabitDao.getAllHabits", start, habits.size());
         return habits;
     }
 
     /**
-     * 根据ID获取坏习惯
+     * 根据ID获取坏习惯（优先读缓存）
      */
     public BadHabit getHabitById(long habitId) {
+        HabitCache cache = dbHelper.getHabitCache();
+        BadHabit cached = cache.get(habitId);
+        if (cached != null) {
+            return cached;
+        }
+        // 只统计未命中缓存、实际查库的情况
+        long start = QueryMetrics.start();
+        long readVersion = cache.getVersion();
+        
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
         String selection = DatabaseHelper.COLUMN_HABIT_ID + " = ?";
         String[] selectionArgs = {String.valueOf(habitId)};
         
-        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, null, selection, selectionArgs, null, null, null);
+        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, HABIT_MAPPER.getProjection(),
+                selection, selectionArgs, null, null, null);
         
-        BadHabit habit = null;
-        if (cursor != null && cursor.moveToFirst()) {
-            habit = cursorToHabit(cursor);
-            cursor.close();
+        BadHabit habit = HABIT_MAPPER.mapFirst(cursor);
+        if (habit != null) {
+            cache.put(habit, readVersion);
         }
+        QueryMetrics.end("BadHabitDao.getHabitById", start, habit != null ? 1 : 0);
         
         return habit;
     }
@@ -84,6 +119,7 @@ public class BadHabitDao {
      * 插入新的坏习惯
      */
     public long insertHabit(BadHabit habit) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         ContentValues values = new ContentValues();
@@ -94,6 +130,11 @@ public class BadHabitDao {
         
         long id = db.insert(DatabaseHelper.TABLE_BAD_HABITS, null, values);
         habit.setId(id);
+        if (id != -1) {
+            dbHelper.getHabitCache().invalidate(id);
+            dbHelper.getInvalidationTracker().notifyHabitsChanged();
+        }
+        QueryMetrics.end("BadHabitDao.insertHabit", start, id != -1 ? 1 : 0);
         
         return id;
     }
@@ -102,6 +143,7 @@ public class BadHabitDao {
      * 更新坏习惯
      */
     public int updateHabit(BadHabit habit) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         ContentValues values = new ContentValues();
@@ -112,13 +154,21 @@ public class BadHabitDao {
         String whereClause = DatabaseHelper.COLUMN_HABIT_ID + " = ?";
         String[] whereArgs = {String.valueOf(habit.getId())};
         
-        return db.update(DatabaseHelper.TABLE_BAD_HABITS, values, whereClause, whereArgs);
+        int updatedRows = db.update(DatabaseHelper.TABLE_BAD_HABITS, values, whereClause, whereArgs);
+        dbHelper.getHabitCache().invalidate(habit.getId());
+        if (updatedRows > 0) {
+            dbHelper.getInvalidationTracker().notifyHabitsChanged();
+        }
+        QueryMetrics.end("BadHabitDao.updateHabit", start, updatedRows);
+        
+        return updatedRows;
     }
 
     /**
      * 删除坏习惯（软删除，设置为非活跃状态）
      */
     public int deleteHabit(long habitId) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         ContentValues values = new ContentValues();
@@ -127,58 +177,102 @@ public class BadHabitDao {
         String whereClause = DatabaseHelper.COLUMN_HABIT_ID + " = ?";
         String[] whereArgs = {String.valueOf(habitId)};
         
-        return db.update(DatabaseHelper.TABLE_BAD_HABITS, values, whereClause, whereArgs);
+        int updatedRows = db.update(DatabaseHelper.TABLE_BAD_HABITS, values, whereClause, whereArgs);
+        dbHelper.getHabitCache().invalidate(habitId);
+        if (updatedRows > 0) {
+            dbHelper.getInvalidationTracker().notifyHabitsChanged();
+        }
+        QueryMetrics.end("BadHabitDao.deleteHabit", start, updatedRows);
+        
+        return updatedRows;
+    }
+
+    /**
+     * 把坏习惯标记为待删除，之后它不再出现在任何习惯列表中，由后台分批删除其记录
+     * @return 该习惯现有的原始记录数（用于显示删除进度，不含已归档的计数），习惯不存在时返回-1
+     */
+    public long markPendingDelete(long habitId) {
+        long start = QueryMetrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache cache = dbHelper.getStatementCache();
+        
+        int updatedRows = cache.executeUpdateDelete(db, MARK_PENDING_DELETE_SQL, habitId);
+        dbHelper.getHabitCache().invalidate(habitId);
+        if (updatedRows == 0) {
+            QueryMetrics.end("BadHabitDao.markPendingDelete", start, 0);
+            return -1;
+        }
+        dbHelper.getInvalidationTracker().notifyHabitsChanged();
+        
+        long recordCount = cache.simpleQueryForLong(db, HABIT_RECORD_COUNT_SQL, 0, habitId);
+        QueryMetrics.end("BadHabitDao.markPendingDelete", start, updatedRows);
+        return recordCount;
+    }
+
+    /**
+     * 获取所有待删除的坏习惯ID（上次删除被进程退出中断时，启动后继续删除）
+     */
+    public List<Long> getPendingDeleteHabitIds() {
+        long start = QueryMetrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        
+        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, new String[]{DatabaseHelper.COLUMN_HABIT_ID},
+                DatabaseHelper.COLUMN_HABIT_PENDING_DELETE + " = 1", null, null, null, null);
+        
+        List<Long> habitIds = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                habitIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        QueryMetrics.end("BadHabitDao.getPendingDeleteHabitIds", start, habitIds.size());
+        return habitIds;
     }
 
     /**
      * 彻底删除坏习惯及其所有记录
+     * 外键级联会在一个事务中删除全部记录；记录很多的习惯应先 markPendingDelete，
+     * 再用 TriggerRecordDao.deleteHabitRecords 分批删除记录，最后调用此方法。
      */
     public int permanentDeleteHabit(long habitId) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
-        // 由于设置了外键约束，删除习惯时会自动删除相关记录
+        // 由于设置了外键约束，删除习惯时会自动删除剩余的记录和汇总
         String whereClause = DatabaseHelper.COLUMN_HABIT_ID + " = ?";
         String[] whereArgs = {String.valueOf(habitId)};
         
-        return db.delete(DatabaseHelper.TABLE_BAD_HABITS, whereClause, whereArgs);
+        int deletedRows = db.delete(DatabaseHelper.TABLE_BAD_HABITS, whereClause, whereArgs);
+        dbHelper.getHabitCache().invalidate(habitId);
+        dbHelper.getDailyCounter().invalidate(habitId);
+        if (deletedRows > 0) {
+            InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+            tracker.notifyHabitsChanged();
+            tracker.notifyRecordsChanged(habitId, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        QueryMetrics.end("BadHabitDao.permanentDeleteHabit", start, deletedRows);
+        
+        return deletedRows;
     }
 
     /**
      * 获取第一个活跃的坏习惯ID（用于默认选择）
      */
     public long getFirstActiveHabitId() {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        String selection = DatabaseHelper.COLUMN_HABIT_IS_ACTIVE + " = ?";
-        String[] selectionArgs = {"1"};
-        String orderBy = DatabaseHelper.COLUMN_HABIT_CREATED_DATE + " ASC";
-        String limit = "1";
-        
-        Cursor cursor = db.query(DatabaseHelper.TABLE_BAD_HABITS, 
-                new String[]{DatabaseHelper.COLUMN_HABIT_ID}, 
-                selection, selectionArgs, null, null, orderBy, limit);
-        
-        long habitId = -1;
-        if (cursor != null && cursor.moveToFirst()) {
-            habitId = cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_ID));
-            cursor.close();
-        }
-        
+        long habitId = dbHelper.getStatementCache().simpleQueryForLong(db, FIRST_ACTIVE_HABIT_SQL, -1);
+        QueryMetrics.end("BadHabitDao.getFirstActiveHabitId", start, habitId != -1 ? 1 : 0);
         return habitId;
     }
 
     /**
-     * 将Cursor转换为BadHabit对象
+     * 获取坏习惯的每日上限，习惯不存在时返回-1
      */
-    private BadHabit cursorToHabit(Cursor cursor) {
-        BadHabit habit = new BadHabit();
-        
-        habit.setId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_ID)));
-        habit.setName(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_NAME)));
-        habit.setDailyLimit(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_DAILY_LIMIT)));
-        habit.setCreatedDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_CREATED_DATE)));
-        habit.setActive(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_HABIT_IS_ACTIVE)) == 1);
-        
-        return habit;
+    public int getDailyLimit(long habitId) {
+        BadHabit habit = getHabitById(habitId);
+        return habit != null ? habit.getDailyLimit() : -1;
     }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package com.felix.countbadhabits.database;
+
+import com.felix.countbadhabits.utils.DateUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * 当日触发次数计数器
+ * 在内存中保存各习惯今日的触发次数，供分配序号和今日状态显示使用，命中时不查库。
+ * 只在写事务中（持有写锁、能看到最新数据）从 daily_summary 懒加载；读线程只读取已有的值，
+ * 未命中时自行查库，避免把事务提交前的旧快照写进计数器。
+ * 写事务中的增减先记为待提交，写线程读取时计入，读线程看不到；事务提交后 commit() 才并入计数，
+ * 回滚时随 invalidateAll() 丢弃。
+ * 跨过零点后自动清空，只保留新一天的计数。
+ */
+class DailyCounter {
+    private final Map<Long, Integer> todayCounts = new HashMap<>();
+    // 未提交的写事务中对今日计数的增减
+    private final Map<Long, Integer> pendingDeltas = new HashMap<>();
+    private long currentDay = Long.MIN_VALUE;
+
+    /**
+     * 读取已提交的计数，未缓存（或不是今天）时返回-1
+     */
+    synchronized int peek(long habitId, long epochDay) {
+        if (!isToday(epochDay)) return -1;
+        Integer count = todayCounts.get(habitId);
+        return count != null ? count : -1;
+    }
+
+    /**
+     * 读取计数（含本事务未提交的增减），未缓存时通过 loader 查库并缓存；必须在写事务中调用
+     */
+    synchronized int getOrLoad(long habitId, long epochDay, IntSupplier loader) {
+        if (!isToday(epochDay)) {
+            return loader.getAsInt();
+        }
+        Integer count = todayCounts.get(habitId);
+        if (count == null) {
+            // 本事务尚未写入该习惯，查到的就是已提交的次数
+            count = loader.getAsInt();
+            todayCounts.put(habitId, count);
+        }
+        Integer delta = pendingDeltas.get(habitId);
+        return delta != null ? Math.max(0, count + delta) : count;
+    }
+
+    /**
+     * 随记录写入增减计数，在事务提交后调用 commit() 前只对写线程可见
+     * （未缓存的不处理，下次写入时再从库中加载）
+     */
+    synchronized void adjust(long habitId, long epochDay, int delta) {
+        if (!isToday(epochDay)) return;
+        if (todayCounts.containsKey(habitId)) {
+            pendingDeltas.merge(habitId, delta, Integer::sum);
+        }
+    }
+
+    /**
+     * 写事务提交后调用，把事务中的增减并入计数
+     */
+    synchronized void commit() {
+        for (Map.Entry<Long, Integer> entry : pendingDeltas.entrySet()) {
+            Integer count = todayCounts.get(entry.getKey());
+            if (count != null) {
+                todayCounts.put(entry.getKey(), Math.max(0, count + entry.getValue()));
+            }
+        }
+        pendingDeltas.clear();
+    }
+
+    /**
+     * 使某个习惯的计数失效（删除习惯时调用）
+     */
+    synchronized void invalidate(long habitId) {
+        todayCounts.remove(habitId);
+        pendingDeltas.remove(habitId);
+    }
+
+    /**
+     * 清空所有计数和未提交的增减（事务回滚、汇总重建或关闭数据库时调用）
+     */
+    synchronized void invalidateAll() {
+        todayCounts.clear();
+        pendingDeltas.clear();
+    }
+
+    private boolean isToday(long epochDay) {
+        long today = DateUtils.getTodayEpochDay();
+        if (today != currentDay) {
+            // 跨过零点，昨天的计数不再需要
+            todayCounts.clear();
+            pendingDeltas.clear();
+            currentDay = today;
+        }
+        return epochDay == today;
+    }
+}
@@ -2,15 +2,20 @@ package com.felix.countbadhabits.database;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import androidx.annotation.VisibleForTesting;
+
+import java.io.PrintWriter;
+
 /**
  * SQLite数据库助手类
  */
 public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "countbadhabits.db";
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 11;
 
     // 坏习惯表
     public static final String TABLE_BAD_HABITS = "bad_habits";
@@ -19,40 +24,162 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public static final String COLUMN_HABIT_DAILY_LIMIT = "daily_limit";
     public static final String COLUMN_HABIT_CREATED_DATE = "created_date";
     public static final String COLUMN_HABIT_IS_ACTIVE = "is_active";
+    // 已标记为待删除：界面和查询中不再出现，后台正在分批删除其记录
+    public static final String COLUMN_HABIT_PENDING_DELETE = "pending_delete";
 
     // 触发记录表
     public static final String TABLE_TRIGGER_RECORDS = "trigger_records";
     public static final String COLUMN_RECORD_ID = "id";
     public static final String COLUMN_RECORD_HABIT_ID = "habit_id";
-    public static final String COLUMN_RECORD_TRIGGER_DATE = "trigger_date";
-    public static final String COLUMN_RECORD_TRIGGER_TIME = "trigger_time";
-    public static final String COLUMN_RECORD_TRIGGER_DATETIME = "trigger_datetime";
-    public static final String COLUMN_RECORD_DESCRIPTION = "description";
+    public static final String COLUMN_RECORD_TRIGGER_DAY = "trigger_day";         // 纪元日，见 DateUtils.toEpochDay
+    public static final String COLUMN_RECORD_TRIGGER_MILLIS = "trigger_millis";   // 本地时间毫秒数，见 DateUtils.toLocalMillis
+    public static final String COLUMN_RECORD_DESCRIPTION_ID = "description_id";  // 描述字典ID，无描述时为NULL
     public static final String COLUMN_RECORD_SEQUENCE_NUMBER = "sequence_number";
 
+    // 描述字典表：每种描述文本只存一份，记录通过 description_id 引用；行只增删不修改，ID不复用
+    public static final String TABLE_DESCRIPTIONS = "descriptions";
+    public static final String COLUMN_DESCRIPTION_ID = "id";
+    public static final String COLUMN_DESCRIPTION_TEXT = "text";
+
+    // 每日汇总表（与 DailySummary 对应，由 TriggerRecordDao 在同一事务内维护）
+    public static final String TABLE_DAILY_SUMMARY = "daily_summary";
+    public static final String COLUMN_SUMMARY_HABIT_ID = "habit_id";
+    public static final String COLUMN_SUMMARY_DAY = "summary_day";               // 纪元日
+    public static final String COLUMN_SUMMARY_TRIGGER_COUNT = "trigger_count";
+
+    // 周/月/年汇总表（由每日汇总逐级向上，与每日汇总在同一事务内维护）
+    public static final String TABLE_PERIOD_SUMMARY = "period_summary";
+    public static final String COLUMN_PERIOD_HABIT_ID = "habit_id";
+    public static final String COLUMN_PERIOD_TYPE = "period_type";               // 见 SummaryDao.PERIOD_*
+    public static final String COLUMN_PERIOD_KEY = "period_key";                 // 周一的纪元日 / yyyyMM / yyyy
+    public static final String COLUMN_PERIOD_TRIGGER_COUNT = "trigger_count";
+
+    // 归档计数表：早于保留期限的原始记录折叠为每天一行（汇总表保持不变）
+    public static final String TABLE_ARCHIVED_DAILY_COUNTS = "archived_daily_counts";
+    public static final String COLUMN_ARCHIVE_HABIT_ID = "habit_id";
+    public static final String COLUMN_ARCHIVE_DAY = "trigger_day";                // 纪元日
+    public static final String COLUMN_ARCHIVE_TRIGGER_COUNT = "trigger_count";
+
+    // 归档记录表（可选）：每天一行，保存当天各条记录的时刻和描述的压缩数据，见 ArchivePayload
+    public static final String TABLE_ARCHIVED_RECORDS = "archived_records";
+    public static final String COLUMN_ARCHIVE_PAYLOAD = "payload";
+
     // 创建坏习惯表的SQL语句
     private static final String CREATE_BAD_HABITS_TABLE = "CREATE TABLE " + TABLE_BAD_HABITS + " ("
             + COLUMN_HABIT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_HABIT_NAME + " TEXT NOT NULL, "
             + COLUMN_HABIT_DAILY_LIMIT + " INTEGER NOT NULL DEFAULT 5, "
             + COLUMN_HABIT_CREATED_DATE + " TEXT NOT NULL, "
-            + COLUMN_HABIT_IS_ACTIVE + " INTEGER DEFAULT 1"
+            + COLUMN_HABIT_IS_ACTIVE + " INTEGER DEFAULT 1, "
+            + COLUMN_HABIT_PENDING_DELETE + " INTEGER NOT NULL DEFAULT 0"
             + ")";
 
     // 创建触发记录表的SQL语句
     private static final String CREATE_TRIGGER_RECORDS_TABLE = "CREATE TABLE " + TABLE_TRIGGER_RECORDS + " ("
             + COLUMN_RECORD_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
             + COLUMN_RECORD_HABIT_ID + " INTEGER NOT NULL, "
-            + COLUMN_RECORD_TRIGGER_DATE + " TEXT NOT NULL, "
-            + COLUMN_RECORD_TRIGGER_TIME + " TEXT NOT NULL, "
-            + COLUMN_RECORD_TRIGGER_DATETIME + " TEXT NOT NULL, "
-            + COLUMN_RECORD_DESCRIPTION + " TEXT, "
+            + COLUMN_RECORD_TRIGGER_DAY + " INTEGER NOT NULL, "
+            + COLUMN_RECORD_TRIGGER_MILLIS + " INTEGER NOT NULL, "
+            + COLUMN_RECORD_DESCRIPTION_ID + " INTEGER, "
             + COLUMN_RECORD_SEQUENCE_NUMBER + " INTEGER NOT NULL, "
-            + "FOREIGN KEY (" + COLUMN_RECORD_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE"
+            + "FOREIGN KEY (" + COLUMN_RECORD_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE, "
+            + "FOREIGN KEY (" + COLUMN_RECORD_DESCRIPTION_ID + ") REFERENCES " + TABLE_DESCRIPTIONS + "(" + COLUMN_DESCRIPTION_ID + ")"
+            + ")";
+
+    // 创建描述字典表的SQL语句（AUTOINCREMENT 保证删除后ID不被复用，缓存的 ID->文本 永不过期）
+    private static final String CREATE_DESCRIPTIONS_TABLE = "CREATE TABLE " + TABLE_DESCRIPTIONS + " ("
+            + COLUMN_DESCRIPTION_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_DESCRIPTION_TEXT + " TEXT NOT NULL UNIQUE"
+            + ")";
+
+    // 创建每日汇总表的SQL语句
+    private static final String CREATE_DAILY_SUMMARY_TABLE = "CREATE TABLE " + TABLE_DAILY_SUMMARY + " ("
+            + COLUMN_SUMMARY_HABIT_ID + " INTEGER NOT NULL, "
+            + COLUMN_SUMMARY_DAY + " INTEGER NOT NULL, "
+            + COLUMN_SUMMARY_TRIGGER_COUNT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_SUMMARY_HABIT_ID + ", " + COLUMN_SUMMARY_DAY + "), "
+            + "FOREIGN KEY (" + COLUMN_SUMMARY_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE"
+            + ") WITHOUT ROWID";
+
+    // 创建周/月/年汇总表的SQL语句
+    private static final String CREATE_PERIOD_SUMMARY_TABLE = "CREATE TABLE " + TABLE_PERIOD_SUMMARY + " ("
+            + COLUMN_PERIOD_HABIT_ID + " INTEGER NOT NULL, "
+            + COLUMN_PERIOD_TYPE + " INTEGER NOT NULL, "
+            + COLUMN_PERIOD_KEY + " INTEGER NOT NULL, "
+            + COLUMN_PERIOD_TRIGGER_COUNT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_PERIOD_HABIT_ID + ", " + COLUMN_PERIOD_TYPE + ", " + COLUMN_PERIOD_KEY + "), "
+            + "FOREIGN KEY (" + COLUMN_PERIOD_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE"
+            + ") WITHOUT ROWID";
+
+    // 创建归档计数表的SQL语句
+    private static final String CREATE_ARCHIVED_DAILY_COUNTS_TABLE = "CREATE TABLE " + TABLE_ARCHIVED_DAILY_COUNTS + " ("
+            + COLUMN_ARCHIVE_HABIT_ID + " INTEGER NOT NULL, "
+            + COLUMN_ARCHIVE_DAY + " INTEGER NOT NULL, "
+            + COLUMN_ARCHIVE_TRIGGER_COUNT + " INTEGER NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_ARCHIVE_HABIT_ID + ", " + COLUMN_ARCHIVE_DAY + "), "
+            + "FOREIGN KEY (" + COLUMN_ARCHIVE_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE"
+            + ") WITHOUT ROWID";
+
+    // 创建归档记录表的SQL语句
+    private static final String CREATE_ARCHIVED_RECORDS_TABLE = "CREATE TABLE " + TABLE_ARCHIVED_RECORDS + " ("
+            + COLUMN_ARCHIVE_HABIT_ID + " INTEGER NOT NULL, "
+            + COLUMN_ARCHIVE_DAY + " INTEGER NOT NULL, "
+            + COLUMN_ARCHIVE_PAYLOAD + " BLOB NOT NULL, "
+            + "PRIMARY KEY (" + COLUMN_ARCHIVE_HABIT_ID + ", " + COLUMN_ARCHIVE_DAY + "), "
+            + "FOREIGN KEY (" + COLUMN_ARCHIVE_HABIT_ID + ") REFERENCES " + TABLE_BAD_HABITS + "(" + COLUMN_HABIT_ID + ") ON DELETE CASCADE"
             + ")";
 
+    // 描述全文索引（FTS4外部内容表，内容取自描述字典，文档ID即描述ID）
+    public static final String TABLE_DESCRIPTIONS_FTS = "descriptions_fts";
+
+    private static final String CREATE_DESCRIPTIONS_FTS_TABLE = "CREATE VIRTUAL TABLE " + TABLE_DESCRIPTIONS_FTS
+            + " USING fts4(content=\"" + TABLE_DESCRIPTIONS + "\", "
+            + COLUMN_DESCRIPTION_TEXT + ", tokenize=unicode61)";
+
+    // 由触发器保持全文索引与字典同步；字典行不会被修改，只需处理插入和删除。
+    // 外部内容表删除索引项时要读取原内容，因此在删除前移除
+    private static final String[] CREATE_DESCRIPTIONS_FTS_TRIGGERS = {
+            "CREATE TRIGGER " + TABLE_DESCRIPTIONS_FTS + "_ai AFTER INSERT ON " + TABLE_DESCRIPTIONS + " BEGIN"
+                    + " INSERT INTO " + TABLE_DESCRIPTIONS_FTS + " (docid, " + COLUMN_DESCRIPTION_TEXT + ")"
+                    + " VALUES (new." + COLUMN_DESCRIPTION_ID + ", new." + COLUMN_DESCRIPTION_TEXT + "); END",
+            "CREATE TRIGGER " + TABLE_DESCRIPTIONS_FTS + "_bd BEFORE DELETE ON " + TABLE_DESCRIPTIONS + " BEGIN"
+                    + " DELETE FROM " + TABLE_DESCRIPTIONS_FTS + " WHERE docid = old." + COLUMN_DESCRIPTION_ID + "; END"
+    };
+
+    // 触发记录索引
+    public static final String INDEX_RECORDS_HABIT_DAY = "idx_trigger_records_habit_day";
+
+    // 按习惯+纪元日范围扫描，覆盖按日计数/分组统计，并按时间顺序返回记录
+    private static final String CREATE_RECORDS_HABIT_DAY_INDEX = "CREATE INDEX " + INDEX_RECORDS_HABIT_DAY
+            + " ON " + TABLE_TRIGGER_RECORDS + " ("
+            + COLUMN_RECORD_HABIT_ID + ", " + COLUMN_RECORD_TRIGGER_DAY + ", " + COLUMN_RECORD_TRIGGER_MILLIS
+            + ")";
+
+    public static final String INDEX_RECORDS_DESCRIPTION = "idx_trigger_records_description";
+
+    // 按描述ID查找记录（清理未引用的描述）
+    private static final String CREATE_RECORDS_DESCRIPTION_INDEX = "CREATE INDEX " + INDEX_RECORDS_DESCRIPTION
+            + " ON " + TABLE_TRIGGER_RECORDS + " (" + COLUMN_RECORD_DESCRIPTION_ID + ")";
+
+    public static final String INDEX_RECORDS_DAY = "idx_trigger_records_day";
+
+    // 不限习惯搜索时按时间从新到旧读取记录；索引隐含 rowid，与 纪元日+时间+ID 游标顺序一致
+    private static final String CREATE_RECORDS_DAY_INDEX = "CREATE INDEX " + INDEX_RECORDS_DAY
+            + " ON " + TABLE_TRIGGER_RECORDS + " (" + COLUMN_RECORD_TRIGGER_DAY + ", " + COLUMN_RECORD_TRIGGER_MILLIS + ")";
+
+    // WAL 自动检查点阈值（页数），比默认1000页更早合并，避免WAL文件长期膨胀
+    private static final int WAL_AUTOCHECKPOINT_PAGES = 500;
+    // WAL 文件在检查点后保留的最大字节数
+    private static final long JOURNAL_SIZE_LIMIT_BYTES = 4L * 1024 * 1024;
+
     private static DatabaseHelper instance;
 
+    private final StatementCache statementCache = new StatementCache();
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
+    private final HabitCache habitCache = new HabitCache();
+    private final DailyCounter dailyCounter = new DailyCounter();
+    private final DescriptionCache descriptionCache = new DescriptionCache();
+
     public static synchronized DatabaseHelper getInstance(Context context) {
         if (instance == null) {
             instance = new DatabaseHelper(context.getApplicationContext());
@@ -61,14 +188,39 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     private DatabaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    @VisibleForTesting
+    DatabaseHelper(Context context, String databaseName) {
+        this(context, databaseName, null);
+    }
+
+    /**
+     * 测试用：通过 CursorFactory 观察DAO发出的查询SQL
+     */
+    @VisibleForTesting
+    DatabaseHelper(Context context, String databaseName, SQLiteDatabase.CursorFactory factory) {
+        super(context, databaseName, factory, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         // 创建表
         db.execSQL(CREATE_BAD_HABITS_TABLE);
+        db.execSQL(CREATE_DESCRIPTIONS_TABLE);
         db.execSQL(CREATE_TRIGGER_RECORDS_TABLE);
+        db.execSQL(CREATE_RECORDS_HABIT_DAY_INDEX);
+        db.execSQL(CREATE_RECORDS_DESCRIPTION_INDEX);
+        db.execSQL(CREATE_RECORDS_DAY_INDEX);
+        db.execSQL(CREATE_DAILY_SUMMARY_TABLE);
+        db.execSQL(CREATE_PERIOD_SUMMARY_TABLE);
+        db.execSQL(CREATE_ARCHIVED_DAILY_COUNTS_TABLE);
+        db.execSQL(CREATE_ARCHIVED_RECORDS_TABLE);
+        db.execSQL(CREATE_DESCRIPTIONS_FTS_TABLE);
+        for (String trigger : CREATE_DESCRIPTIONS_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
 
         // 插入默认坏习惯
         insertDefaultHabit(db);
@@ -76,10 +228,12 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // 升级数据库时删除旧表并重新创建
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRIGGER_RECORDS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_BAD_HABITS);
-        onCreate(db);
+        // 逐个版本执行迁移，保留已有数据
+        Migrations.migrate(db, oldVersion, newVersion);
+        statementCache.invalidate();
+        habitCache.invalidateAll();
+        dailyCounter.invalidateAll();
+        descriptionCache.invalidateAll();
     }
 
     @Override
@@ -87,6 +241,69 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         super.onConfigure(db);
         // 启用外键约束
         db.setForeignKeyConstraintsEnabled(true);
+
+        // 启用WAL：写入不再阻塞读取，读操作可在其他连接上并发进行
+        db.enableWriteAheadLogging();
+        // WAL模式下NORMAL已能保证一致性，只在检查点时同步，减少每次提交的fsync
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // 以下PRAGMA会返回结果行，需要以查询方式执行
+        DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES, null);
+        DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT_BYTES, null);
+    }
+
+    @Override
+    public synchronized void close() {
+        statementCache.invalidate();
+        habitCache.invalidateAll();
+        dailyCounter.invalidateAll();
+        descriptionCache.invalidateAll();
+        super.close();
+    }
+
+    /**
+     * 获取当前连接的预编译语句缓存
+     */
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * 获取当日触发次数计数器
+     */
+    DailyCounter getDailyCounter() {
+        return dailyCounter;
+    }
+
+    /**
+     * 获取描述字典缓存
+     */
+    DescriptionCache getDescriptionCache() {
+        return descriptionCache;
+    }
+
+    /**
+     * 获取坏习惯缓存（可读取命中/未命中次数）
+     */
+    public HabitCache getHabitCache() {
+        return habitCache;
+    }
+
+    /**
+     * 获取数据变化的失效跟踪器
+     */
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * 输出缓存命中情况和DAO查询统计（调试界面和 Activity.dump 使用）
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "HabitCache: hits=" + habitCache.getHitCount()
+                + " misses=" + habitCache.getMissCount());
+        writer.println(prefix + "DescriptionCache: hits=" + descriptionCache.getHitCount()
+                + " misses=" + descriptionCache.getMissCount());
+        QueryMetrics.dump(prefix, writer);
     }
 
     /**
@@ -0,0 +1,74 @@
+package com.felix.countbadhabits.database;
+
+import android.util.LruCache;
+
+/**
+ * 描述字典缓存
+ * 读取记录时按描述ID取文本，同一描述的所有记录共用同一个String实例，不再为每行分配一份；
+ * 写入记录时按文本取ID，省去字典表查询。两个方向各自按最近最少使用淘汰。
+ * 字典ID不复用、行不修改，ID->文本 永不过期；文本->ID 只在删除未引用的描述时失效，
+ * 且只由写操作在事务内读写，因此都不需要 HabitCache 那样的版本号。
+ */
+public class DescriptionCache {
+    private static final int MAX_DESCRIPTIONS = 512;
+
+    private final LruCache<Long, String> textsById = new LruCache<>(MAX_DESCRIPTIONS);
+    private final LruCache<String, Long> idsByText = new LruCache<>(MAX_DESCRIPTIONS);
+
+    /**
+     * 获取描述文本，未命中时返回null
+     */
+    String getText(long id) {
+        return textsById.get(id);
+    }
+
+    /**
+     * 获取文本对应的描述ID，未命中时返回null
+     */
+    Long getId(String text) {
+        return idsByText.get(text);
+    }
+
+    /**
+     * 回填读取到的描述；返回缓存中的实例，并发回填同一ID时各方拿到同一个String
+     */
+    synchronized String putText(long id, String text) {
+        String previous = textsById.put(id, text);
+        if (previous != null) {
+            textsById.put(id, previous);
+            return previous;
+        }
+        return text;
+    }
+
+    /**
+     * 回填写入时查到或新建的描述
+     */
+    synchronized void put(long id, String text) {
+        text = putText(id, text);
+        idsByText.put(text, id);
+    }
+
+    /**
+     * 删除描述后调用：文本->ID 的映射可能指向已删除的行
+     */
+    synchronized void invalidateIds() {
+        idsByText.evictAll();
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void invalidateAll() {
+        textsById.evictAll();
+        idsByText.evictAll();
+    }
+
+    public int getHitCount() {
+        return textsById.hitCount();
+    }
+
+    public int getMissCount() {
+        return textsById.missCount();
+    }
+}
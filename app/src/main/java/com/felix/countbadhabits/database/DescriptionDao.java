@@ -0,0 +1,88 @@
+package com.felix.countbadhabits.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * 描述字典数据访问对象
+ * 记录的描述文本只在 descriptions 表中存一份，trigger_records 通过 description_id 引用。
+ * 两个方向的映射都先查 DescriptionCache，读取大量记录时相同的描述只分配一次String。
+ */
+public class DescriptionDao {
+    private static final String ID_BY_TEXT_SQL = "SELECT " + DatabaseHelper.COLUMN_DESCRIPTION_ID
+            + " FROM " + DatabaseHelper.TABLE_DESCRIPTIONS
+            + " WHERE " + DatabaseHelper.COLUMN_DESCRIPTION_TEXT + " = ?";
+    private static final String TEXT_BY_ID_SQL = "SELECT " + DatabaseHelper.COLUMN_DESCRIPTION_TEXT
+            + " FROM " + DatabaseHelper.TABLE_DESCRIPTIONS
+            + " WHERE " + DatabaseHelper.COLUMN_DESCRIPTION_ID + " = ?";
+    private static final String INSERT_SQL = "INSERT INTO " + DatabaseHelper.TABLE_DESCRIPTIONS + " ("
+            + DatabaseHelper.COLUMN_DESCRIPTION_TEXT + ") VALUES (?)";
+    // 走 trigger_records 的 description_id 索引判断是否仍被引用
+    private static final String DELETE_UNUSED_SQL = "DELETE FROM " + DatabaseHelper.TABLE_DESCRIPTIONS
+            + " WHERE NOT EXISTS (SELECT 1 FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID + " = "
+            + DatabaseHelper.TABLE_DESCRIPTIONS + "." + DatabaseHelper.COLUMN_DESCRIPTION_ID + ")";
+
+    private DatabaseHelper dbHelper;
+
+    public DescriptionDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * 获取描述对应的字典ID，字典中没有时新增（需在写事务中调用）
+     * @return 字典ID，description 为null时返回null
+     */
+    Long intern(SQLiteDatabase db, String description) {
+        if (description == null) return null;
+
+        DescriptionCache cache = dbHelper.getDescriptionCache();
+        Long cached = cache.getId(description);
+        if (cached != null) {
+            return cached;
+        }
+
+        StatementCache statements = dbHelper.getStatementCache();
+        long id = statements.simpleQueryForLong(db, ID_BY_TEXT_SQL, -1, description);
+        if (id == -1) {
+            id = statements.executeInsert(db, INSERT_SQL, description);
+        }
+        cache.put(id, description);
+        return id;
+    }
+
+    /**
+     * 按字典ID获取描述文本，同一ID返回同一个String实例
+     */
+    String getText(long id) {
+        DescriptionCache cache = dbHelper.getDescriptionCache();
+        String text = cache.getText(id);
+        if (text != null) {
+            return text;
+        }
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        text = dbHelper.getStatementCache().simpleQueryForString(db, TEXT_BY_ID_SQL, null, id);
+        return text != null ? cache.putText(id, text) : null;
+    }
+
+    /**
+     * 删除不再被任何记录引用的描述（修改、删除、归档记录后留下的），返回删除的条数
+     */
+    public int deleteUnused() {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        int deleted;
+        db.beginTransaction();
+        try {
+            deleted = dbHelper.getStatementCache().executeUpdateDelete(db, DELETE_UNUSED_SQL);
+            if (deleted > 0) {
+                // 在事务内失效，其他写操作要等本事务结束才能再按文本取ID
+                dbHelper.getDescriptionCache().invalidateIds();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,66 @@
+package com.felix.countbadhabits.database;
+
+import android.util.LruCache;
+
+import com.felix.countbadhabits.model.BadHabit;
+
+/**
+ * 坏习惯缓存
+ * 按ID缓存习惯行（名称、每日上限等），容量有限，最近最少使用的条目先被淘汰。
+ * 存取的都是副本；BadHabitDao 的写操作会使对应条目失效。
+ * 读操作在查库前记下版本号，查询期间若发生过失效则不回填，避免把旧数据写回缓存。
+ */
+public class HabitCache {
+    private static final int MAX_HABITS = 32;
+
+    private final LruCache<Long, BadHabit> cache = new LruCache<>(MAX_HABITS);
+    private long version;
+
+    /**
+     * 获取缓存的习惯副本，未命中时返回null
+     */
+    BadHabit get(long habitId) {
+        BadHabit habit = cache.get(habitId);
+        return habit != null ? new BadHabit(habit) : null;
+    }
+
+    /**
+     * 当前版本号，查库前获取，回填时传给 put
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 回填缓存；若读取期间发生过失效则放弃
+     */
+    synchronized void put(BadHabit habit, long readVersion) {
+        if (readVersion == version) {
+            cache.put(habit.getId(), new BadHabit(habit));
+        }
+    }
+
+    /**
+     * 使单个习惯失效
+     */
+    synchronized void invalidate(long habitId) {
+        version++;
+        cache.remove(habitId);
+    }
+
+    /**
+     * 清空缓存
+     */
+    synchronized void invalidateAll() {
+        version++;
+        cache.evictAll();
+    }
+
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    public int getMissCount() {
+        return cache.missCount();
+    }
+}
@@ -0,0 +1,141 @@
+package com.felix.countbadhabits.database;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 失效跟踪器
+ * DAO 在写事务提交后报告本次写入涉及的 习惯+纪元日 范围（或习惯表）；观察者按自己关心的范围注册，
+ * 只有范围内的数据变脏时才会收到通知。短时间内的连续写入会合并为一次通知，在主线程回调。
+ */
+public class InvalidationTracker {
+    // 合并窗口：窗口内的多次写入只触发一次刷新
+    private static final long COALESCE_DELAY_MS = 100;
+
+    /**
+     * 失效回调（主线程）
+     */
+    public interface Observer {
+        void onInvalidated();
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Registration> registrations = new ArrayList<>();
+    // 每个习惯自上次分发以来变脏的纪元日范围 {最小日, 最大日}
+    private final Map<Long, long[]> dirtyRecords = new HashMap<>();
+    private boolean habitsDirty;
+    private boolean dispatchScheduled;
+
+    private final Runnable dispatchRunnable = this::dispatch;
+
+    /**
+     * 观察某个习惯在 [startDay, endDay] 纪元日范围内的触发记录
+     */
+    public synchronized void addRecordObserver(Observer observer, long habitId, long startDay, long endDay) {
+        registrations.add(new Registration(observer, false, habitId, startDay, endDay));
+    }
+
+    /**
+     * 观察坏习惯表（新增、修改、删除任意习惯）
+     */
+    public synchronized void addHabitObserver(Observer observer) {
+        registrations.add(new Registration(observer, true, 0, 0, 0));
+    }
+
+    /**
+     * 移除观察者的全部注册
+     */
+    public synchronized void removeObserver(Observer observer) {
+        for (int i = registrations.size() - 1; i >= 0; i--) {
+            if (registrations.get(i).observer == observer) {
+                registrations.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 报告某个习惯在 [startDay, endDay] 范围内的记录已变化（写事务提交后调用）
+     */
+    synchronized void notifyRecordsChanged(long habitId, long startDay, long endDay) {
+        long[] range = dirtyRecords.get(habitId);
+        if (range == null) {
+            dirtyRecords.put(habitId, new long[]{startDay, endDay});
+        } else {
+            range[0] = Math.min(range[0], startDay);
+            range[1] = Math.max(range[1], endDay);
+        }
+        scheduleDispatch();
+    }
+
+    /**
+     * 报告某个习惯的单日记录已变化（数据库之外的存储引擎写入后也调用此方法）
+     */
+    public void notifyRecordsChanged(long habitId, long epochDay) {
+        notifyRecordsChanged(habitId, epochDay, epochDay);
+    }
+
+    /**
+     * 报告坏习惯表已变化（写事务提交后调用）
+     */
+    synchronized void notifyHabitsChanged() {
+        habitsDirty = true;
+        scheduleDispatch();
+    }
+
+    private void scheduleDispatch() {
+        if (!dispatchScheduled) {
+            dispatchScheduled = true;
+            mainHandler.postDelayed(dispatchRunnable, COALESCE_DELAY_MS);
+        }
+    }
+
+    private void dispatch() {
+        Set<Observer> invalidated = new LinkedHashSet<>();
+        synchronized (this) {
+            for (Registration registration : registrations) {
+                if (registration.isDirty(habitsDirty, dirtyRecords)) {
+                    invalidated.add(registration.observer);
+                }
+            }
+            dirtyRecords.clear();
+            habitsDirty = false;
+            dispatchScheduled = false;
+        }
+
+        // 在锁外回调，观察者可以在回调中重新注册
+        for (Observer observer : invalidated) {
+            observer.onInvalidated();
+        }
+    }
+
+    private static class Registration {
+        final Observer observer;
+        final boolean habitsTable;
+        final long habitId;
+        final long startDay;
+        final long endDay;
+
+        Registration(Observer observer, boolean habitsTable, long habitId, long startDay, long endDay) {
+            this.observer = observer;
+            this.habitsTable = habitsTable;
+            this.habitId = habitId;
+            this.startDay = startDay;
+            this.endDay = endDay;
+        }
+
+        boolean isDirty(boolean habitsDirty, Map<Long, long[]> dirtyRecords) {
+            if (habitsTable) {
+                return habitsDirty;
+            }
+            long[] range = dirtyRecords.get(habitId);
+            return range != null && range[0] <= endDay && range[1] >= startDay;
+        }
+    }
+}
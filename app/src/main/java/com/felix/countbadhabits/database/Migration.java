@@ -0,0 +1,32 @@
+package com.felix.countbadhabits.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * 数据库版本迁移步骤
+ *
+ * 每个迁移只负责从 startVersion 升级到 endVersion，SQL 需固定为当时的表结构，
+ * 不要引用之后可能变化的列名常量。
+ */
+public abstract class Migration {
+    private final int startVersion;
+    private final int endVersion;
+
+    public Migration(int startVersion, int endVersion) {
+        this.startVersion = startVersion;
+        this.endVersion = endVersion;
+    }
+
+    public int getStartVersion() {
+        return startVersion;
+    }
+
+    public int getEndVersion() {
+        return endVersion;
+    }
+
+    /**
+     * 执行迁移（已处于 SQLiteOpenHelper 开启的事务中）
+     */
+    public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,267 @@
+package com.felix.countbadhabits.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * 数据库迁移注册表，按版本逐步升级并保留已有数据
+ */
+final class Migrations {
+
+    /**
+     * v1 -> v2：为触发记录的 习惯/日期 访问路径添加覆盖索引
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_trigger_records_habit_date "
+                    + "ON trigger_records (habit_id, trigger_date, trigger_time)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_trigger_records_habit_datetime "
+                    + "ON trigger_records (habit_id, trigger_datetime)");
+        }
+    };
+
+    /**
+     * v2 -> v3：用整数纪元日/本地毫秒列替换三份文本日期时间，重建表以缩小行大小
+     *
+     * trigger_millis 为本地墙上时间按 UTC 解释得到的毫秒数，因此 trigger_day = trigger_millis / 86400000。
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE trigger_records_new ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "habit_id INTEGER NOT NULL, "
+                    + "trigger_day INTEGER NOT NULL, "
+                    + "trigger_millis INTEGER NOT NULL, "
+                    + "description TEXT, "
+                    + "sequence_number INTEGER NOT NULL, "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE)");
+
+            // 日期时间格式异常时退回到当日零点，避免升级失败
+            String seconds = "CAST(COALESCE(strftime('%s', trigger_datetime), strftime('%s', trigger_date), 0) AS INTEGER)";
+            db.execSQL("INSERT INTO trigger_records_new "
+                    + "(id, habit_id, trigger_day, trigger_millis, description, sequence_number) "
+                    + "SELECT id, habit_id, " + seconds + " / 86400, " + seconds + " * 1000, "
+                    + "description, sequence_number FROM trigger_records");
+
+            db.execSQL("DROP TABLE trigger_records");
+            db.execSQL("ALTER TABLE trigger_records_new RENAME TO trigger_records");
+            db.execSQL("CREATE INDEX idx_trigger_records_habit_day "
+                    + "ON trigger_records (habit_id, trigger_day, trigger_millis)");
+        }
+    };
+
+    /**
+     * v3 -> v4：新增每日汇总表，并由现有记录回填
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE daily_summary ("
+                    + "habit_id INTEGER NOT NULL, "
+                    + "summary_day INTEGER NOT NULL, "
+                    + "trigger_count INTEGER NOT NULL, "
+                    + "PRIMARY KEY (habit_id, summary_day), "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE"
+                    + ") WITHOUT ROWID");
+            db.execSQL("INSERT INTO daily_summary (habit_id, summary_day, trigger_count) "
+                    + "SELECT habit_id, trigger_day, COUNT(*) FROM trigger_records "
+                    + "GROUP BY habit_id, trigger_day");
+        }
+    };
+
+    /**
+     * v4 -> v5：新增周/月/年汇总表（period_type 1=周 2=月 3=年），并由现有记录回填
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE period_summary ("
+                    + "habit_id INTEGER NOT NULL, "
+                    + "period_type INTEGER NOT NULL, "
+                    + "period_key INTEGER NOT NULL, "
+                    + "trigger_count INTEGER NOT NULL, "
+                    + "PRIMARY KEY (habit_id, period_type, period_key), "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE"
+                    + ") WITHOUT ROWID");
+
+            String[] keyExpressions = {
+                    "trigger_day - ((trigger_day % 7) + 10) % 7",
+                    "CAST(strftime('%Y%m', trigger_day * 86400, 'unixepoch') AS INTEGER)",
+                    "CAST(strftime('%Y', trigger_day * 86400, 'unixepoch') AS INTEGER)"
+            };
+            for (int i = 0; i < keyExpressions.length; i++) {
+                db.execSQL("INSERT INTO period_summary (habit_id, period_type, period_key, trigger_count) "
+                        + "SELECT habit_id, " + (i + 1) + ", " + keyExpressions[i] + " AS period_key, COUNT(*) "
+                        + "FROM trigger_records GROUP BY habit_id, period_key");
+            }
+        }
+    };
+
+    /**
+     * v5 -> v6：坏习惯增加待删除标记，记录多的习惯改为在后台分批删除
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE bad_habits ADD COLUMN pending_delete INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * v6 -> v7：新增归档计数表和归档记录表，用于按保留期限折叠旧记录
+     */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE archived_daily_counts ("
+                    + "habit_id INTEGER NOT NULL, "
+                    + "trigger_day INTEGER NOT NULL, "
+                    + "trigger_count INTEGER NOT NULL, "
+                    + "PRIMARY KEY (habit_id, trigger_day), "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE"
+                    + ") WITHOUT ROWID");
+            db.execSQL("CREATE TABLE archived_records ("
+                    + "habit_id INTEGER NOT NULL, "
+                    + "trigger_day INTEGER NOT NULL, "
+                    + "payload BLOB NOT NULL, "
+                    + "PRIMARY KEY (habit_id, trigger_day), "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE"
+                    + ")");
+        }
+    };
+
+    /**
+     * v7 -> v8：新增描述全文索引（FTS4外部内容表）及同步触发器，并索引已有的记录
+     */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE trigger_records_fts USING fts4("
+                    + "content=\"trigger_records\", description, tokenize=unicode61)");
+            db.execSQL("CREATE TRIGGER trigger_records_fts_ai AFTER INSERT ON trigger_records"
+                    + " WHEN new.description IS NOT NULL BEGIN"
+                    + " INSERT INTO trigger_records_fts (docid, description) VALUES (new.id, new.description); END");
+            db.execSQL("CREATE TRIGGER trigger_records_fts_bd BEFORE DELETE ON trigger_records"
+                    + " WHEN old.description IS NOT NULL BEGIN"
+                    + " DELETE FROM trigger_records_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER trigger_records_fts_bu BEFORE UPDATE OF description ON trigger_records"
+                    + " WHEN old.description IS NOT NULL BEGIN"
+                    + " DELETE FROM trigger_records_fts WHERE docid = old.id; END");
+            db.execSQL("CREATE TRIGGER trigger_records_fts_au AFTER UPDATE OF description ON trigger_records"
+                    + " WHEN new.description IS NOT NULL BEGIN"
+                    + " INSERT INTO trigger_records_fts (docid, description) VALUES (new.id, new.description); END");
+            // 不用 'rebuild'：它会把没有描述的记录也计入索引统计，之后删除这些记录时不会扣除
+            db.execSQL("INSERT INTO trigger_records_fts (docid, description)"
+                    + " SELECT id, description FROM trigger_records WHERE description IS NOT NULL");
+        }
+    };
+
+    /**
+     * v8 -> v9：描述改为存入字典表，记录只保存字典ID；重复的描述合并为一行，全文索引改建在字典表上
+     */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE descriptions ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "text TEXT NOT NULL UNIQUE)");
+            // 按首次出现的顺序分配ID
+            db.execSQL("INSERT INTO descriptions (text) SELECT description FROM trigger_records"
+                    + " WHERE description IS NOT NULL GROUP BY description ORDER BY MIN(id)");
+
+            db.execSQL("CREATE TABLE trigger_records_new ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "habit_id INTEGER NOT NULL, "
+                    + "trigger_day INTEGER NOT NULL, "
+                    + "trigger_millis INTEGER NOT NULL, "
+                    + "description_id INTEGER, "
+                    + "sequence_number INTEGER NOT NULL, "
+                    + "FOREIGN KEY (habit_id) REFERENCES bad_habits(id) ON DELETE CASCADE, "
+                    + "FOREIGN KEY (description_id) REFERENCES descriptions(id))");
+            db.execSQL("INSERT INTO trigger_records_new "
+                    + "(id, habit_id, trigger_day, trigger_millis, description_id, sequence_number) "
+                    + "SELECT r.id, r.habit_id, r.trigger_day, r.trigger_millis, d.id, r.sequence_number "
+                    + "FROM trigger_records r LEFT JOIN descriptions d ON d.text = r.description");
+
+            // 旧的全文索引及其触发器随旧表一起删除
+            db.execSQL("DROP TABLE trigger_records_fts");
+            db.execSQL("DROP TABLE trigger_records");
+            db.execSQL("ALTER TABLE trigger_records_new RENAME TO trigger_records");
+            db.execSQL("CREATE INDEX idx_trigger_records_habit_day "
+                    + "ON trigger_records (habit_id, trigger_day, trigger_millis)");
+            db.execSQL("CREATE INDEX idx_trigger_records_description ON trigger_records (description_id)");
+
+            db.execSQL("CREATE VIRTUAL TABLE descriptions_fts USING fts4("
+                    + "content=\"descriptions\", text, tokenize=unicode61)");
+            db.execSQL("CREATE TRIGGER descriptions_fts_ai AFTER INSERT ON descriptions BEGIN"
+                    + " INSERT INTO descriptions_fts (docid, text) VALUES (new.id, new.text); END");
+            db.execSQL("CREATE TRIGGER descriptions_fts_bd BEFORE DELETE ON descriptions BEGIN"
+                    + " DELETE FROM descriptions_fts WHERE docid = old.id; END");
+            db.execSQL("INSERT INTO descriptions_fts (docid, text) SELECT id, text FROM descriptions");
+        }
+    };
+
+    /**
+     * v9 -> v10：新增 (habit_id, description_id) 索引，按习惯搜索时逐个描述按记录ID倒序读取
+     */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX idx_trigger_records_habit_description "
+                    + "ON trigger_records (habit_id, description_id)");
+        }
+    };
+
+    /**
+     * v10 -> v11：搜索改为按时间顺序沿时间索引读取，(habit_id, description_id) 索引不再使用，
+     * 换成不限习惯搜索用的 (trigger_day, trigger_millis) 索引
+     */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SQLiteDatabase db) {
+            db.execSQL("DROP INDEX IF EXISTS idx_trigger_records_habit_description");
+            db.execSQL("CREATE INDEX idx_trigger_records_day ON trigger_records (trigger_day, trigger_millis)");
+        }
+    };
+
+    static final Migration[] ALL = {
+            MIGRATION_1_2,
+            MIGRATION_2_3,
+            MIGRATION_3_4,
+            MIGRATION_4_5,
+            MIGRATION_5_6,
+            MIGRATION_6_7,
+            MIGRATION_7_8,
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11
+    };
+
+    private Migrations() {
+    }
+
+    /**
+     * 从 oldVersion 逐步迁移到 newVersion
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        int version = oldVersion;
+        while (version < newVersion) {
+            Migration migration = find(version);
+            if (migration == null || migration.getEndVersion() > newVersion) {
+                throw new IllegalStateException("缺少数据库迁移步骤: " + version + " -> " + newVersion);
+            }
+            migration.migrate(db);
+            version = migration.getEndVersion();
+        }
+    }
+
+    private static Migration find(int startVersion) {
+        for (Migration migration : ALL) {
+            if (migration.getStartVersion() == startVersion) {
+                return migration;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,277 @@
+package com.felix.countbadhabits.database;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DAO查询耗时统计
+ * DAO方法开头调用 start()，返回前调用 end()：按查询类型累计次数、返回/影响的行数和耗时直方图，
+ * 超过阈值的慢查询记入固定大小的环形缓冲区。
+ * 未启用时 start() 只读一次volatile标志，end() 直接返回，不计时也不分配对象。
+ */
+public final class QueryMetrics {
+    // 耗时直方图的桶数：第i个桶收纳不到 2^i 微秒的耗时，最后一个桶收纳更慢的查询
+    static final int BUCKET_COUNT = 24;
+    // 慢查询阈值：超过一帧（16ms）
+    static final long SLOW_QUERY_NANOS = 16_000_000L;
+    private static final int SLOW_QUERY_CAPACITY = 32;
+    // 未启用时 start() 的返回值
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+    private static final Map<String, QueryStats> STATS = new ConcurrentHashMap<>();
+    private static final SlowQuery[] SLOW_QUERIES = new SlowQuery[SLOW_QUERY_CAPACITY];
+    private static int slowQueryCount;
+
+    private QueryMetrics() {
+    }
+
+    /**
+     * 一种查询的累计统计
+     */
+    public static final class QueryStats {
+        private final String query;
+        private final long[] histogram = new long[BUCKET_COUNT];
+        private long count;
+        private long rows;
+        private long totalNanos;
+        private long maxNanos;
+
+        QueryStats(String query) {
+            this.query = query;
+        }
+
+        synchronized void add(long nanos, int rowCount) {
+            histogram[bucketOf(nanos)]++;
+            count++;
+            rows += rowCount;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized QueryStats copy() {
+            QueryStats copy = new QueryStats(query);
+            System.arraycopy(histogram, 0, copy.histogram, 0, BUCKET_COUNT);
+            copy.count = count;
+            copy.rows = rows;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            return copy;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * 第i个桶的次数，桶上限见 bucketUpperMicros
+         */
+        public long getBucket(int bucket) {
+            return histogram[bucket];
+        }
+
+        /**
+         * 按直方图估算的分位数耗时（所在桶的上限，微秒，不含），没有数据时返回0
+         */
+        public long percentileMicros(double fraction) {
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += histogram[i];
+                if (seen >= target && seen > 0) {
+                    return bucketUpperMicros(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 一条慢查询
+     */
+    public static final class SlowQuery {
+        private final String query;
+        private final long nanos;
+        private final int rows;
+        private final long timeMillis;
+        private final String thread;
+
+        SlowQuery(String query, long nanos, int rows, long timeMillis, String thread) {
+            this.query = query;
+            this.nanos = nanos;
+            this.rows = rows;
+            this.timeMillis = timeMillis;
+            this.thread = thread;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        QueryMetrics.enabled = enabled;
+    }
+
+    /**
+     * DAO方法开始时调用，返回值传给 end()
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * DAO方法返回前调用
+     * @param query 查询类型，用编译期常量字符串
+     * @param rows 返回或影响的行数
+     */
+    static void end(String query, long start, int rows) {
+        if (start == NOT_STARTED) return;
+
+        long nanos = System.nanoTime() - start;
+        QueryStats stats = STATS.get(query);
+        if (stats == null) {
+            stats = STATS.computeIfAbsent(query, QueryStats::new);
+        }
+        stats.add(nanos, rows);
+        if (nanos >= SLOW_QUERY_NANOS) {
+            SlowQuery slow = new SlowQuery(query, nanos, rows, System.currentTimeMillis(),
+                    Thread.currentThread().getName());
+            synchronized (SLOW_QUERIES) {
+                SLOW_QUERIES[slowQueryCount % SLOW_QUERY_CAPACITY] = slow;
+                slowQueryCount++;
+            }
+        }
+    }
+
+    /**
+     * 各查询类型统计的副本，按总耗时从高到低排列
+     */
+    public static List<QueryStats> getStats() {
+        List<QueryStats> result = new ArrayList<>(STATS.size());
+        for (QueryStats stats : STATS.values()) {
+            result.add(stats.copy());
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        return result;
+    }
+
+    /**
+     * 最近的慢查询，新的在前
+     */
+    public static List<SlowQuery> getSlowQueries() {
+        synchronized (SLOW_QUERIES) {
+            int size = Math.min(slowQueryCount, SLOW_QUERY_CAPACITY);
+            List<SlowQuery> result = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                result.add(SLOW_QUERIES[(slowQueryCount - i) % SLOW_QUERY_CAPACITY]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 清空统计和慢查询记录
+     */
+    public static void reset() {
+        STATS.clear();
+        synchronized (SLOW_QUERIES) {
+            Arrays.fill(SLOW_QUERIES, null);
+            slowQueryCount = 0;
+        }
+    }
+
+    /**
+     * 以文本形式输出统计（调试界面和 Activity.dump 使用）
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "QueryMetrics: " + (enabled ? "enabled" : "disabled"));
+        for (QueryStats stats : getStats()) {
+            writer.println(String.format(Locale.US,
+                    "%s  %s: count=%d rows=%d avg=%.2fms p50<%s p95<%s max=%.2fms",
+                    prefix, stats.query, stats.count, stats.rows, stats.totalNanos / 1e6 / stats.count,
+                    formatMicros(stats.percentileMicros(0.5)), formatMicros(stats.percentileMicros(0.95)),
+                    stats.maxNanos / 1e6));
+            StringBuilder histogram = new StringBuilder(prefix).append("    ");
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (stats.histogram[i] > 0) {
+                    histogram.append("<").append(formatMicros(bucketUpperMicros(i)))
+                            .append(':').append(stats.histogram[i]).append(' ');
+                }
+            }
+            writer.println(histogram);
+        }
+
+        List<SlowQuery> slowQueries = getSlowQueries();
+        writer.println(prefix + "Slow queries (>= " + SLOW_QUERY_NANOS / 1_000_000 + "ms): " + slowQueries.size());
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        for (SlowQuery slow : slowQueries) {
+            writer.println(String.format(Locale.US, "%s  %s %s %.2fms rows=%d [%s]", prefix,
+                    format.format(new Date(slow.timeMillis)), slow.query, slow.nanos / 1e6, slow.rows, slow.thread));
+        }
+    }
+
+    /**
+     * 耗时所在的桶：耗时微秒数的二进制位数，即第i个桶收纳 [2^(i-1), 2^i) 微秒的耗时
+     */
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    /**
+     * 第i个桶的耗时上限（微秒，不含），最后一个桶没有上限
+     */
+    static long bucketUpperMicros(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros == Long.MAX_VALUE) return "inf";
+        return micros >= 1000 ? micros / 1000 + "ms" : micros + "us";
+    }
+}
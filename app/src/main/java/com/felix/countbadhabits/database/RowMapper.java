@@ -0,0 +1,82 @@
+package com.felix.countbadhabits.database;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行映射器
+ * 声明查询需要的列（投影），并把Cursor的一行转换为对象。
+ * 列索引在每个Cursor上只解析一次，逐行映射时按投影中的位置直接读取，
+ * 不同的调用场景可以各自声明只含所需列的映射器。
+ */
+public abstract class RowMapper<T> {
+    // 行数未知时列表的初始容量
+    private static final int DEFAULT_ROWS = 16;
+
+    private final String[] projection;
+
+    protected RowMapper(String... projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * 查询时使用的投影
+     */
+    public String[] getProjection() {
+        return projection;
+    }
+
+    /**
+     * 把当前行转换为对象，columns[i] 是投影中第i列在Cursor中的索引
+     */
+    protected abstract T map(Cursor cursor, int[] columns);
+
+    /**
+     * 映射所有行并关闭Cursor
+     * 只用 moveToNext 向前遍历，不先调用 getCount（那会让SQLite先把整个结果集数一遍）。
+     */
+    public List<T> mapAll(Cursor cursor) {
+        return mapAll(cursor, DEFAULT_ROWS);
+    }
+
+    /**
+     * 同 mapAll，列表按预计行数（如分页查询的页大小）预分配
+     */
+    public List<T> mapAll(Cursor cursor, int expectedRows) {
+        if (cursor == null) return new ArrayList<>();
+
+        try {
+            List<T> rows = new ArrayList<>(expectedRows);
+            int[] columns = resolveColumns(cursor);
+            while (cursor.moveToNext()) {
+                rows.add(map(cursor, columns));
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 映射第一行并关闭Cursor，没有结果时返回null
+     */
+    public T mapFirst(Cursor cursor) {
+        if (cursor == null) return null;
+
+        try {
+            return cursor.moveToFirst() ? map(cursor, resolveColumns(cursor)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int[] resolveColumns(Cursor cursor) {
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = cursor.getColumnIndexOrThrow(projection[i]);
+        }
+        return columns;
+    }
+}
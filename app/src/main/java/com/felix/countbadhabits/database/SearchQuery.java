@@ -0,0 +1,126 @@
+package com.felix.countbadhabits.database;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 把用户输入的搜索词转换为FTS4的MATCH表达式
+ * 输入按空白拆分为词，每个词去掉引号和星号后作为短语加引号，避免被当作FTS语法（AND/OR/NEAR、括号等）；
+ * 多个词之间是“与”的关系。没有字母或数字的词被忽略。
+ * 注意 unicode61 分词器把连续的汉字当作一个词，中文只能按词的开头匹配。
+ * 还未写入数据库的记录（追加日志中）不在全文索引里，由 matches 按同样的分词规则在内存中匹配。
+ */
+final class SearchQuery {
+    private final List<String> terms;
+
+    private SearchQuery(List<String> terms) {
+        this.terms = terms;
+    }
+
+    static SearchQuery parse(String input) {
+        List<String> terms = new ArrayList<>();
+        if (input != null) {
+            for (String word : input.trim().split("\\s+")) {
+                String term = word.replace("\"", "").replace("*", "");
+                if (hasLetterOrDigit(term)) {
+                    terms.add(term);
+                }
+            }
+        }
+        return new SearchQuery(terms);
+    }
+
+    boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+    /**
+     * 每个词完整匹配
+     */
+    String exact() {
+        return build(false);
+    }
+
+    /**
+     * 每个词按开头匹配（包含完整匹配）
+     */
+    String prefix() {
+        return build(true);
+    }
+
+    /**
+     * 按 unicode61 的规则判断描述是否匹配（与 exact()/prefix() 在全文索引中的结果一致）
+     * 字母和数字组成词，其余字符都是分隔符；比较时忽略大小写和变音符号。
+     * 每个搜索词拆出的词须在描述中连续出现（短语），按开头匹配时只有最后一个词按开头比较。
+     */
+    boolean matches(String text, boolean prefix) {
+        if (text == null) return false;
+        List<String> tokens = tokenize(text);
+        for (String term : terms) {
+            if (!containsPhrase(tokens, tokenize(term), prefix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsPhrase(List<String> tokens, List<String> phrase, boolean prefix) {
+        if (phrase.isEmpty()) return true;
+        int last = phrase.size() - 1;
+        for (int start = 0; start + last < tokens.size(); start++) {
+            boolean matched = true;
+            for (int i = 0; i <= last && matched; i++) {
+                String token = tokens.get(start + i);
+                matched = prefix && i == last ? token.startsWith(phrase.get(i)) : token.equals(phrase.get(i));
+            }
+            if (matched) return true;
+        }
+        return false;
+    }
+
+    private static List<String> tokenize(String text) {
+        // 分解后去掉组合用的变音符号
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD).toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < folded.length(); ) {
+            int codePoint = folded.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) continue;
+            if (Character.isLetterOrDigit(codePoint)) {
+                token.appendCodePoint(codePoint);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private String build(boolean prefix) {
+        StringBuilder match = new StringBuilder();
+        for (String term : terms) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term).append(prefix ? "*\"" : "\"");
+        }
+        return match.toString();
+    }
+
+    private static boolean hasLetterOrDigit(String term) {
+        for (int i = 0; i < term.length(); ) {
+            int codePoint = term.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,148 @@
+package com.felix.countbadhabits.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import androidx.annotation.VisibleForTesting;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 预编译语句缓存
+ * 按SQL缓存热点标量查询/更新的 SQLiteStatement，调用时原地绑定参数，
+ * 省去 db.query 的SQL拼装、参数数组和 CursorWindow 分配。
+ * 缓存只对应一个数据库连接，连接变化、表结构变化或关闭数据库时整体失效。
+ */
+public class StatementCache {
+    private final Map<String, Entry> statements = new HashMap<>();
+    private SQLiteDatabase database;
+
+    /**
+     * 执行返回单个整数的查询，没有结果行时返回 defaultValue
+     */
+    public long simpleQueryForLong(SQLiteDatabase db, String sql, final long defaultValue, Object... args) {
+        return execute(db, sql, args, statement -> {
+            try {
+                return statement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return defaultValue;
+            }
+        });
+    }
+
+    /**
+     * 执行返回单个字符串的查询，没有结果行时返回 defaultValue
+     */
+    public String simpleQueryForString(SQLiteDatabase db, String sql, final String defaultValue, Object... args) {
+        return execute(db, sql, args, statement -> {
+            try {
+                return statement.simpleQueryForString();
+            } catch (SQLiteDoneException e) {
+                return defaultValue;
+            }
+        });
+    }
+
+    /**
+     * 执行 UPDATE/DELETE，返回受影响的行数
+     */
+    public int executeUpdateDelete(SQLiteDatabase db, String sql, Object... args) {
+        return execute(db, sql, args, SQLiteStatement::executeUpdateDelete);
+    }
+
+    /**
+     * 执行 INSERT，返回新行ID，失败时返回-1
+     */
+    public long executeInsert(SQLiteDatabase db, String sql, Object... args) {
+        return execute(db, sql, args, SQLiteStatement::executeInsert);
+    }
+
+    /**
+     * 使所有缓存的语句失效（表结构变化或数据库关闭时调用）
+     * 逐条持有语句锁再关闭：正在执行的调用先跑完，之后拿到该语句的调用会发现已关闭并重新编译
+     */
+    public synchronized void invalidate() {
+        for (Entry entry : statements.values()) {
+            synchronized (entry) {
+                entry.closed = true;
+                entry.statement.close();
+            }
+        }
+        statements.clear();
+        database = null;
+    }
+
+    /**
+     * 已缓存语句的SQL（测试用：检查执行计划）
+     */
+    @VisibleForTesting
+    synchronized Set<String> getCachedSql() {
+        return new HashSet<>(statements.keySet());
+    }
+
+    /**
+     * 锁定语句后绑定参数并执行；语句在取出后被 invalidate 关闭时重新获取
+     * 加锁顺序固定为 缓存锁 -> 语句锁，执行期间不再申请缓存锁，不会死锁
+     */
+    private <T> T execute(SQLiteDatabase db, String sql, Object[] args, StatementCall<T> call) {
+        while (true) {
+            Entry entry = acquire(db, sql);
+            synchronized (entry) {
+                if (entry.closed) {
+                    continue;
+                }
+                bindArgs(entry.statement, args);
+                return call.run(entry.statement);
+            }
+        }
+    }
+
+    private synchronized Entry acquire(SQLiteDatabase db, String sql) {
+        if (db != database) {
+            // 数据库被重新打开，旧语句不可再用
+            invalidate();
+            database = db;
+        }
+
+        Entry entry = statements.get(sql);
+        if (entry == null) {
+            entry = new Entry(db.compileStatement(sql));
+            statements.put(sql, entry);
+        }
+        return entry;
+    }
+
+    private static void bindArgs(SQLiteStatement statement, Object[] args) {
+        statement.clearBindings();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                statement.bindNull(i + 1);
+            } else if (arg instanceof Long || arg instanceof Integer) {
+                statement.bindLong(i + 1, ((Number) arg).longValue());
+            } else if (arg instanceof byte[]) {
+                statement.bindBlob(i + 1, (byte[]) arg);
+            } else {
+                statement.bindString(i + 1, arg.toString());
+            }
+        }
+    }
+
+    private interface StatementCall<T> {
+        T run(SQLiteStatement statement);
+    }
+
+    /**
+     * 缓存的语句及其关闭标记，执行和关闭都在该对象的锁内进行
+     */
+    private static final class Entry {
+        final SQLiteStatement statement;
+        boolean closed;
+
+        Entry(SQLiteStatement statement) {
+            this.statement = statement;
+        }
+    }
+}
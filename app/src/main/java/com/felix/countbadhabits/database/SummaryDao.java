@@ -0,0 +1,450 @@
+package com.felix.countbadhabits.database;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.utils.DateUtils;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 汇总统计数据访问对象
+ * 汇总分为 日 -> 周/月/年 几级，由 TriggerRecordDao 在写入记录的同一事务中逐级维护，
+ * 读取时不再扫描原始记录；rebuild/verify 可从原始记录（加上归档计数）重新计算任意一级。
+ */
+public class SummaryDao {
+    // 汇总级别
+    public static final int PERIOD_DAY = 0;
+    public static final int PERIOD_WEEK = 1;
+    public static final int PERIOD_MONTH = 2;
+    public static final int PERIOD_YEAR = 3;
+
+    // 由原始记录计算各级汇总键的SQL表达式（周以周一的纪元日为键，1970-01-01是周四）
+    private static final String DAY_KEY_SQL = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY;
+    private static final String WEEK_KEY_SQL = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY
+            + " - ((" + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " % 7) + 10) % 7";
+    private static final String MONTH_KEY_SQL = "CAST(strftime('%Y%m', "
+            + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " * 86400, 'unixepoch') AS INTEGER)";
+    private static final String YEAR_KEY_SQL = "CAST(strftime('%Y', "
+            + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " * 86400, 'unixepoch') AS INTEGER)";
+
+    private static final String DAILY_COUNT_SQL = "SELECT " + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT
+            + " FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY
+            + " WHERE " + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_SUMMARY_DAY + " = ?";
+    private static final String INCREMENT_DAILY_SQL = "UPDATE " + DatabaseHelper.TABLE_DAILY_SUMMARY
+            + " SET " + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + " = "
+            + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + " + ?"
+            + " WHERE " + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_SUMMARY_DAY + " = ?";
+    private static final String INSERT_DAILY_SQL = "INSERT INTO " + DatabaseHelper.TABLE_DAILY_SUMMARY + " ("
+            + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + ", "
+            + DatabaseHelper.COLUMN_SUMMARY_DAY + ", "
+            + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + ") VALUES (?, ?, ?)";
+    private static final String PRUNE_DAILY_SQL = "DELETE FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY
+            + " WHERE " + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_SUMMARY_DAY + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + " <= 0";
+    private static final String INCREMENT_PERIOD_SQL = "UPDATE " + DatabaseHelper.TABLE_PERIOD_SUMMARY
+            + " SET " + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT + " = "
+            + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT + " + ?"
+            + " WHERE " + DatabaseHelper.COLUMN_PERIOD_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_PERIOD_TYPE + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_PERIOD_KEY + " = ?";
+    private static final String INSERT_PERIOD_SQL = "INSERT INTO " + DatabaseHelper.TABLE_PERIOD_SUMMARY + " ("
+            + DatabaseHelper.COLUMN_PERIOD_HABIT_ID + ", "
+            + DatabaseHelper.COLUMN_PERIOD_TYPE + ", "
+            + DatabaseHelper.COLUMN_PERIOD_KEY + ", "
+            + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT + ") VALUES (?, ?, ?, ?)";
+    private static final String PRUNE_PERIOD_SQL = "DELETE FROM " + DatabaseHelper.TABLE_PERIOD_SUMMARY
+            + " WHERE " + DatabaseHelper.COLUMN_PERIOD_HABIT_ID + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_PERIOD_TYPE + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_PERIOD_KEY + " = ?"
+            + " AND " + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT + " <= 0";
+
+    private DatabaseHelper dbHelper;
+
+    public SummaryDao(DatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * 获取某日的触发次数（今日的次数优先读内存计数器）
+     */
+    public int getDailyCount(long habitId, long epochDay) {
+        int cached = dbHelper.getDailyCounter().peek(habitId, epochDay);
+        if (cached >= 0) {
+            return cached;
+        }
+        return queryDailyCount(habitId, epochDay);
+    }
+
+    /**
+     * 在写事务中获取某日的触发次数，今日的次数未缓存时加载到计数器
+     */
+    int getDailyCountForWrite(long habitId, long epochDay) {
+        return dbHelper.getDailyCounter().getOrLoad(habitId, epochDay, () -> queryDailyCount(habitId, epochDay));
+    }
+
+    /**
+     * 获取某日的触发次数；今日的次数未缓存时开一个写事务加载到计数器，之后数据库中的写入随事务更新它，
+     * 同一习惯当天的后续调用只读内存
+     */
+    int loadDailyCount(long habitId, long epochDay) {
+        int cached = dbHelper.getDailyCounter().peek(habitId, epochDay);
+        if (cached >= 0) {
+            return cached;
+        }
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int count = getDailyCountForWrite(habitId, epochDay);
+            db.setTransactionSuccessful();
+            return count;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private int queryDailyCount(long habitId, long epochDay) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return (int) dbHelper.getStatementCache().simpleQueryForLong(db, DAILY_COUNT_SQL, 0, habitId, epochDay);
+    }
+
+    /**
+     * 获取纪元日范围内每日的触发次数（日期 -> 触发次数），只读取有记录的天
+     */
+    public Map<String, Integer> getDailyCounts(long habitId, long startDay, long endDay) {
+        Map<String, Integer> counts = new HashMap<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String selection = DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " = ? AND "
+                + DatabaseHelper.COLUMN_SUMMARY_DAY + " BETWEEN ? AND ?";
+        String[] selectionArgs = {String.valueOf(habitId), String.valueOf(startDay), String.valueOf(endDay)};
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_DAILY_SUMMARY,
+                new String[]{DatabaseHelper.COLUMN_SUMMARY_DAY, DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT},
+                selection, selectionArgs, null, null, null);
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                counts.put(DateUtils.formatEpochDay(cursor.getLong(0)), cursor.getInt(1));
+            }
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    /**
+     * 获取周汇总（该周周一的日期 -> 触发次数）
+     */
+    public Map<String, Integer> getWeeklyCounts(long habitId, long startDay, long endDay) {
+        Map<String, Integer> counts = new HashMap<>();
+        Cursor cursor = queryPeriodCounts(habitId, PERIOD_WEEK, weekKey(startDay), weekKey(endDay));
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                counts.put(DateUtils.formatEpochDay(cursor.getLong(0)), cursor.getInt(1));
+            }
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    /**
+     * 获取某年各月的汇总（yyyy-MM -> 触发次数），最多12行
+     */
+    public Map<String, Integer> getMonthlyCounts(long habitId, int year) {
+        Map<String, Integer> counts = new HashMap<>();
+        Cursor cursor = queryPeriodCounts(habitId, PERIOD_MONTH, year * 100 + 1, year * 100 + 12);
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                int key = cursor.getInt(0);
+                counts.put(String.format(Locale.US, "%04d-%02d", key / 100, key % 100), cursor.getInt(1));
+            }
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    /**
+     * 获取多年的年度汇总（年份 -> 触发次数）
+     */
+    public Map<Integer, Integer> getYearlyCounts(long habitId, int startYear, int endYear) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        Cursor cursor = queryPeriodCounts(habitId, PERIOD_YEAR, startYear, endYear);
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getInt(0), cursor.getInt(1));
+            }
+            cursor.close();
+        }
+
+        return counts;
+    }
+
+    /**
+     * 一次查询多个习惯在纪元日范围内每天的触发次数，列为距 startDay 的天数
+     * 每日汇总本身已按 (习惯, 日) 分组，单次按主键范围读取即可填满矩阵，不必每个习惯查询一次。
+     */
+    public StatisticsMatrix getDailyCountMatrix(long[] habitIds, long startDay, long endDay) {
+        StatisticsMatrix matrix = new StatisticsMatrix(habitIds, (int) (endDay - startDay + 1));
+        if (habitIds.length == 0) return matrix;
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String selection = DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + " IN (" + placeholders(habitIds.length) + ") AND "
+                + DatabaseHelper.COLUMN_SUMMARY_DAY + " BETWEEN ? AND ?";
+        String[] selectionArgs = idArgs(habitIds, String.valueOf(startDay), String.valueOf(endDay));
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_DAILY_SUMMARY,
+                new String[]{DatabaseHelper.COLUMN_SUMMARY_HABIT_ID, DatabaseHelper.COLUMN_SUMMARY_DAY,
+                        DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT},
+                selection, selectionArgs, null, null, null);
+        fillMatrix(matrix, cursor, startDay);
+        return matrix;
+    }
+
+    /**
+     * 一次查询多个习惯某年各月的触发次数，列为月份减1
+     */
+    public StatisticsMatrix getMonthlyCountMatrix(long[] habitIds, int year) {
+        StatisticsMatrix matrix = new StatisticsMatrix(habitIds, 12);
+        if (habitIds.length == 0) return matrix;
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String selection = DatabaseHelper.COLUMN_PERIOD_HABIT_ID + " IN (" + placeholders(habitIds.length) + ") AND "
+                + DatabaseHelper.COLUMN_PERIOD_TYPE + " = ? AND "
+                + DatabaseHelper.COLUMN_PERIOD_KEY + " BETWEEN ? AND ?";
+        String[] selectionArgs = idArgs(habitIds, String.valueOf(PERIOD_MONTH),
+                String.valueOf(year * 100 + 1), String.valueOf(year * 100 + 12));
+
+        Cursor cursor = db.query(DatabaseHelper.TABLE_PERIOD_SUMMARY,
+                new String[]{DatabaseHelper.COLUMN_PERIOD_HABIT_ID, DatabaseHelper.COLUMN_PERIOD_KEY,
+                        DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT},
+                selection, selectionArgs, null, null, null);
+        fillMatrix(matrix, cursor, year * 100 + 1);
+        return matrix;
+    }
+
+    /**
+     * 从原始记录和归档计数重新计算某一级汇总
+     */
+    public void rebuild(int periodType) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        db.beginTransaction();
+        try {
+            if (periodType == PERIOD_DAY) {
+                db.delete(DatabaseHelper.TABLE_DAILY_SUMMARY, null, null);
+                db.execSQL("INSERT INTO " + DatabaseHelper.TABLE_DAILY_SUMMARY + " ("
+                        + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + ", "
+                        + DatabaseHelper.COLUMN_SUMMARY_DAY + ", "
+                        + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT + ") "
+                        + aggregateFromRecords(periodType));
+            } else {
+                db.delete(DatabaseHelper.TABLE_PERIOD_SUMMARY, DatabaseHelper.COLUMN_PERIOD_TYPE + " = ?",
+                        new String[]{String.valueOf(periodType)});
+                db.execSQL("INSERT INTO " + DatabaseHelper.TABLE_PERIOD_SUMMARY + " ("
+                        + DatabaseHelper.COLUMN_PERIOD_HABIT_ID + ", "
+                        + DatabaseHelper.COLUMN_PERIOD_TYPE + ", "
+                        + DatabaseHelper.COLUMN_PERIOD_KEY + ", "
+                        + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT + ") "
+                        + "SELECT habit_id, " + periodType + ", period_key, trigger_count FROM ("
+                        + aggregateFromRecords(periodType) + ")");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (periodType == PERIOD_DAY) {
+            dbHelper.getDailyCounter().invalidateAll();
+        }
+    }
+
+    /**
+     * 重新计算所有级别的汇总
+     */
+    public void rebuildAll() {
+        rebuild(PERIOD_DAY);
+        rebuild(PERIOD_WEEK);
+        rebuild(PERIOD_MONTH);
+        rebuild(PERIOD_YEAR);
+    }
+
+    /**
+     * 校验某一级汇总与原始记录是否一致
+     * @return 不一致的汇总行数，0表示完全一致
+     */
+    public int verify(int periodType) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String expected = aggregateFromRecords(periodType);
+        String actual;
+        if (periodType == PERIOD_DAY) {
+            actual = "SELECT " + DatabaseHelper.COLUMN_SUMMARY_HABIT_ID + ", "
+                    + DatabaseHelper.COLUMN_SUMMARY_DAY + ", "
+                    + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT
+                    + " FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY;
+        } else {
+            actual = "SELECT " + DatabaseHelper.COLUMN_PERIOD_HABIT_ID + ", "
+                    + DatabaseHelper.COLUMN_PERIOD_KEY + ", "
+                    + DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT
+                    + " FROM " + DatabaseHelper.TABLE_PERIOD_SUMMARY
+                    + " WHERE " + DatabaseHelper.COLUMN_PERIOD_TYPE + " = " + periodType;
+        }
+
+        long missing = DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM (" + expected + " EXCEPT " + actual + ")", null);
+        long extra = DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM (" + actual + " EXCEPT " + expected + ")", null);
+
+        return (int) (missing + extra);
+    }
+
+    /**
+     * 校验所有级别的汇总
+     * @return 不一致的汇总行数，0表示完全一致
+     */
+    public int verifyAll() {
+        return verify(PERIOD_DAY) + verify(PERIOD_WEEK) + verify(PERIOD_MONTH) + verify(PERIOD_YEAR);
+    }
+
+    /**
+     * 调整某日及其所在周/月/年的触发次数，必须在写入记录的同一事务中调用
+     */
+    void adjustCounts(SQLiteDatabase db, long habitId, long epochDay, int delta) {
+        if (delta == 0) return;
+
+        StatementCache cache = dbHelper.getStatementCache();
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+
+        int updatedRows = cache.executeUpdateDelete(db, INCREMENT_DAILY_SQL, delta, habitId, epochDay);
+        if (updatedRows == 0 && delta > 0) {
+            // 当日第一条记录
+            cache.executeInsert(db, INSERT_DAILY_SQL, habitId, epochDay, delta);
+        } else if (delta < 0) {
+            // 次数归零的行不保留，保持汇总表紧凑
+            cache.executeUpdateDelete(db, PRUNE_DAILY_SQL, habitId, epochDay);
+        }
+
+        dbHelper.getDailyCounter().adjust(habitId, epochDay, delta);
+
+        adjustPeriodCount(cache, db, habitId, PERIOD_WEEK, weekKey(epochDay), delta);
+        adjustPeriodCount(cache, db, habitId, PERIOD_MONTH, date.getYear() * 100 + date.getMonthValue(), delta);
+        adjustPeriodCount(cache, db, habitId, PERIOD_YEAR, date.getYear(), delta);
+    }
+
+    /**
+     * 周汇总键：该周周一的纪元日
+     */
+    static long weekKey(long epochDay) {
+        return epochDay - Math.floorMod(epochDay + 3, 7);
+    }
+
+    private static void adjustPeriodCount(StatementCache cache, SQLiteDatabase db, long habitId,
+                                          int periodType, long periodKey, int delta) {
+        int updatedRows = cache.executeUpdateDelete(db, INCREMENT_PERIOD_SQL, delta, habitId, periodType, periodKey);
+        if (updatedRows == 0 && delta > 0) {
+            cache.executeInsert(db, INSERT_PERIOD_SQL, habitId, periodType, periodKey, delta);
+        } else if (delta < 0) {
+            cache.executeUpdateDelete(db, PRUNE_PERIOD_SQL, habitId, periodType, periodKey);
+        }
+    }
+
+    /**
+     * 把 (习惯ID, 汇总键, 次数) 行累加到矩阵中并关闭Cursor，列为汇总键减 firstKey
+     */
+    private static void fillMatrix(StatisticsMatrix matrix, Cursor cursor, long firstKey) {
+        if (cursor == null) return;
+
+        try {
+            while (cursor.moveToNext()) {
+                int row = matrix.rowOf(cursor.getLong(0));
+                if (row >= 0) {
+                    matrix.add(row, (int) (cursor.getLong(1) - firstKey), cursor.getInt(2));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * IN 列表的参数占位符（习惯数远小于SQLite绑定参数个数上限999）
+     */
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 绑定参数：先是各习惯ID，再是其余参数
+     */
+    private static String[] idArgs(long[] habitIds, String... rest) {
+        String[] args = new String[habitIds.length + rest.length];
+        for (int i = 0; i < habitIds.length; i++) {
+            args[i] = String.valueOf(habitIds[i]);
+        }
+        System.arraycopy(rest, 0, args, habitIds.length, rest.length);
+        return args;
+    }
+
+    /**
+     * 按汇总键范围读取某一级汇总（汇总键, 次数）
+     */
+    private Cursor queryPeriodCounts(long habitId, int periodType, long startKey, long endKey) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        String selection = DatabaseHelper.COLUMN_PERIOD_HABIT_ID + " = ? AND "
+                + DatabaseHelper.COLUMN_PERIOD_TYPE + " = ? AND "
+                + DatabaseHelper.COLUMN_PERIOD_KEY + " BETWEEN ? AND ?";
+        String[] selectionArgs = {String.valueOf(habitId), String.valueOf(periodType),
+                String.valueOf(startKey), String.valueOf(endKey)};
+
+        return db.query(DatabaseHelper.TABLE_PERIOD_SUMMARY,
+                new String[]{DatabaseHelper.COLUMN_PERIOD_KEY, DatabaseHelper.COLUMN_PERIOD_TRIGGER_COUNT},
+                selection, selectionArgs, null, null, DatabaseHelper.COLUMN_PERIOD_KEY + " ASC");
+    }
+
+    /**
+     * 由原始记录聚合某一级汇总的查询（habit_id, period_key, trigger_count）
+     */
+    private static String aggregateFromRecords(int periodType) {
+        // 原始记录每行计1次，已归档的天按归档计数计入
+        return "SELECT habit_id, " + periodKeySql(periodType) + " AS period_key,"
+                + " SUM(trigger_count) AS trigger_count FROM ("
+                + "SELECT " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " AS habit_id, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " AS " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY
+                + ", 1 AS trigger_count FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+                + " UNION ALL SELECT " + DatabaseHelper.COLUMN_ARCHIVE_HABIT_ID + ", "
+                + DatabaseHelper.COLUMN_ARCHIVE_DAY + ", " + DatabaseHelper.COLUMN_ARCHIVE_TRIGGER_COUNT
+                + " FROM " + DatabaseHelper.TABLE_ARCHIVED_DAILY_COUNTS
+                + ") GROUP BY habit_id, period_key";
+    }
+
+    private static String periodKeySql(int periodType) {
+        switch (periodType) {
+            case PERIOD_DAY:
+                return DAY_KEY_SQL;
+            case PERIOD_WEEK:
+                return WEEK_KEY_SQL;
+            case PERIOD_MONTH:
+                return MONTH_KEY_SQL;
+            case PERIOD_YEAR:
+                return YEAR_KEY_SQL;
+            default:
+                throw new IllegalArgumentException("未知的汇总级别: " + periodType);
+        }
+    }
+}
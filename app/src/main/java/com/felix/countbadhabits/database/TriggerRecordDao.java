@@ -2,55 +2,195 @@ package com.felix.countbadhabits.database;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.felix.countbadhabits.model.StatisticsMatrix;
 import com.felix.countbadhabits.model.TriggerRecord;
-import java.text.SimpleDateFormat;
+import com.felix.countbadhabits.utils.DateUtils;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 触发记录数据访问对象
  */
 public class TriggerRecordDao {
+    private static final String INSERT_RECORD_SQL = "INSERT INTO " + DatabaseHelper.TABLE_TRIGGER_RECORDS + " ("
+            + DatabaseHelper.COLUMN_RECORD_ID + ", "
+            + DatabaseHelper.COLUMN_RECORD_HABIT_ID + ", "
+            + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + ", "
+            + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + ", "
+            + DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID + ", "
+            + DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER
+            + ") VALUES (?, ?, ?, ?, ?, ?)";
+    // AUTOINCREMENT 序列已分配到的最大ID（sqlite_sequence 中还没有该表时取表中最大ID）
+    private static final String RECORD_SEQUENCE_SQL = "SELECT MAX(COALESCE((SELECT seq FROM sqlite_sequence WHERE name = '"
+            + DatabaseHelper.TABLE_TRIGGER_RECORDS + "'), 0), COALESCE((SELECT MAX(" + DatabaseHelper.COLUMN_RECORD_ID
+            + ") FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS + "), 0))";
+    private static final String UPDATE_RECORD_SEQUENCE_SQL = "UPDATE sqlite_sequence SET seq = ? WHERE name = '"
+            + DatabaseHelper.TABLE_TRIGGER_RECORDS + "'";
+    private static final String INSERT_RECORD_SEQUENCE_SQL = "INSERT INTO sqlite_sequence (name, seq) VALUES ('"
+            + DatabaseHelper.TABLE_TRIGGER_RECORDS + "', ?)";
+    private static final String RECORD_EXISTS_SQL = "SELECT 1 FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_ID + " = ?";
+    // 一批最多删除 ? 条记录；子查询走 (habit_id, trigger_day) 索引
+    private static final String DELETE_HABIT_RECORDS_BATCH_SQL = "DELETE FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_ID + " IN (SELECT " + DatabaseHelper.COLUMN_RECORD_ID
+            + " FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS
+            + " WHERE " + DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? LIMIT ?)";
+
+    // 完整记录（列表、详情）；描述按字典ID从 DescriptionDao 取得，相同描述共用一个String
+    private final RowMapper<TriggerRecord> recordMapper = new RowMapper<TriggerRecord>(
+            DatabaseHelper.COLUMN_RECORD_ID,
+            DatabaseHelper.COLUMN_RECORD_HABIT_ID,
+            DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY,
+            DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS,
+            DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID,
+            DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER) {
+        @Override
+        protected TriggerRecord map(Cursor cursor, int[] columns) {
+            long millis = cursor.getLong(columns[3]);
+            return new TriggerRecord(
+                    cursor.getLong(columns[0]),
+                    cursor.getLong(columns[1]),
+                    DateUtils.formatEpochDay(cursor.getLong(columns[2])),
+                    DateUtils.formatLocalMillisTime(millis),
+                    DateUtils.formatLocalMillis(millis),
+                    cursor.isNull(columns[4]) ? null : descriptionDao.getText(cursor.getLong(columns[4])),
+                    cursor.getInt(columns[5]));
+        }
+    };
+
+    // 记录所属的 {习惯ID, 纪元日}（修改/删除时修正汇总用）
+    private static final RowMapper<long[]> HABIT_DAY_MAPPER = new RowMapper<long[]>(
+            DatabaseHelper.COLUMN_RECORD_HABIT_ID,
+            DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY) {
+        @Override
+        protected long[] map(Cursor cursor, int[] columns) {
+            return new long[]{cursor.getLong(columns[0]), cursor.getLong(columns[1])};
+        }
+    };
+
     private DatabaseHelper dbHelper;
+    private SummaryDao summaryDao;
+    private ArchiveDao archiveDao;
+    private DescriptionDao descriptionDao;
+
+    /**
+     * 逐行访问记录（导出用），不创建 TriggerRecord 对象
+     */
+    public interface RecordVisitor {
+        void visit(long habitId, long triggerMillis, String description, int sequenceNumber) throws IOException;
+    }
+
+    /**
+     * 搜索结果的相关度级别：每个词完整匹配的排在只匹配开头的前面
+     */
+    private static final int TIER_EXACT = 0;
+    private static final int TIER_PREFIX = 1;
+
+    /**
+     * 搜索分页游标：上一页最后一条结果所在的级别及其 纪元日+时间+ID
+     */
+    public static final class SearchCursor {
+        private final int tier;
+        private final long day;
+        private final long millis;
+        private final long id;
+
+        private SearchCursor(int tier, long day, long millis, long id) {
+            this.tier = tier;
+            this.day = day;
+            this.millis = millis;
+            this.id = id;
+        }
+
+        /**
+         * 某级别的开头（排在所有记录之前）
+         */
+        private static SearchCursor start(int tier) {
+            return new SearchCursor(tier, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+
+        /**
+         * 指向某级别中的一条记录
+         */
+        private static SearchCursor of(int tier, TriggerRecord record) {
+            long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+            return new SearchCursor(tier, DateUtils.epochDayOfLocalMillis(millis), millis, record.getId());
+        }
+
+        /**
+         * 记录在级别内是否排在游标之后（更早的时间，同一时间ID更小）
+         */
+        private boolean precedes(TriggerRecord record) {
+            long recordMillis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+            return recordMillis < millis || (recordMillis == millis && record.getId() < id);
+        }
+    }
+
+    /**
+     * 一页搜索结果
+     */
+    public static final class SearchPage {
+        private final List<TriggerRecord> records;
+        private final SearchCursor next;
+
+        private SearchPage(List<TriggerRecord> records, SearchCursor next) {
+            this.records = records;
+            this.next = next;
+        }
+
+        public List<TriggerRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * 取下一页的游标，没有更多结果时为null
+         */
+        public SearchCursor getNext() {
+            return next;
+        }
+    }
 
     public TriggerRecordDao(DatabaseHelper dbHelper) {
         this.dbHelper = dbHelper;
+        this.summaryDao = new SummaryDao(dbHelper);
+        this.archiveDao = new ArchiveDao(dbHelper);
+        this.descriptionDao = new DescriptionDao(dbHelper);
     }
 
     /**
      * 获取今日的触发记录
      */
     public List<TriggerRecord> getTodayRecords(long habitId) {
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        return getRecordsByDate(habitId, today);
+        return getRecordsByDate(habitId, DateUtils.getTodayString());
     }
 
     /**
      * 根据日期获取触发记录
      */
     public List<TriggerRecord> getRecordsByDate(long habitId, String date) {
-        List<TriggerRecord> records = new ArrayList<>();
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND " 
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " = ?";
-        String[] selectionArgs = {String.valueOf(habitId), date};
-        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_TIME + " ASC";
+        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " = ?";
+        String[] selectionArgs = {String.valueOf(habitId), String.valueOf(DateUtils.toEpochDay(date))};
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " ASC";
         
-        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, null, selection, selectionArgs, null, null, orderBy);
-        
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                records.add(cursorToRecord(cursor));
-            }
-            cursor.close();
-        }
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, recordMapper.getProjection(),
+                selection, selectionArgs, null, null, orderBy);
         
+        List<TriggerRecord> records = recordMapper.mapAll(cursor);
+        QueryMetrics.end("TriggerRecordDao.getRecordsByDate", start, records.size());
         return records;
     }
 
@@ -58,83 +198,314 @@ public class TriggerRecordDao {
      * 插入新的触发记录
      */
     public long insertRecord(TriggerRecord record) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
-        // 获取当日的序号
-        int sequenceNumber = getTodayRecordCount(record.getHabitId()) + 1;
-        record.setSequenceNumber(sequenceNumber);
-        
-        ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.COLUMN_RECORD_HABIT_ID, record.getHabitId());
-        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE, record.getTriggerDate());
-        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_TIME, record.getTriggerTime());
-        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_DATETIME, record.getTriggerDateTime());
-        values.put(DatabaseHelper.COLUMN_RECORD_DESCRIPTION, record.getDescription());
-        values.put(DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER, record.getSequenceNumber());
-        
-        long id = db.insert(DatabaseHelper.TABLE_TRIGGER_RECORDS, null, values);
+        long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+        long day = DateUtils.epochDayOfLocalMillis(millis);
+        
+        long id;
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            // 获取当日的序号（今日的次数直接取内存计数器）
+            int sequenceNumber = summaryDao.getDailyCountForWrite(record.getHabitId(), day) + 1;
+            record.setSequenceNumber(sequenceNumber);
+            
+            ContentValues values = new ContentValues();
+            values.put(DatabaseHelper.COLUMN_RECORD_HABIT_ID, record.getHabitId());
+            values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY, day);
+            values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS, millis);
+            values.put(DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID, descriptionDao.intern(db, record.getDescription()));
+            values.put(DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER, record.getSequenceNumber());
+            
+            id = db.insert(DatabaseHelper.TABLE_TRIGGER_RECORDS, null, values);
+            if (id != -1) {
+                summaryDao.adjustCounts(db, record.getHabitId(), day, 1);
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (!success) {
+                // 事务回滚，计数器中已做的增减和新加入字典的描述作废
+                dbHelper.getDailyCounter().invalidateAll();
+                dbHelper.getDescriptionCache().invalidateAll();
+            }
+            db.endTransaction();
+        }
+        // 事务已提交，计数器中的增减此时才对读线程可见
+        dbHelper.getDailyCounter().commit();
         record.setId(id);
+        if (id != -1) {
+            dbHelper.getInvalidationTracker().notifyRecordsChanged(record.getHabitId(), day);
+        }
+        QueryMetrics.end("TriggerRecordDao.insertRecord", start, id != -1 ? 1 : 0);
         
         return id;
     }
 
+    /**
+     * 批量插入触发记录（导入/恢复用）
+     * 整批在一个事务中完成，复用同一条预编译语句；序号按 习惯+日 在内存中连续分配，
+     * 汇总表每个 习惯+日 只更新一次。
+     * ID大于0的记录按该ID插入（须是 reserveRecordIds 预留的ID），否则由数据库分配。
+     * @return 成功插入的记录数
+     */
+    public int insertRecords(List<TriggerRecord> records) {
+        if (records.isEmpty()) return 0;
+        long start = QueryMetrics.start();
+        
+        // 先算出时间并按时间排序，保证同一天内序号与时间顺序一致
+        List<PendingRecord> pending = new ArrayList<>(records.size());
+        for (TriggerRecord record : records) {
+            pending.add(new PendingRecord(record, DateUtils.toLocalMillis(record.getTriggerDateTime())));
+        }
+        Collections.sort(pending, (a, b) -> Long.compare(a.millis, b.millis));
+        
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        Map<HabitDay, int[]> dayCounts = new HashMap<>();
+        int inserted = 0;
+        
+        SQLiteStatement statement = db.compileStatement(INSERT_RECORD_SQL);
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            for (PendingRecord item : pending) {
+                TriggerRecord record = item.record;
+                long day = DateUtils.epochDayOfLocalMillis(item.millis);
+                
+                // int[0]: 插入前已有的条数, int[1]: 本批新增条数
+                HabitDay key = new HabitDay(record.getHabitId(), day);
+                int[] counts = dayCounts.get(key);
+                if (counts == null) {
+                    counts = new int[]{summaryDao.getDailyCountForWrite(record.getHabitId(), day), 0};
+                    dayCounts.put(key, counts);
+                }
+                record.setSequenceNumber(counts[0] + counts[1] + 1);
+                
+                if (record.getId() > 0) {
+                    statement.bindLong(1, record.getId());
+                } else {
+                    statement.bindNull(1);
+                }
+                statement.bindLong(2, record.getHabitId());
+                statement.bindLong(3, day);
+                statement.bindLong(4, item.millis);
+                Long descriptionId = descriptionDao.intern(db, record.getDescription());
+                if (descriptionId != null) {
+                    statement.bindLong(5, descriptionId);
+                } else {
+                    statement.bindNull(5);
+                }
+                statement.bindLong(6, record.getSequenceNumber());
+                
+                long id = statement.executeInsert();
+                record.setId(id);
+                if (id != -1) {
+                    counts[1]++;
+                    inserted++;
+                }
+            }
+            
+            for (Map.Entry<HabitDay, int[]> entry : dayCounts.entrySet()) {
+                summaryDao.adjustCounts(db, entry.getKey().habitId, entry.getKey().day, entry.getValue()[1]);
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (!success) {
+                // 事务回滚，计数器中已做的增减和新加入字典的描述作废
+                dbHelper.getDailyCounter().invalidateAll();
+                dbHelper.getDescriptionCache().invalidateAll();
+            }
+            db.endTransaction();
+            statement.close();
+        }
+        dbHelper.getDailyCounter().commit();
+        
+        InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+        for (Map.Entry<HabitDay, int[]> entry : dayCounts.entrySet()) {
+            if (entry.getValue()[1] > 0) {
+                tracker.notifyRecordsChanged(entry.getKey().habitId, entry.getKey().day);
+            }
+        }
+        QueryMetrics.end("TriggerRecordDao.insertRecords", start, inserted);
+        
+        return inserted;
+    }
+
+    /**
+     * 预留 count 个连续的记录ID并返回第一个
+     * 推进 trigger_records 的 AUTOINCREMENT 序列，之后数据库自动分配的ID都大于预留段，
+     * 预留的ID只能通过 insertRecords 显式使用，未用完的留作空洞。
+     */
+    public long reserveRecordIds(int count) {
+        long start = QueryMetrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        StatementCache statements = dbHelper.getStatementCache();
+        
+        long firstId;
+        db.beginTransaction();
+        try {
+            firstId = statements.simpleQueryForLong(db, RECORD_SEQUENCE_SQL, 0) + 1;
+            long lastId = firstId + count - 1;
+            if (statements.executeUpdateDelete(db, UPDATE_RECORD_SEQUENCE_SQL, lastId) == 0) {
+                statements.executeInsert(db, INSERT_RECORD_SEQUENCE_SQL, lastId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        QueryMetrics.end("TriggerRecordDao.reserveRecordIds", start, count);
+        return firstId;
+    }
+
+    /**
+     * 指定ID的记录是否存在
+     */
+    public boolean recordExists(long id) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return dbHelper.getStatementCache().simpleQueryForLong(db, RECORD_EXISTS_SQL, 0, id) == 1;
+    }
+
     /**
      * 更新触发记录
      */
     public int updateRecord(TriggerRecord record) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
+        long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+        long day = DateUtils.epochDayOfLocalMillis(millis);
+        
         ContentValues values = new ContentValues();
-        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_TIME, record.getTriggerTime());
-        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_DATETIME, record.getTriggerDateTime());
-        values.put(DatabaseHelper.COLUMN_RECORD_DESCRIPTION, record.getDescription());
+        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY, day);
+        values.put(DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS, millis);
         
         String whereClause = DatabaseHelper.COLUMN_RECORD_ID + " = ?";
         String[] whereArgs = {String.valueOf(record.getId())};
         
-        return db.update(DatabaseHelper.TABLE_TRIGGER_RECORDS, values, whereClause, whereArgs);
+        int updatedRows = 0;
+        long[] previous;
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            previous = queryHabitAndDay(db, record.getId());
+            if (previous != null) {
+                values.put(DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID, descriptionDao.intern(db, record.getDescription()));
+                updatedRows = db.update(DatabaseHelper.TABLE_TRIGGER_RECORDS, values, whereClause, whereArgs);
+                if (updatedRows > 0 && previous[1] != day) {
+                    // 记录移动到了另一天，两边的汇总都要修正
+                    summaryDao.adjustCounts(db, previous[0], previous[1], -1);
+                    summaryDao.adjustCounts(db, previous[0], day, 1);
+                }
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (!success) {
+                // 事务回滚，计数器中已做的增减和新加入字典的描述作废
+                dbHelper.getDailyCounter().invalidateAll();
+                dbHelper.getDescriptionCache().invalidateAll();
+            }
+            db.endTransaction();
+        }
+        dbHelper.getDailyCounter().commit();
+        
+        if (updatedRows > 0) {
+            InvalidationTracker tracker = dbHelper.getInvalidationTracker();
+            tracker.notifyRecordsChanged(previous[0], previous[1]);
+            tracker.notifyRecordsChanged(previous[0], day);
+        }
+        QueryMetrics.end("TriggerRecordDao.updateRecord", start, updatedRows);
+        
+        return updatedRows;
     }
 
     /**
      * 删除触发记录
      */
     public int deleteRecord(long recordId) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         String whereClause = DatabaseHelper.COLUMN_RECORD_ID + " = ?";
         String[] whereArgs = {String.valueOf(recordId)};
         
-        return db.delete(DatabaseHelper.TABLE_TRIGGER_RECORDS, whereClause, whereArgs);
+        int deletedRows = 0;
+        long[] previous;
+        boolean success = false;
+        db.beginTransaction();
+        try {
+            previous = queryHabitAndDay(db, recordId);
+            if (previous != null) {
+                deletedRows = db.delete(DatabaseHelper.TABLE_TRIGGER_RECORDS, whereClause, whereArgs);
+                if (deletedRows > 0) {
+                    summaryDao.adjustCounts(db, previous[0], previous[1], -deletedRows);
+                }
+            }
+            db.setTransactionSuccessful();
+            success = true;
+        } finally {
+            if (!success) {
+                // 事务回滚，计数器中已做的增减作废
+                dbHelper.getDailyCounter().invalidateAll();
+            }
+            db.endTransaction();
+        }
+        dbHelper.getDailyCounter().commit();
+        
+        if (deletedRows > 0) {
+            dbHelper.getInvalidationTracker().notifyRecordsChanged(previous[0], previous[1]);
+        }
+        QueryMetrics.end("TriggerRecordDao.deleteRecord", start, deletedRows);
+        
+        return deletedRows;
+    }
+
+    /**
+     * 删除待删除习惯的一批记录，返回本批删除的条数（0表示已删完）
+     * 每批是一个独立的隐式事务，锁持有时间和WAL增长都有上限，批次之间其他写操作可以插入执行。
+     * 只用于已 markPendingDelete 的习惯：汇总不随之调整，最后删除习惯时级联删除。
+     */
+    public int deleteHabitRecords(long habitId, int limit) {
+        long start = QueryMetrics.start();
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int deleted = dbHelper.getStatementCache().executeUpdateDelete(db, DELETE_HABIT_RECORDS_BATCH_SQL,
+                habitId, limit);
+        QueryMetrics.end("TriggerRecordDao.deleteHabitRecords", start, deleted);
+        return deleted;
     }
 
     /**
      * 获取今日记录数量
      */
     public int getTodayRecordCount(long habitId) {
-        String today = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date());
-        return getRecordCountByDate(habitId, today);
+        return getRecordCount(habitId, DateUtils.getTodayEpochDay());
     }
 
     /**
      * 根据日期获取记录数量
      */
     public int getRecordCountByDate(long habitId, String date) {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        
-        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND " 
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " = ?";
-        String[] selectionArgs = {String.valueOf(habitId), date};
-        
-        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, 
-                new String[]{"COUNT(*)"}, 
-                selection, selectionArgs, null, null, null);
-        
-        int count = 0;
-        if (cursor != null && cursor.moveToFirst()) {
-            count = cursor.getInt(0);
-            cursor.close();
-        }
-        
+        return getRecordCount(habitId, DateUtils.toEpochDay(date));
+    }
+
+    /**
+     * 获取今日的记录数并保证其留在内存计数器中（追加日志分配序号用）
+     * 首次调用时加载一次，此后的调用不查库
+     */
+    public int loadTodayRecordCount(long habitId) {
+        long start = QueryMetrics.start();
+        int count = summaryDao.loadDailyCount(habitId, DateUtils.getTodayEpochDay());
+        QueryMetrics.end("TriggerRecordDao.loadTodayRecordCount", start, 1);
+        return count;
+    }
+
+    private int getRecordCount(long habitId, long day) {
+        long start = QueryMetrics.start();
+        int count = summaryDao.getDailyCount(habitId, day);
+        QueryMetrics.end("TriggerRecordDao.getRecordCount", start, 1);
         return count;
     }
 
@@ -142,104 +513,352 @@ public class TriggerRecordDao {
      * 获取月度统计数据（日期 -> 触发次数）
      */
     public Map<String, Integer> getMonthlyStatistics(long habitId, int year, int month) {
-        Map<String, Integer> statistics = new HashMap<>();
+        long start = QueryMetrics.start();
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        long startDay = firstDay.toEpochDay();
+        long endDay = firstDay.plusMonths(1).toEpochDay() - 1;
+        
+        // 从每日汇总表读取，最多31行
+        Map<String, Integer> counts = summaryDao.getDailyCounts(habitId, startDay, endDay);
+        QueryMetrics.end("TriggerRecordDao.getMonthlyStatistics", start, counts.size());
+        return counts;
+    }
+
+    /**
+     * 获取年度统计数据（月份 -> 触发次数）
+     */
+    public Map<String, Integer> getYearlyStatistics(long habitId, int year) {
+        long start = QueryMetrics.start();
+        // 从月汇总读取，最多12行
+        Map<String, Integer> counts = summaryDao.getMonthlyCounts(habitId, year);
+        QueryMetrics.end("TriggerRecordDao.getYearlyStatistics", start, counts.size());
+        return counts;
+    }
+
+    /**
+     * 一次查询多个习惯的月度统计，列为当月第几天（从0起）
+     */
+    public StatisticsMatrix getMonthlyStatistics(long[] habitIds, int year, int month) {
+        long start = QueryMetrics.start();
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        StatisticsMatrix matrix = summaryDao.getDailyCountMatrix(habitIds, firstDay.toEpochDay(),
+                firstDay.plusMonths(1).toEpochDay() - 1);
+        QueryMetrics.end("TriggerRecordDao.getMonthlyStatisticsMatrix", start, habitIds.length);
+        return matrix;
+    }
+
+    /**
+     * 一次查询多个习惯的年度统计，列为月份减1
+     */
+    public StatisticsMatrix getYearlyStatistics(long[] habitIds, int year) {
+        long start = QueryMetrics.start();
+        StatisticsMatrix matrix = summaryDao.getMonthlyCountMatrix(habitIds, year);
+        QueryMetrics.end("TriggerRecordDao.getYearlyStatisticsMatrix", start, habitIds.length);
+        return matrix;
+    }
+
+    /**
+     * 获取指定日期范围内的记录
+     */
+    public List<TriggerRecord> getRecordsByDateRange(long habitId, String startDate, String endDate) {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String monthStr = String.format(Locale.getDefault(), "%04d-%02d", year, month);
-        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND " 
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " LIKE ?";
-        String[] selectionArgs = {String.valueOf(habitId), monthStr + "%"};
+        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " BETWEEN ? AND ?";
+        String[] selectionArgs = {String.valueOf(habitId),
+                String.valueOf(DateUtils.toEpochDay(startDate)),
+                String.valueOf(DateUtils.toEpochDay(endDate))};
+        // 与索引列顺序一致，避免额外排序
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " ASC";
         
-        String sql = "SELECT " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + ", COUNT(*) as count " +
-                "FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS + " " +
-                "WHERE " + selection + " " +
-                "GROUP BY " + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE;
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, recordMapper.getProjection(),
+                selection, selectionArgs, null, null, orderBy);
         
-        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        List<TriggerRecord> records = recordMapper.mapAll(cursor);
+        QueryMetrics.end("TriggerRecordDao.getRecordsByDateRange", start, records.size());
+        return records;
+    }
+
+    /**
+     * 分页获取日期范围内的记录（按时间顺序）
+     * 以上一页最后一条记录的 纪元日+时间+ID 为游标（keyset），与索引列顺序一致，
+     * 每页直接定位到上一页结束处，不使用OFFSET，每页开销与页码无关。
+     * @param after 上一页的最后一条记录，首页传null
+     */
+    public List<TriggerRecord> getRecordsPage(long habitId, String startDate, String endDate,
+                                              TriggerRecord after, int pageSize) {
+        long start = QueryMetrics.start();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                String date = cursor.getString(0);
-                int count = cursor.getInt(1);
-                statistics.put(date, count);
-            }
-            cursor.close();
+        long startDay = DateUtils.toEpochDay(startDate);
+        long endDay = DateUtils.toEpochDay(endDate);
+        long afterMillis = after != null ? DateUtils.toLocalMillis(after.getTriggerDateTime()) : 0;
+        String selection;
+        String[] selectionArgs;
+        if (after == null || DateUtils.epochDayOfLocalMillis(afterMillis) < startDay) {
+            selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND "
+                    + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " BETWEEN ? AND ?";
+            selectionArgs = new String[]{String.valueOf(habitId), String.valueOf(startDay), String.valueOf(endDay)};
+        } else {
+            // 游标按索引列顺序包含 trigger_day，作为唯一的下界，SQLite从上一页结束处开始查索引，
+            // 而不是每页从范围开头重读
+            selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND "
+                    + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " <= ? AND ("
+                    + DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + ", "
+                    + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + ", "
+                    + DatabaseHelper.COLUMN_RECORD_ID + ") > (?, ?, ?)";
+            selectionArgs = new String[]{String.valueOf(habitId), String.valueOf(endDay),
+                    String.valueOf(DateUtils.epochDayOfLocalMillis(afterMillis)),
+                    String.valueOf(afterMillis),
+                    String.valueOf(after.getId())};
         }
+        // 索引 (habit_id, trigger_day, trigger_millis) 隐含 rowid，按此顺序排序无需额外排序
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_ID + " ASC";
+        
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, recordMapper.getProjection(),
+                selection, selectionArgs, null, null, orderBy, String.valueOf(pageSize));
         
-        return statistics;
+        List<TriggerRecord> records = recordMapper.mapAll(cursor, pageSize);
+        QueryMetrics.end("TriggerRecordDao.getRecordsPage", start, records.size());
+        return records;
     }
 
     /**
-     * 获取年度统计数据（月份 -> 触发次数）
+     * 按描述全文搜索记录
+     * 排序只分两个相关度级别：每个词完整匹配的结果在前，只匹配词开头的在后；
+     * 同一级别内按触发时间从新到旧（纪元日+时间+ID），不按词频等全文相关度排序。
+     * 每个级别一条语句，以上一页最后一条结果的 纪元日+时间+ID 为游标（keyset）分页。
+     * @param habitId 只搜索该习惯的记录，-1表示所有习惯
+     * @param after 上一页返回的游标，首页传null
      */
-    public Map<String, Integer> getYearlyStatistics(long habitId, int year) {
-        Map<String, Integer> statistics = new HashMap<>();
+    public SearchPage searchRecords(String query, long habitId, SearchCursor after, int pageSize) {
+        return searchRecords(query, habitId, after, pageSize, Collections.<TriggerRecord>emptyList());
+    }
+
+    /**
+     * 同 searchRecords，并在内存中匹配还未写入数据库的记录（追加日志中），按同一顺序与数据库结果归并
+     * 游标只由时间和ID组成，对两边都有效；数据库中已有同ID记录时只取一条。
+     */
+    public SearchPage searchRecords(String query, long habitId, SearchCursor after, int pageSize,
+                                    List<TriggerRecord> pending) {
+        SearchQuery parsed = SearchQuery.parse(query);
+        List<TriggerRecord> records = new ArrayList<>();
+        if (parsed.isEmpty()) {
+            return new SearchPage(records, null);
+        }
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        String yearStr = String.valueOf(year);
-        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND " 
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " LIKE ?";
-        String[] selectionArgs = {String.valueOf(habitId), yearStr + "%"};
+        SearchCursor position = after != null ? after : SearchCursor.start(TIER_EXACT);
+        if (position.tier == TIER_EXACT) {
+            records.addAll(searchTier(db, parsed.exact(), null, habitId, position, pageSize,
+                    matchPending(pending, parsed, false, habitId)));
+            if (records.size() < pageSize) {
+                position = SearchCursor.start(TIER_PREFIX);
+            }
+        }
+        if (position.tier == TIER_PREFIX && records.size() < pageSize) {
+            // 排除已在完整匹配级别返回过的记录
+            records.addAll(searchTier(db, parsed.prefix(), parsed.exact(), habitId, position,
+                    pageSize - records.size(), matchPending(pending, parsed, true, habitId)));
+        }
         
-        String sql = "SELECT substr(" + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + ", 1, 7) as month, COUNT(*) as count " +
-                "FROM " + DatabaseHelper.TABLE_TRIGGER_RECORDS + " " +
-                "WHERE " + selection + " " +
-                "GROUP BY month " +
-                "ORDER BY month";
+        SearchCursor next = null;
+        if (records.size() == pageSize) {
+            next = SearchCursor.of(position.tier, records.get(records.size() - 1));
+        }
+        QueryMetrics.end("TriggerRecordDao.searchRecords", start, records.size());
+        return new SearchPage(records, next);
+    }
+
+    /**
+     * 按时间顺序逐行访问某个习惯的全部记录，保存了描述的归档记录在前
+     * 只向前遍历Cursor，内存占用与记录总数无关
+     */
+    public void forEachRecord(long habitId, RecordVisitor visitor) throws IOException {
+        forEachRecord(habitId, Collections.<Long>emptySet(), visitor);
+    }
+
+    /**
+     * 同 forEachRecord，跳过ID在 skipIds 中的记录（调用方另行访问的追加日志中的记录）
+     */
+    public void forEachRecord(long habitId, Set<Long> skipIds, RecordVisitor visitor) throws IOException {
+        archiveDao.forEachArchivedRecord(habitId, visitor);
+        long start = QueryMetrics.start();
         
-        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
         
-        if (cursor != null) {
+        String[] projection = {DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS,
+                DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID,
+                DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER,
+                DatabaseHelper.COLUMN_RECORD_ID};
+        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ?";
+        String[] selectionArgs = {String.valueOf(habitId)};
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " ASC, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " ASC";
+        
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, projection, selection, selectionArgs,
+                null, null, orderBy);
+        if (cursor == null) return;
+        
+        int visited = 0;
+        try {
             while (cursor.moveToNext()) {
-                String month = cursor.getString(0);
-                int count = cursor.getInt(1);
-                statistics.put(month, count);
+                if (!skipIds.isEmpty() && skipIds.contains(cursor.getLong(3))) continue;
+                String description = cursor.isNull(1) ? null : descriptionDao.getText(cursor.getLong(1));
+                visitor.visit(habitId, cursor.getLong(0), description, cursor.getInt(2));
+                visited++;
             }
+        } finally {
             cursor.close();
         }
-        
-        return statistics;
+        // 包含访问者（写出文件）的耗时
+        QueryMetrics.end("TriggerRecordDao.forEachRecord", start, visited);
     }
 
     /**
-     * 获取指定日期范围内的记录
+     * 获取所有习惯的记录总数（从每日汇总求和）
      */
-    public List<TriggerRecord> getRecordsByDateRange(long habitId, String startDate, String endDate) {
-        List<TriggerRecord> records = new ArrayList<>();
+    public long getTotalRecordCount() {
+        long start = QueryMetrics.start();
         SQLiteDatabase db = dbHelper.getReadableDatabase();
+        long count = DatabaseUtils.longForQuery(db, "SELECT COALESCE(SUM(" + DatabaseHelper.COLUMN_SUMMARY_TRIGGER_COUNT
+                + "), 0) FROM " + DatabaseHelper.TABLE_DAILY_SUMMARY, null);
+        QueryMetrics.end("TriggerRecordDao.getTotalRecordCount", start, 1);
+        return count;
+    }
+
+    /**
+     * 查询一个相关度级别中排在游标之后的结果（按 纪元日+时间+ID 倒序）
+     * 描述ID在全文索引匹配结果中的记录，沿时间索引（按习惯搜索时为 习惯+纪元日 索引，否则为 纪元日 索引）
+     * 从游标处倒序读取，凑满 limit 条即停止，不需要临时B树对全部匹配记录排序。
+     * 描述ID列前的一元加号使其不作为索引条件，避免改走描述ID索引后再排序；
+     * 代价是很少出现的词要沿时间索引读过较多记录才能凑满一页。
+     * @param exclude 不为null时排除描述匹配该表达式的记录
+     * @param pending 本级别匹配的未入库记录，与数据库结果按同一顺序归并
+     */
+    private List<TriggerRecord> searchTier(SQLiteDatabase db, String match, String exclude, long habitId,
+                                           SearchCursor after, int limit, List<TriggerRecord> pending) {
+        String fts = DatabaseHelper.TABLE_DESCRIPTIONS_FTS;
+        String matchedIds = "(SELECT docid FROM " + fts + " WHERE " + fts + " MATCH ?)";
+        
+        StringBuilder selection = new StringBuilder();
+        List<String> args = new ArrayList<>();
+        if (habitId != -1) {
+            selection.append(DatabaseHelper.COLUMN_RECORD_HABIT_ID).append(" = ? AND ");
+            args.add(String.valueOf(habitId));
+        }
+        // 单独的 trigger_day 上界保证按索引范围查找，行值比较精确定位到游标之后
+        selection.append(DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY).append(" <= ? AND (")
+                .append(DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY).append(", ")
+                .append(DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS).append(", ")
+                .append(DatabaseHelper.COLUMN_RECORD_ID).append(") < (?, ?, ?) AND +")
+                .append(DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID).append(" IN ").append(matchedIds);
+        args.add(String.valueOf(after.day));
+        args.add(String.valueOf(after.day));
+        args.add(String.valueOf(after.millis));
+        args.add(String.valueOf(after.id));
+        args.add(match);
+        if (exclude != null) {
+            selection.append(" AND +").append(DatabaseHelper.COLUMN_RECORD_DESCRIPTION_ID)
+                    .append(" NOT IN ").append(matchedIds);
+            args.add(exclude);
+        }
+        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DAY + " DESC, "
+                + DatabaseHelper.COLUMN_RECORD_TRIGGER_MILLIS + " DESC, "
+                + DatabaseHelper.COLUMN_RECORD_ID + " DESC";
+        
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, recordMapper.getProjection(),
+                selection.toString(), args.toArray(new String[0]), null, null, orderBy, String.valueOf(limit));
+        List<TriggerRecord> records = recordMapper.mapAll(cursor, limit);
+        if (pending.isEmpty()) {
+            return records;
+        }
         
-        String selection = DatabaseHelper.COLUMN_RECORD_HABIT_ID + " = ? AND " 
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " >= ? AND "
-                + DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE + " <= ?";
-        String[] selectionArgs = {String.valueOf(habitId), startDate, endDate};
-        String orderBy = DatabaseHelper.COLUMN_RECORD_TRIGGER_DATETIME + " ASC";
-        
-        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, null, selection, selectionArgs, null, null, orderBy);
-        
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                records.add(cursorToRecord(cursor));
+        Set<Long> ids = new HashSet<>();
+        for (TriggerRecord record : records) {
+            ids.add(record.getId());
+        }
+        for (TriggerRecord record : pending) {
+            if (after.precedes(record) && ids.add(record.getId())) {
+                records.add(record);
             }
-            cursor.close();
         }
-        
-        return records;
+        Collections.sort(records, (a, b) -> {
+            int order = Long.compare(DateUtils.toLocalMillis(b.getTriggerDateTime()),
+                    DateUtils.toLocalMillis(a.getTriggerDateTime()));
+            return order != 0 ? order : Long.compare(b.getId(), a.getId());
+        });
+        return records.size() > limit ? new ArrayList<>(records.subList(0, limit)) : records;
     }
 
     /**
-     * 将Cursor转换为TriggerRecord对象
+     * 筛选描述匹配的未入库记录；按开头匹配时排除完整匹配的（它们属于完整匹配级别）
      */
-    private TriggerRecord cursorToRecord(Cursor cursor) {
-        TriggerRecord record = new TriggerRecord();
-        
-        record.setId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_ID)));
-        record.setHabitId(cursor.getLong(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_HABIT_ID)));
-        record.setTriggerDate(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_TRIGGER_DATE)));
-        record.setTriggerTime(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_TRIGGER_TIME)));
-        record.setTriggerDateTime(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_TRIGGER_DATETIME)));
-        record.setDescription(cursor.getString(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_DESCRIPTION)));
-        record.setSequenceNumber(cursor.getInt(cursor.getColumnIndexOrThrow(DatabaseHelper.COLUMN_RECORD_SEQUENCE_NUMBER)));
+    private static List<TriggerRecord> matchPending(List<TriggerRecord> pending, SearchQuery query, boolean prefix,
+                                                    long habitId) {
+        List<TriggerRecord> matched = new ArrayList<>();
+        for (TriggerRecord record : pending) {
+            if (habitId != -1 && record.getHabitId() != habitId) continue;
+            String description = record.getDescription();
+            if (query.matches(description, prefix) && !(prefix && query.matches(description, false))) {
+                matched.add(record);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 查询记录所属的习惯和纪元日，记录不存在时返回null
+     */
+    private long[] queryHabitAndDay(SQLiteDatabase db, long recordId) {
+        Cursor cursor = db.query(DatabaseHelper.TABLE_TRIGGER_RECORDS, HABIT_DAY_MAPPER.getProjection(),
+                DatabaseHelper.COLUMN_RECORD_ID + " = ?", new String[]{String.valueOf(recordId)},
+                null, null, null);
         
-        return record;
+        return HABIT_DAY_MAPPER.mapFirst(cursor);
+    }
+
+    /**
+     * 批量插入时待写入的记录及其时间
+     */
+    private static class PendingRecord {
+        final TriggerRecord record;
+        final long millis;
+
+        PendingRecord(TriggerRecord record, long millis) {
+            this.record = record;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * 习惯+纪元日 组合键
+     */
+    private static class HabitDay {
+        final long habitId;
+        final long day;
+
+        HabitDay(long habitId, long day) {
+            this.habitId = habitId;
+            this.day = day;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof HabitDay)) return false;
+            HabitDay other = (HabitDay) o;
+            return habitId == other.habitId && day == other.day;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(habitId) + Long.hashCode(day);
+        }
     }
-}
\ No newline at end of file
+}
@@ -15,10 +15,8 @@ import androidx.fragment.app.Fragment;
 
 import com.felix.countbadhabits.R;
 import com.felix.countbadhabits.activity.DayDetailActivity;
-import com.felix.countbadhabits.database.BadHabitDao;
-import com.felix.countbadhabits.database.DatabaseHelper;
-import com.felix.countbadhabits.database.TriggerRecordDao;
-import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.database.InvalidationTracker;
+import com.felix.countbadhabits.repository.HabitRepository;
 import com.felix.countbadhabits.utils.DateUtils;
 import com.felix.countbadhabits.utils.PreferenceUtils;
 import com.felix.countbadhabits.widget.BarChartView;
@@ -27,6 +25,7 @@ import com.felix.countbadhabits.widget.CustomCalendarView;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -34,6 +33,7 @@ import java.util.Map;
  */
 public class HistoryFragment extends Fragment {
     private static final String ARG_HABIT_ID = "habit_id";
+    private static final int DEFAULT_DAILY_LIMIT = 5;
 
     private Button btnPrevMonth, btnNextMonth;
     private TextView tvCurrentMonth;
@@ -45,8 +45,11 @@ public class HistoryFragment extends Fragment {
     private int currentYear;
     private int currentMonth;
     
-    private TriggerRecordDao recordDao;
-    private BadHabitDao habitDao;
+    private HabitRepository repository;
+    // 当月记录或习惯上限变化时刷新日历
+    private final InvalidationTracker.Observer calendarObserver = this::loadCalendarData;
+    // 图表覆盖的月/年范围内记录变化时刷新图表
+    private final InvalidationTracker.Observer chartObserver = this::loadChartData;
 
     public static HistoryFragment newInstance(long habitId) {
         HistoryFragment fragment = new HistoryFragment();
@@ -68,7 +71,7 @@ public class HistoryFragment extends Fragment {
         currentYear = calendar.get(Calendar.YEAR);
         currentMonth = calendar.get(Calendar.MONTH) + 1;
         
-        initDatabase();
+        repository = HabitRepository.getInstance(requireContext());
     }
 
     @Nullable
@@ -81,13 +84,16 @@ public class HistoryFragment extends Fragment {
         updateMonthDisplay();
         loadCalendarData();
         loadChartData();
+        registerObservers();
         return view;
     }
 
-    private void initDatabase() {
-        DatabaseHelper dbHelper = DatabaseHelper.getInstance(getContext());
-        recordDao = new TriggerRecordDao(dbHelper);
-        habitDao = new BadHabitDao(dbHelper);
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        InvalidationTracker tracker = repository.getInvalidationTracker();
+        tracker.removeObserver(calendarObserver);
+        tracker.removeObserver(chartObserver);
     }
 
     private void initViews(View view) {
@@ -108,6 +114,7 @@ public class HistoryFragment extends Fragment {
             updateMonthDisplay();
             loadCalendarData();
             loadChartData();
+            registerObservers();
         });
 
         btnNextMonth.setOnClickListener(v -> {
@@ -117,6 +124,7 @@ public class HistoryFragment extends Fragment {
             updateMonthDisplay();
             loadCalendarData();
             loadChartData();
+            registerObservers();
         });
 
         toggleCalendarMode.setOnCheckedChangeListener((buttonView, isChecked) -> {
@@ -129,6 +137,7 @@ public class HistoryFragment extends Fragment {
             PreferenceUtils.setChartViewMode(getContext(), isChecked);
             updateToggleButtonText();
             loadChartData();
+            registerObservers();
         });
 
         calendarView.setOnDateClickListener(date -> {
@@ -168,33 +177,78 @@ public class HistoryFragment extends Fragment {
     private void loadCalendarData() {
         if (habitId == -1) return;
 
-        Map<String, Integer> monthlyData = recordDao.getMonthlyStatistics(habitId, currentYear, currentMonth);
-        BadHabit habit = habitDao.getHabitById(habitId);
-        int dailyLimit = habit != null ? habit.getDailyLimit() : 5;
-        
-        calendarView.setDailyData(monthlyData, dailyLimit);
+        final long requestHabitId = habitId;
+        final int year = currentYear;
+        final int month = currentMonth;
+        repository.getDailyLimit(requestHabitId, limit -> {
+            if (!isCurrentRequest(requestHabitId, year, month)) return;
+            int dailyLimit = limit < 0 ? DEFAULT_DAILY_LIMIT : limit;
+
+            repository.getMonthlyStatistics(requestHabitId, year, month, monthlyData -> {
+                if (!isCurrentRequest(requestHabitId, year, month)) return;
+                calendarView.setDailyData(monthlyData, dailyLimit);
+            });
+        });
     }
 
     private void loadChartData() {
         if (habitId == -1) return;
 
-        List<BarChartView.ChartData> chartData = new ArrayList<>();
-        boolean isMonthChart = toggleChartMode.isChecked();
+        final long requestHabitId = habitId;
+        final int year = currentYear;
+        final int month = currentMonth;
+        final boolean isMonthChart = toggleChartMode.isChecked();
         
         if (isMonthChart) {
             // 月统计：显示当月每周的数据
-            loadWeeklyChartData(chartData);
+            repository.getMonthlyStatistics(requestHabitId, year, month, monthlyData -> {
+                if (!isCurrentRequest(requestHabitId, year, month) || !toggleChartMode.isChecked()) return;
+                List<BarChartView.ChartData> chartData = new ArrayList<>();
+                buildWeeklyChartData(chartData, monthlyData);
+                chartView.setData(chartData, true);
+            });
         } else {
             // 年统计：显示当年每月的数据
-            loadMonthlyChartData(chartData);
+            repository.getYearlyStatistics(requestHabitId, year, yearlyData -> {
+                if (!isCurrentRequest(requestHabitId, year, month) || toggleChartMode.isChecked()) return;
+                List<BarChartView.ChartData> chartData = new ArrayList<>();
+                buildMonthlyChartData(chartData, yearlyData);
+                chartView.setData(chartData, false);
+            });
         }
-        
-        chartView.setData(chartData, isMonthChart);
     }
 
-    private void loadWeeklyChartData(List<BarChartView.ChartData> chartData) {
-        Map<String, Integer> monthlyData = recordDao.getMonthlyStatistics(habitId, currentYear, currentMonth);
-        
+    /**
+     * 按当前习惯、月份和图表模式重新注册观察范围
+     */
+    private void registerObservers() {
+        InvalidationTracker tracker = repository.getInvalidationTracker();
+        tracker.removeObserver(calendarObserver);
+        tracker.removeObserver(chartObserver);
+        if (habitId == -1) return;
+
+        long monthStart = DateUtils.toEpochDay(currentYear, currentMonth, 1);
+        long monthEnd = monthStart + DateUtils.getDaysInMonth(currentYear, currentMonth) - 1;
+        tracker.addRecordObserver(calendarObserver, habitId, monthStart, monthEnd);
+        tracker.addHabitObserver(calendarObserver);
+
+        if (toggleChartMode.isChecked()) {
+            tracker.addRecordObserver(chartObserver, habitId, monthStart, monthEnd);
+        } else {
+            tracker.addRecordObserver(chartObserver, habitId,
+                    DateUtils.toEpochDay(currentYear, 1, 1), DateUtils.toEpochDay(currentYear, 12, 31));
+        }
+    }
+
+    /**
+     * 异步结果返回时，Fragment可能已分离，或用户已切换习惯/月份
+     */
+    private boolean isCurrentRequest(long requestHabitId, int year, int month) {
+        return isAdded() && calendarView != null
+                && habitId == requestHabitId && currentYear == year && currentMonth == month;
+    }
+
+    private void buildWeeklyChartData(List<BarChartView.ChartData> chartData, Map<String, Integer> monthlyData) {
         // 计算每周的统计数据
         int[] weeklyStats = new int[6]; // 最多6周
         
@@ -218,15 +272,13 @@ public class HistoryFragment extends Fragment {
         }
     }
 
-    private void loadMonthlyChartData(List<BarChartView.ChartData> chartData) {
-        Map<String, Integer> yearlyData = recordDao.getYearlyStatistics(habitId, currentYear);
-        
+    private void buildMonthlyChartData(List<BarChartView.ChartData> chartData, Map<String, Integer> yearlyData) {
         // 按月份顺序添加数据
         String[] monthNames = {"1月", "2月", "3月", "4月", "5月", "6月", 
                               "7月", "8月", "9月", "10月", "11月", "12月"};
         
         for (int i = 1; i <= 12; i++) {
-            String monthKey = String.format("%04d-%02d", currentYear, i);
+            String monthKey = String.format(Locale.US, "%04d-%02d", currentYear, i);
             Integer count = yearlyData.get(monthKey);
             if (count != null && count > 0) {
                 chartData.add(new BarChartView.ChartData(monthNames[i - 1], count));
@@ -242,16 +294,7 @@ public class HistoryFragment extends Fragment {
         if (calendarView != null && chartView != null) {
             loadCalendarData();
             loadChartData();
-        }
-    }
-
-    @Override
-    public void onResume() {
-        super.onResume();
-        // 从日详情页面返回时刷新数据
-        if (calendarView != null && chartView != null) {
-            loadCalendarData();
-            loadChartData();
+            registerObservers();
         }
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.felix.countbadhabits.fragment;
 
 import android.app.AlertDialog;
+import android.net.Uri;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -8,8 +9,13 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ProgressBar;
+import android.widget.Switch;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
@@ -17,12 +23,15 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.felix.countbadhabits.R;
-import com.felix.countbadhabits.activity.MainActivity;
 import com.felix.countbadhabits.adapter.HabitListAdapter;
-import com.felix.countbadhabits.database.BadHabitDao;
-import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.backup.DataExporter;
+import com.felix.countbadhabits.database.InvalidationTracker;
 import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.repository.HabitRepository;
+import com.felix.countbadhabits.utils.DateUtils;
+import com.felix.countbadhabits.utils.PreferenceUtils;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,17 +39,40 @@ import java.util.List;
  * 设置Fragment
  */
 public class SettingsFragment extends Fragment implements HabitListAdapter.OnHabitActionListener {
-    private Button btnAddHabit;
+    // 可选的旧记录保留期限（月），0表示永久保留
+    private static final int[] RETENTION_CHOICES = {0, 6, 12, 24};
+
+    private Button btnAddHabit, btnExportData, btnImportData, btnRetention;
+    private Switch switchEventLog, switchKeepDescriptions;
     private RecyclerView rvHabits;
     
-    private BadHabitDao habitDao;
+    private HabitRepository repository;
+    // 习惯表变化时刷新列表，增删改后不再手动同步列表
+    private final InvalidationTracker.Observer habitsObserver = this::loadHabitList;
+    // 通过SAF选择导出文件的位置
+    private ActivityResultLauncher<String> exportCsvLauncher;
+    private ActivityResultLauncher<String> exportJsonLauncher;
+    private ActivityResultLauncher<String> exportBinaryLauncher;
+    // 通过SAF选择要导入的文件
+    private ActivityResultLauncher<String[]> importLauncher;
     private HabitListAdapter adapter;
     private List<BadHabit> habitList;
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        initDatabase();
+        repository = HabitRepository.getInstance(requireContext());
+        exportCsvLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(DataExporter.Format.CSV.mimeType),
+                uri -> exportData(uri, DataExporter.Format.CSV));
+        exportJsonLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(DataExporter.Format.JSON.mimeType),
+                uri -> exportData(uri, DataExporter.Format.JSON));
+        exportBinaryLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(DataExporter.Format.BINARY.mimeType),
+                uri -> exportData(uri, DataExporter.Format.BINARY));
+        importLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(), this::importData);
     }
 
     @Nullable
@@ -51,16 +83,25 @@ public class SettingsFragment extends Fragment implements HabitListAdapter.OnHab
         setupRecyclerView();
         setupClickListeners();
         loadHabitList();
+        repository.getInvalidationTracker().addHabitObserver(habitsObserver);
         return view;
     }
 
-    private void initDatabase() {
-        DatabaseHelper dbHelper = DatabaseHelper.getInstance(getContext());
-        habitDao = new BadHabitDao(dbHelper);
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        repository.getInvalidationTracker().removeObserver(habitsObserver);
     }
 
     private void initViews(View view) {
         btnAddHabit = view.findViewById(R.id.btn_add_habit);
+        btnExportData = view.findViewById(R.id.btn_export_data);
+        btnImportData = view.findViewById(R.id.btn_import_data);
+        switchEventLog = view.findViewById(R.id.switch_event_log);
+        switchEventLog.setChecked(PreferenceUtils.isEventLogEnabled(requireContext()));
+        btnRetention = view.findViewById(R.id.btn_retention);
+        switchKeepDescriptions = view.findViewById(R.id.switch_keep_descriptions);
+        switchKeepDescriptions.setChecked(PreferenceUtils.isRetentionKeepDescriptions(requireContext()));
         rvHabits = view.findViewById(R.id.rv_habits);
     }
 
@@ -73,13 +114,71 @@ public class SettingsFragment extends Fragment implements HabitListAdapter.OnHab
 
     private void setupClickListeners() {
         btnAddHabit.setOnClickListener(v -> showAddHabitDialog());
+        btnExportData.setOnClickListener(v -> showExportDialog());
+        btnImportData.setOnClickListener(v -> importLauncher.launch(new String[]{
+                DataExporter.Format.CSV.mimeType, DataExporter.Format.JSON.mimeType,
+                DataExporter.Format.BINARY.mimeType, "text/comma-separated-values", "text/plain"}));
+        switchEventLog.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            PreferenceUtils.setEventLogEnabled(requireContext(), isChecked);
+            Toast.makeText(getContext(), R.string.restart_to_apply, Toast.LENGTH_SHORT).show();
+        });
+        btnRetention.setOnClickListener(v -> showRetentionDialog());
+        switchKeepDescriptions.setOnCheckedChangeListener((buttonView, isChecked) ->
+                PreferenceUtils.setRetentionKeepDescriptions(requireContext(), isChecked));
+    }
+
+    private void showRetentionDialog() {
+        String[] labels = new String[RETENTION_CHOICES.length];
+        int checked = 0;
+        int current = PreferenceUtils.getRetentionMonths(requireContext());
+        for (int i = 0; i < RETENTION_CHOICES.length; i++) {
+            labels[i] = RETENTION_CHOICES[i] == 0 ? getString(R.string.retention_forever)
+                    : getString(R.string.retention_months, RETENTION_CHOICES[i]);
+            if (RETENTION_CHOICES[i] == current) {
+                checked = i;
+            }
+        }
+
+        new AlertDialog.Builder(getContext())
+                .setTitle(R.string.retention_period)
+                .setSingleChoiceItems(labels, checked, (dialog, which) -> {
+                    dialog.dismiss();
+                    int months = RETENTION_CHOICES[which];
+                    if (months == current) return;
+
+                    PreferenceUtils.setRetentionMonths(requireContext(), months);
+                    if (months > 0) {
+                        repository.applyRetention();
+                        Toast.makeText(getContext(), R.string.retention_applied, Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
     }
 
     private void loadHabitList() {
-        habitList.clear();
-        List<BadHabit> habits = habitDao.getAllActiveHabits();
-        habitList.addAll(habits);
-        adapter.notifyDataSetChanged();
+        repository.getAllActiveHabits(habits -> {
+            if (!isAdded() || adapter == null) return;
+            habitList.clear();
+            habitList.addAll(habits);
+            adapter.notifyDataSetChanged();
+            loadMonthTotals();
+        });
+    }
+
+    /**
+     * 一次查询取所有习惯本月每天的次数，不再为每个习惯单独查询
+     */
+    private void loadMonthTotals() {
+        long[] habitIds = new long[habitList.size()];
+        for (int i = 0; i < habitIds.length; i++) {
+            habitIds[i] = habitList.get(i).getId();
+        }
+        LocalDate today = LocalDate.now();
+        repository.getMonthlyStatistics(habitIds, today.getYear(), today.getMonthValue(), matrix -> {
+            if (!isAdded() || adapter == null) return;
+            adapter.setStatistics(matrix);
+        });
     }
 
     private void showAddHabitDialog() {
@@ -156,40 +255,111 @@ public class SettingsFragment extends Fragment implements HabitListAdapter.OnHab
 
     private void addNewHabit(String name, int dailyLimit) {
         BadHabit newHabit = new BadHabit(name, dailyLimit);
-        long habitId = habitDao.insertHabit(newHabit);
-
-        if (habitId > 0) {
-            newHabit.setId(habitId);
-            habitList.add(newHabit);
-            adapter.notifyItemInserted(habitList.size() - 1);
-            
-            // 刷新MainActivity的习惯列表
-            refreshMainActivityHabitList();
-            
-            Toast.makeText(getContext(), R.string.habit_added, Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-        }
+        repository.insertHabit(newHabit, habitId -> {
+            if (!isAdded()) return;
+            if (habitId > 0) {
+                Toast.makeText(getContext(), R.string.habit_added, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void updateHabit(BadHabit habit, String name, int dailyLimit) {
         habit.setName(name);
         habit.setDailyLimit(dailyLimit);
 
-        int updatedRows = habitDao.updateHabit(habit);
-        if (updatedRows > 0) {
-            int position = habitList.indexOf(habit);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
+        repository.updateHabit(habit, updatedRows -> {
+            if (!isAdded()) return;
+            if (updatedRows > 0) {
+                Toast.makeText(getContext(), R.string.habit_updated, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
             }
-            
-            // 刷新MainActivity的习惯列表
-            refreshMainActivityHabitList();
-            
-            Toast.makeText(getContext(), R.string.habit_updated, Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-        }
+        });
+    }
+
+    private void showExportDialog() {
+        String[] formats = {"CSV", "JSON", getString(R.string.binary_backup)};
+        new AlertDialog.Builder(getContext())
+                .setTitle(R.string.export_format)
+                .setItems(formats, (dialog, which) -> {
+                    String fileName = "countbadhabits-" + DateUtils.getTodayString();
+                    if (which == 0) {
+                        exportCsvLauncher.launch(fileName + DataExporter.Format.CSV.extension);
+                    } else if (which == 1) {
+                        exportJsonLauncher.launch(fileName + DataExporter.Format.JSON.extension);
+                    } else {
+                        exportBinaryLauncher.launch(fileName + DataExporter.Format.BINARY.extension);
+                    }
+                })
+                .show();
+    }
+
+    private void exportData(Uri uri, DataExporter.Format format) {
+        // 用户取消了文件选择
+        if (uri == null || !isAdded()) return;
+
+        View progressView = LayoutInflater.from(getContext()).inflate(R.layout.dialog_progress, null);
+        ProgressBar progressBar = progressView.findViewById(R.id.progress_bar);
+        TextView tvProgress = progressView.findViewById(R.id.tv_progress);
+
+        AlertDialog progressDialog = new AlertDialog.Builder(getContext())
+                .setTitle(R.string.export_in_progress)
+                .setView(progressView)
+                .setCancelable(false)
+                .show();
+
+        repository.exportData(uri, format, (exported, total) -> {
+            if (!isAdded()) return;
+            progressBar.setIndeterminate(false);
+            progressBar.setMax((int) total);
+            progressBar.setProgress((int) exported);
+            tvProgress.setText(getString(R.string.progress_count, exported, total));
+        }, exported -> {
+            if (progressDialog.isShowing()) {
+                progressDialog.dismiss();
+            }
+            if (!isAdded()) return;
+
+            if (exported >= 0) {
+                Toast.makeText(getContext(), getString(R.string.export_done, exported), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.export_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private void importData(Uri uri) {
+        // 用户取消了文件选择
+        if (uri == null || !isAdded()) return;
+
+        View progressView = LayoutInflater.from(getContext()).inflate(R.layout.dialog_progress, null);
+        TextView tvProgress = progressView.findViewById(R.id.tv_progress);
+
+        // 流式导入事先不知道总条数，进度条保持不确定状态，只显示已处理条数
+        AlertDialog progressDialog = new AlertDialog.Builder(getContext())
+                .setTitle(R.string.import_in_progress)
+                .setView(progressView)
+                .setCancelable(false)
+                .show();
+
+        repository.importData(uri, processed -> {
+            if (!isAdded()) return;
+            tvProgress.setText(getString(R.string.import_processed, processed));
+        }, result -> {
+            if (progressDialog.isShowing()) {
+                progressDialog.dismiss();
+            }
+            if (!isAdded()) return;
+
+            if (result != null) {
+                Toast.makeText(getContext(), getString(R.string.import_done, result.getImported(),
+                        result.getDuplicates(), result.getSkipped()), Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(getContext(), R.string.import_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -202,61 +372,61 @@ public class SettingsFragment extends Fragment implements HabitListAdapter.OnHab
         new AlertDialog.Builder(getContext())
                 .setTitle(R.string.delete_habit)
                 .setMessage(R.string.delete_habit_confirm)
-                .setPositiveButton(R.string.confirm, (dialog, which) -> {
-                    // 使用永久删除，这样会级联删除所有相关记录
-                    int deletedRows = habitDao.permanentDeleteHabit(habit.getId());
-                    if (deletedRows > 0) {
-                        int position = habitList.indexOf(habit);
-                        if (position >= 0) {
-                            habitList.remove(position);
-                            adapter.notifyItemRemoved(position);
-                        }
-                        
-                        // 刷新MainActivity的习惯列表
-                        refreshMainActivityHabitList();
-                        
-                        Toast.makeText(getContext(), R.string.habit_deleted, Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-                    }
-                })
+                .setPositiveButton(R.string.confirm, (dialog, which) -> permanentDeleteHabit(habit))
                 .setNegativeButton(R.string.cancel, null)
                 .show();
     }
 
-    @Override
-    public void onToggleHabitStatus(BadHabit habit) {
-        habit.setActive(!habit.isActive());
-        int updatedRows = habitDao.updateHabit(habit);
-        
-        if (updatedRows > 0) {
-            int position = habitList.indexOf(habit);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
+    private void permanentDeleteHabit(BadHabit habit) {
+        if (!isAdded()) return;
+
+        View progressView = LayoutInflater.from(getContext()).inflate(R.layout.dialog_progress, null);
+        ProgressBar progressBar = progressView.findViewById(R.id.progress_bar);
+        TextView tvProgress = progressView.findViewById(R.id.tv_progress);
+
+        // 习惯会立即从列表中消失，删除在后台继续；关闭对话框不影响删除
+        AlertDialog progressDialog = new AlertDialog.Builder(getContext())
+                .setTitle(R.string.delete_in_progress)
+                .setView(progressView)
+                .show();
+
+        // 使用永久删除，分批删除所有相关记录
+        repository.permanentDeleteHabit(habit.getId(), (deleted, total) -> {
+            if (!isAdded()) return;
+            progressBar.setIndeterminate(false);
+            progressBar.setMax((int) total);
+            progressBar.setProgress((int) deleted);
+            tvProgress.setText(getString(R.string.progress_count, deleted, total));
+        }, deletedRows -> {
+            if (progressDialog.isShowing()) {
+                progressDialog.dismiss();
             }
-            
-            // 刷新MainActivity的习惯列表
-            refreshMainActivityHabitList();
-            
-            String message = habit.isActive() ? getString(R.string.habit_enabled) : getString(R.string.habit_disabled);
-            Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
-        } else {
-            // 回滚状态
-            habit.setActive(!habit.isActive());
-            Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-        }
-    }
+            if (!isAdded()) return;
 
-    private void refreshMainActivityHabitList() {
-        if (getActivity() instanceof MainActivity) {
-            ((MainActivity) getActivity()).refreshHabitList();
-        }
+            if (deletedRows > 0) {
+                Toast.makeText(getContext(), R.string.habit_deleted, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
-    public void onResume() {
-        super.onResume();
-        // 当从其他页面返回时刷新列表
-        loadHabitList();
+    public void onToggleHabitStatus(BadHabit habit) {
+        habit.setActive(!habit.isActive());
+        repository.updateHabit(habit, updatedRows -> {
+            if (updatedRows <= 0) {
+                // 回滚状态
+                habit.setActive(!habit.isActive());
+            }
+            if (!isAdded()) return;
+
+            if (updatedRows > 0) {
+                String message = habit.isActive() ? getString(R.string.habit_enabled) : getString(R.string.habit_disabled);
+                Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -21,11 +21,9 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.felix.countbadhabits.R;
 import com.felix.countbadhabits.adapter.TriggerRecordAdapter;
-import com.felix.countbadhabits.database.BadHabitDao;
-import com.felix.countbadhabits.database.DatabaseHelper;
-import com.felix.countbadhabits.database.TriggerRecordDao;
-import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.database.InvalidationTracker;
 import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.repository.HabitRepository;
 import com.felix.countbadhabits.utils.DateUtils;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
@@ -45,8 +43,10 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
     private FloatingActionButton fabAdd;
 
     private long habitId;
-    private TriggerRecordDao recordDao;
-    private BadHabitDao habitDao;
+    private int dailyLimit = -1;
+    private HabitRepository repository;
+    // 今日记录或习惯上限变化时刷新
+    private final InvalidationTracker.Observer dataObserver = this::loadTodayRecords;
     private TriggerRecordAdapter adapter;
     private List<TriggerRecord> recordList;
 
@@ -64,7 +64,7 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
         if (getArguments() != null) {
             habitId = getArguments().getLong(ARG_HABIT_ID, -1);
         }
-        initDatabase();
+        repository = HabitRepository.getInstance(requireContext());
     }
 
     @Nullable
@@ -75,13 +75,24 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
         setupRecyclerView();
         setupClickListeners();
         loadTodayRecords();
+        registerObservers();
         return view;
     }
 
-    private void initDatabase() {
-        DatabaseHelper dbHelper = DatabaseHelper.getInstance(getContext());
-        recordDao = new TriggerRecordDao(dbHelper);
-        habitDao = new BadHabitDao(dbHelper);
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        repository.getInvalidationTracker().removeObserver(dataObserver);
+    }
+
+    private void registerObservers() {
+        InvalidationTracker tracker = repository.getInvalidationTracker();
+        tracker.removeObserver(dataObserver);
+        if (habitId == -1) return;
+
+        long today = DateUtils.getTodayEpochDay();
+        tracker.addRecordObserver(dataObserver, habitId, today, today);
+        tracker.addHabitObserver(dataObserver);
     }
 
     private void initViews(View view) {
@@ -108,23 +119,35 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
     private void loadTodayRecords() {
         if (habitId == -1) return;
 
-        recordList.clear();
-        List<TriggerRecord> todayRecords = recordDao.getTodayRecords(habitId);
-        recordList.addAll(todayRecords);
-        adapter.notifyDataSetChanged();
+        final long requestHabitId = habitId;
+        repository.getDailyLimit(requestHabitId, limit -> {
+            if (!isCurrentHabit(requestHabitId)) return;
+            dailyLimit = limit;
+            updateStatusDisplay();
+        });
+        repository.getTodayRecords(requestHabitId, todayRecords -> {
+            if (!isCurrentHabit(requestHabitId)) return;
+            recordList.clear();
+            recordList.addAll(todayRecords);
+            adapter.notifyDataSetChanged();
+
+            updateStatusDisplay();
+            updateEmptyView();
+        });
+    }
 
-        updateStatusDisplay();
-        updateEmptyView();
+    /**
+     * 异步结果返回时，Fragment可能已分离或已切换到其他习惯
+     */
+    private boolean isCurrentHabit(long requestHabitId) {
+        return isAdded() && adapter != null && habitId == requestHabitId;
     }
 
     private void updateStatusDisplay() {
         if (habitId == -1) return;
-
-        BadHabit habit = habitDao.getHabitById(habitId);
-        if (habit == null) return;
+        if (dailyLimit < 0) return;
 
         int currentCount = recordList.size();
-        int dailyLimit = habit.getDailyLimit();
 
         tvCurrentCount.setText(getString(R.string.current_count, currentCount));
         tvDailyLimit.setText(getString(R.string.daily_limit, dailyLimit));
@@ -193,19 +216,16 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
     }
 
     private void saveNewRecord(String time, String description) {
+        // 列表由 dataObserver 在写入提交后刷新
         TriggerRecord record = new TriggerRecord(habitId, time, description);
-        long recordId = recordDao.insertRecord(record);
-
-        if (recordId > 0) {
-            record.setId(recordId);
-            recordList.add(record);
-            adapter.notifyItemInserted(recordList.size() - 1);
-            updateStatusDisplay();
-            updateEmptyView();
-            Toast.makeText(getContext(), R.string.record_saved, Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-        }
+        repository.insertRecord(record, recordId -> {
+            if (!isAdded()) return;
+            if (recordId > 0) {
+                Toast.makeText(getContext(), R.string.record_saved, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     @Override
@@ -218,21 +238,15 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
         new AlertDialog.Builder(getContext())
                 .setTitle(R.string.delete)
                 .setMessage(R.string.confirm_delete_record)
-                .setPositiveButton(R.string.confirm, (dialog, which) -> {
-                    int deletedRows = recordDao.deleteRecord(record.getId());
-                    if (deletedRows > 0) {
-                        int position = recordList.indexOf(record);
-                        if (position >= 0) {
-                            recordList.remove(position);
-                            adapter.notifyItemRemoved(position);
-                            updateStatusDisplay();
-                            updateEmptyView();
-                        }
-                        Toast.makeText(getContext(), R.string.record_deleted, Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-                    }
-                })
+                .setPositiveButton(R.string.confirm, (dialog, which) ->
+                        repository.deleteRecord(record.getId(), deletedRows -> {
+                            if (!isAdded()) return;
+                            if (deletedRows > 0) {
+                                Toast.makeText(getContext(), R.string.record_deleted, Toast.LENGTH_SHORT).show();
+                            } else {
+                                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
+                            }
+                        }))
                 .setNegativeButton(R.string.cancel, null)
                 .show();
     }
@@ -279,16 +293,14 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
         record.setTriggerTime(time);
         record.setDescription(description);
 
-        int updatedRows = recordDao.updateRecord(record);
-        if (updatedRows > 0) {
-            int position = recordList.indexOf(record);
-            if (position >= 0) {
-                adapter.notifyItemChanged(position);
+        repository.updateRecord(record, updatedRows -> {
+            if (!isAdded()) return;
+            if (updatedRows > 0) {
+                Toast.makeText(getContext(), R.string.record_updated, Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
             }
-            Toast.makeText(getContext(), R.string.record_updated, Toast.LENGTH_SHORT).show();
-        } else {
-            Toast.makeText(getContext(), R.string.error_database, Toast.LENGTH_SHORT).show();
-        }
+        });
     }
 
     /**
@@ -296,6 +308,10 @@ public class TodayFragment extends Fragment implements TriggerRecordAdapter.OnRe
      */
     public void onHabitChanged(long newHabitId) {
         this.habitId = newHabitId;
-        loadTodayRecords();
+        this.dailyLimit = -1;
+        if (adapter != null) {
+            loadTodayRecords();
+            registerObservers();
+        }
     }
 }
\ No newline at end of file
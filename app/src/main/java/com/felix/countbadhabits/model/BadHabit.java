@@ -26,6 +26,28 @@ public class BadHabit {
         this.dailyLimit = dailyLimit;
     }
 
+    /**
+     * 从数据库读取时使用：直接填充各字段，不生成默认的创建日期
+     */
+    public BadHabit(long id, String name, int dailyLimit, String createdDate, boolean isActive) {
+        this.id = id;
+        this.name = name;
+        this.dailyLimit = dailyLimit;
+        this.createdDate = createdDate;
+        this.isActive = isActive;
+    }
+
+    /**
+     * 复制构造（缓存中保存与返回的都是副本，调用方修改不会污染缓存）
+     */
+    public BadHabit(BadHabit other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.dailyLimit = other.dailyLimit;
+        this.createdDate = other.createdDate;
+        this.isActive = other.isActive;
+    }
+
     // Getters and Setters
     public long getId() {
         return id;
@@ -0,0 +1,88 @@
+package com.felix.countbadhabits.model;
+
+import java.util.Arrays;
+
+/**
+ * 多个习惯的统计矩阵（习惯 × 时间段 -> 触发次数）
+ * 行对应习惯（顺序与查询时传入的习惯ID一致），列对应时间段：月统计为当月第几天（从0起），
+ * 年统计为第几个月（从0起）。次数按行连续存放在一个int数组中，不为每个格子创建对象。
+ */
+public final class StatisticsMatrix {
+    private final long[] habitIds;
+    private final int bucketCount;
+    private final int[] counts;
+    // 按习惯ID排序的副本及其对应的行号，用于二分查找
+    private final long[] sortedHabitIds;
+    private final int[] sortedRows;
+
+    public StatisticsMatrix(long[] habitIds, int bucketCount) {
+        this.habitIds = habitIds.clone();
+        this.bucketCount = bucketCount;
+        this.counts = new int[habitIds.length * bucketCount];
+
+        Integer[] order = new Integer[habitIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(habitIds[a], habitIds[b]));
+        sortedHabitIds = new long[order.length];
+        sortedRows = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedHabitIds[i] = habitIds[order[i]];
+            sortedRows[i] = order[i];
+        }
+    }
+
+    public int getHabitCount() {
+        return habitIds.length;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public long getHabitId(int row) {
+        return habitIds[row];
+    }
+
+    /**
+     * 习惯所在的行，不在矩阵中时返回-1
+     */
+    public int rowOf(long habitId) {
+        int index = Arrays.binarySearch(sortedHabitIds, habitId);
+        return index >= 0 ? sortedRows[index] : -1;
+    }
+
+    public int getCount(int row, int bucket) {
+        return counts[row * bucketCount + bucket];
+    }
+
+    /**
+     * 累加一个格子的次数（填充矩阵时使用）
+     */
+    public void add(int row, int bucket, int count) {
+        counts[row * bucketCount + bucket] += count;
+    }
+
+    /**
+     * 某个习惯在所有时间段的总次数
+     */
+    public int getRowTotal(int row) {
+        int total = 0;
+        for (int i = row * bucketCount, end = i + bucketCount; i < end; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * 所有习惯在某个时间段的总次数
+     */
+    public int getBucketTotal(int bucket) {
+        int total = 0;
+        for (int i = bucket; i < counts.length; i += bucketCount) {
+            total += counts[i];
+        }
+        return total;
+    }
+}
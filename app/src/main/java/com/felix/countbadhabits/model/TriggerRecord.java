@@ -37,6 +37,20 @@ public class TriggerRecord {
         updateTriggerDateTime();
     }
 
+    /**
+     * 从数据库读取时使用：直接填充各字段，不生成默认的当前时间
+     */
+    public TriggerRecord(long id, long habitId, String triggerDate, String triggerTime,
+                         String triggerDateTime, String description, int sequenceNumber) {
+        this.id = id;
+        this.habitId = habitId;
+        this.triggerDate = triggerDate;
+        this.triggerTime = triggerTime;
+        this.triggerDateTime = triggerDateTime;
+        this.description = description;
+        this.sequenceNumber = sequenceNumber;
+    }
+
     private void updateTriggerDateTime() {
         this.triggerDateTime = this.triggerDate + " " + this.triggerTime + ":00";
     }
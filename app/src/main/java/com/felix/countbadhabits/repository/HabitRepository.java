@@ -0,0 +1,555 @@
+package com.felix.countbadhabits.repository;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.felix.countbadhabits.backup.DataExporter;
+import com.felix.countbadhabits.backup.DataImporter;
+import com.felix.countbadhabits.database.ArchiveDao;
+import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.DescriptionDao;
+import com.felix.countbadhabits.database.InvalidationTracker;
+import com.felix.countbadhabits.database.QueryMetrics;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.storage.EventLogHabitStore;
+import com.felix.countbadhabits.storage.HabitStore;
+import com.felix.countbadhabits.storage.SQLiteHabitStore;
+import com.felix.countbadhabits.utils.DateUtils;
+import com.felix.countbadhabits.utils.PreferenceUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据仓库
+ * 包装存储引擎（HabitStore，默认为SQLite实现），所有数据库操作都在后台线程执行，结果通过回调送回主线程。
+ * 写操作在单线程上按提交顺序串行执行；读操作在固定大小的线程池上并发执行（WAL模式下互不阻塞）。
+ * 后台任务抛出的异常（SQLiteException、磁盘已满、日志读写失败等）只记录日志并通过 Callback.onError 送回主线程，
+ * 不会让后台线程崩溃而终止进程。
+ */
+public class HabitRepository {
+    private static final String TAG = "HabitRepository";
+    private static final int READ_THREAD_COUNT = 2;
+    private static final String EVENT_LOG_DIRECTORY = "event-log";
+    // 删除习惯时每批删除的记录数
+    private static final int DELETE_BATCH_SIZE = 500;
+    // 归档时每批处理的天数（每个习惯）
+    private static final int ARCHIVE_BATCH_DAYS = 30;
+    // 一轮归档的记录达到该条数后执行VACUUM回收空间
+    private static final int VACUUM_THRESHOLD = 10000;
+
+    private static HabitRepository instance;
+
+    private final HabitStore store;
+    // 启用追加日志时的存储引擎，导入导出前需先把日志写入数据库；未启用时为null
+    private final EventLogHabitStore eventLogStore;
+    private final InvalidationTracker invalidationTracker;
+    private final ArchiveDao archiveDao;
+    private final TriggerRecordDao recordDao;
+    private final DescriptionDao descriptionDao;
+    private final DataExporter exporter;
+    private final DataImporter importer;
+    private final Context context;
+    private final ContentResolver contentResolver;
+    private final ExecutorService readExecutor;
+    private final ExecutorService writeExecutor;
+    private final Handler mainHandler;
+
+    /**
+     * 主线程结果回调
+     */
+    public interface Callback<T> {
+        void onResult(T result);
+
+        /**
+         * 操作失败，异常已记录日志；默认不做处理
+         */
+        default void onError(Exception error) {
+        }
+    }
+
+    /**
+     * 删除习惯的进度回调（主线程）
+     */
+    public interface DeleteProgressListener {
+        void onProgress(long deleted, long total);
+    }
+
+    private HabitRepository(Context context) {
+        QueryMetrics.setEnabled(PreferenceUtils.isQueryMetricsEnabled(context));
+        DatabaseHelper dbHelper = DatabaseHelper.getInstance(context);
+        File eventLogDirectory = new File(context.getFilesDir(), EVENT_LOG_DIRECTORY);
+        if (PreferenceUtils.isEventLogEnabled(context)) {
+            eventLogStore = new EventLogHabitStore(dbHelper, eventLogDirectory);
+            store = eventLogStore;
+        } else {
+            eventLogStore = null;
+            store = new SQLiteHabitStore(dbHelper);
+        }
+        invalidationTracker = dbHelper.getInvalidationTracker();
+        archiveDao = new ArchiveDao(dbHelper);
+        recordDao = new TriggerRecordDao(dbHelper);
+        descriptionDao = new DescriptionDao(dbHelper);
+        exporter = new DataExporter(dbHelper);
+        importer = new DataImporter(dbHelper);
+        this.context = context;
+        contentResolver = context.getContentResolver();
+        readExecutor = Executors.newFixedThreadPool(READ_THREAD_COUNT, new BackgroundThreadFactory("db-read"));
+        writeExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("db-write"));
+        mainHandler = new Handler(Looper.getMainLooper());
+        if (eventLogStore == null) {
+            // 关闭追加日志后，把上次遗留的事件写入数据库
+            executeWrite(() -> EventLogHabitStore.drain(dbHelper, eventLogDirectory), null);
+        }
+        // 继续上次未删完的习惯
+        executeWrite(this::resumePendingDeletes, null);
+        applyRetention();
+    }
+
+    public static synchronized HabitRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new HabitRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * 获取失效跟踪器，界面据此在相关数据变化时刷新，而不是在每次写入后整体重新加载
+     */
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * 输出缓存和查询耗时统计，不访问数据库，可在任意线程调用
+     */
+    public void dump(String prefix, PrintWriter writer) {
+        DatabaseHelper.getInstance(context).dump(prefix, writer);
+    }
+
+    // ---------- 坏习惯 ----------
+
+    /**
+     * 获取所有活跃的坏习惯
+     */
+    public void getAllActiveHabits(Callback<List<BadHabit>> callback) {
+        read(store::getAllActiveHabits, callback);
+    }
+
+    /**
+     * 获取坏习惯的每日上限，习惯不存在时返回-1
+     */
+    public void getDailyLimit(long habitId, Callback<Integer> callback) {
+        read(() -> store.getDailyLimit(habitId), callback);
+    }
+
+    /**
+     * 插入新的坏习惯，回调新习惯ID（失败时为-1）
+     */
+    public void insertHabit(BadHabit habit, Callback<Long> callback) {
+        write(() -> store.insertHabit(habit), -1L, callback);
+    }
+
+    /**
+     * 更新坏习惯，回调受影响的行数（失败时为0）
+     */
+    public void updateHabit(BadHabit habit, Callback<Integer> callback) {
+        write(() -> store.updateHabit(habit), 0, callback);
+    }
+
+    /**
+     * 彻底删除坏习惯及其所有记录，删完后回调删除的习惯数（失败时为0）
+     * 习惯先被标记为待删除，立即从列表中消失；记录在写线程上分批删除，每批之后重新排队，
+     * 期间提交的其他写操作不必等整个删除完成。进程中途退出时，下次启动后继续删除。
+     */
+    public void permanentDeleteHabit(long habitId, DeleteProgressListener progressListener,
+                                     Callback<Integer> callback) {
+        Callback<Integer> resultCallback = orElse(callback, 0);
+        executeWrite(() -> {
+            long total = store.markHabitPendingDelete(habitId);
+            if (total < 0) {
+                deliver(0, resultCallback);
+                return;
+            }
+            executeWrite(new DeleteHabitTask(habitId, total, progressListener, resultCallback), resultCallback);
+        }, resultCallback);
+    }
+
+    private void resumePendingDeletes() {
+        for (long habitId : store.getPendingDeleteHabitIds()) {
+            Log.i(TAG, "继续删除习惯 " + habitId);
+            executeWrite(new DeleteHabitTask(habitId, 0, null, null), null);
+        }
+    }
+
+    // ---------- 触发记录 ----------
+
+    /**
+     * 获取当日的触发记录
+     */
+    public void getTodayRecords(long habitId, Callback<List<TriggerRecord>> callback) {
+        read(() -> store.getTodayRecords(habitId), callback);
+    }
+
+    /**
+     * 获取指定日期的触发记录
+     */
+    public void getRecordsByDate(long habitId, String date, Callback<List<TriggerRecord>> callback) {
+        read(() -> store.getRecordsByDate(habitId, date), callback);
+    }
+
+    /**
+     * 分页获取日期范围内的触发记录，after 为上一页最后一条记录（首页传null）
+     */
+    public void getRecordsPage(long habitId, String startDate, String endDate, TriggerRecord after, int pageSize,
+                               Callback<List<TriggerRecord>> callback) {
+        read(() -> store.getRecordsPage(habitId, startDate, endDate, after, pageSize), callback);
+    }
+
+    /**
+     * 获取指定日期的触发次数
+     */
+    public void getRecordCountByDate(long habitId, String date, Callback<Integer> callback) {
+        read(() -> store.getRecordCountByDate(habitId, date), callback);
+    }
+
+    /**
+     * 获取指定月份每天的触发次数
+     */
+    public void getMonthlyStatistics(long habitId, int year, int month, Callback<Map<String, Integer>> callback) {
+        read(() -> store.getMonthlyStatistics(habitId, year, month), callback);
+    }
+
+    /**
+     * 获取指定年份每月的触发次数
+     */
+    public void getYearlyStatistics(long habitId, int year, Callback<Map<String, Integer>> callback) {
+        read(() -> store.getYearlyStatistics(habitId, year), callback);
+    }
+
+    /**
+     * 一次查询获取多个习惯指定月份每天的触发次数
+     */
+    public void getMonthlyStatistics(long[] habitIds, int year, int month, Callback<StatisticsMatrix> callback) {
+        read(() -> store.getMonthlyStatistics(habitIds, year, month), callback);
+    }
+
+    /**
+     * 一次查询获取多个习惯指定年份每月的触发次数
+     */
+    public void getYearlyStatistics(long[] habitIds, int year, Callback<StatisticsMatrix> callback) {
+        read(() -> store.getYearlyStatistics(habitIds, year), callback);
+    }
+
+    /**
+     * 插入新的触发记录，回调新记录ID（失败时为-1）
+     */
+    public void insertRecord(TriggerRecord record, Callback<Long> callback) {
+        write(() -> store.insertRecord(record), -1L, callback);
+    }
+
+    /**
+     * 更新触发记录，回调受影响的行数（失败时为0）
+     */
+    public void updateRecord(TriggerRecord record, Callback<Integer> callback) {
+        write(() -> store.updateRecord(record), 0, callback);
+    }
+
+    /**
+     * 删除触发记录，回调受影响的行数（失败时为0）
+     */
+    public void deleteRecord(long recordId, Callback<Integer> callback) {
+        write(() -> store.deleteRecord(recordId), 0, callback);
+    }
+
+    /**
+     * 按描述全文搜索记录，habitId 为-1时搜索所有习惯；after 为上一页返回的游标（首页传null）
+     */
+    public void searchRecords(String query, long habitId, TriggerRecordDao.SearchCursor after, int pageSize,
+                              Callback<TriggerRecordDao.SearchPage> callback) {
+        // 全文索引只覆盖数据库中的记录，追加日志中的在内存中匹配
+        read(() -> recordDao.searchRecords(query, habitId, after, pageSize, pendingRecords()), callback);
+    }
+
+    // ---------- 导入导出 ----------
+
+    /**
+     * 导出所有数据到文件或SAF Uri，进度在主线程回调；完成后回调导出的记录条数，失败时为-1
+     */
+    public void exportData(Uri uri, DataExporter.Format format, DataExporter.ProgressListener progressListener,
+                           Callback<Long> callback) {
+        read(() -> {
+            try (OutputStream out = contentResolver.openOutputStream(uri)) {
+                if (out == null) return -1L;
+                return exporter.export(out, format, progressListener == null ? null : (exported, total) ->
+                        mainHandler.post(() -> progressListener.onProgress(exported, total)), pendingRecords());
+            } catch (IOException e) {
+                Log.e(TAG, "导出失败", e);
+                return -1L;
+            }
+        }, callback);
+    }
+
+    /**
+     * 从文件或SAF Uri导入数据（CSV或JSON），每提交一批记录在主线程回调已处理条数；失败时回调null
+     * 导入在写线程上执行，与其他写操作串行。进度按来源Uri保存，中断后再次导入同一文件会跳过已提交的部分。
+     */
+    public void importData(Uri uri, DataImporter.ProgressListener progressListener,
+                           Callback<DataImporter.Result> callback) {
+        write(() -> {
+            compactEventLog();
+            String source = uri.toString();
+            long resumeFrom = PreferenceUtils.getImportProgress(context, source);
+            try (InputStream in = contentResolver.openInputStream(uri)) {
+                if (in == null) return null;
+                DataImporter.Result result = importer.importFrom(in, resumeFrom, processed -> {
+                    PreferenceUtils.setImportProgress(context, source, processed);
+                    if (progressListener != null) {
+                        mainHandler.post(() -> progressListener.onProgress(processed));
+                    }
+                });
+                PreferenceUtils.clearImportProgress(context);
+                Log.i(TAG, "导入完成: 新增" + result.getImported() + "条, 重复" + result.getDuplicates()
+                        + "条, 跳过" + result.getSkipped() + "条, 耗时" + result.getElapsedMillis() + "ms ("
+                        + result.getRowsPerSecond() + "条/秒)");
+                return result;
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "导入失败", e);
+                return null;
+            }
+        }, callback);
+    }
+
+    // ---------- 数据保留 ----------
+
+    /**
+     * 按保留期限在后台把更早的原始记录归档为每日计数（启动时和修改保留设置后调用）
+     * 归档分批在写线程上执行，每批之后重新排队；归档了大量记录时最后执行VACUUM回收空间。
+     */
+    public void applyRetention() {
+        int months = PreferenceUtils.getRetentionMonths(context);
+        if (months <= 0) return;
+
+        long cutoffDay = LocalDate.ofEpochDay(DateUtils.getTodayEpochDay()).minusMonths(months).toEpochDay();
+        boolean keepDescriptions = PreferenceUtils.isRetentionKeepDescriptions(context);
+        executeWrite(() -> {
+            List<Long> habitIds = archiveDao.getArchivableHabitIds(cutoffDay);
+            if (!habitIds.isEmpty()) {
+                executeWrite(new RetentionTask(habitIds, cutoffDay, keepDescriptions), null);
+            }
+        }, null);
+    }
+
+    /**
+     * 导入直接写数据库（在写线程上），先把追加日志中的记录写入数据库
+     */
+    private void compactEventLog() {
+        if (eventLogStore != null) {
+            eventLogStore.compact();
+        }
+    }
+
+    /**
+     * 追加日志中还未写入数据库的记录，供直接查数据库的搜索和导出合并
+     */
+    private List<TriggerRecord> pendingRecords() {
+        return eventLogStore != null ? eventLogStore.getPendingRecords() : Collections.<TriggerRecord>emptyList();
+    }
+
+    // ---------- 调度 ----------
+
+    private <T> void read(Callable<T> task, Callback<T> callback) {
+        readExecutor.execute(() -> run(task, callback));
+    }
+
+    private <T> void write(Callable<T> task, Callback<T> callback) {
+        writeExecutor.execute(() -> run(task, callback));
+    }
+
+    /**
+     * 同 write，失败时回调 failureResult（界面与返回失败值的情况一样提示）
+     */
+    private <T> void write(Callable<T> task, T failureResult, Callback<T> callback) {
+        write(task, orElse(callback, failureResult));
+    }
+
+    /**
+     * 包装回调，把 onError 转换为以 failureResult 调用 onResult
+     */
+    private static <T> Callback<T> orElse(Callback<T> callback, T failureResult) {
+        if (callback == null) return null;
+        return new Callback<T>() {
+            @Override
+            public void onResult(T result) {
+                callback.onResult(result);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                callback.onResult(failureResult);
+            }
+        };
+    }
+
+    /**
+     * 在写线程上执行自行回调结果的后台任务（分批删除、归档等），异常记录日志后回调 onError
+     */
+    private void executeWrite(Runnable task, Callback<?> callback) {
+        writeExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "后台写任务失败", e);
+                if (callback != null) {
+                    mainHandler.post(() -> callback.onError(e));
+                }
+            }
+        });
+    }
+
+    /**
+     * 执行任务并把结果送回主线程；异常记录日志后回调 onError，不再抛出
+     */
+    private <T> void run(Callable<T> task, Callback<T> callback) {
+        T result;
+        try {
+            result = task.call();
+        } catch (Exception e) {
+            Log.e(TAG, "数据库操作失败", e);
+            if (callback != null) {
+                mainHandler.post(() -> callback.onError(e));
+            }
+            return;
+        }
+        deliver(result, callback);
+    }
+
+    private <T> void deliver(T result, Callback<T> callback) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onResult(result));
+        }
+    }
+
+    /**
+     * 分批删除一个待删除习惯的记录，每次只删一批，未删完时把自己重新放回写队列末尾
+     */
+    private class DeleteHabitTask implements Runnable {
+        private final long habitId;
+        private final long total;
+        private final DeleteProgressListener progressListener;
+        private final Callback<Integer> callback;
+        private long deleted;
+
+        DeleteHabitTask(long habitId, long total, DeleteProgressListener progressListener,
+                        Callback<Integer> callback) {
+            this.habitId = habitId;
+            this.total = total;
+            this.progressListener = progressListener;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            int count = store.deleteHabitRecords(habitId, DELETE_BATCH_SIZE);
+            if (count > 0) {
+                deleted += count;
+                if (progressListener != null) {
+                    long deletedSoFar = deleted;
+                    long expected = Math.max(total, deletedSoFar);
+                    mainHandler.post(() -> progressListener.onProgress(deletedSoFar, expected));
+                }
+                executeWrite(this, callback);
+                return;
+            }
+
+            int deletedHabits = store.permanentDeleteHabit(habitId);
+            int unusedDescriptions = descriptionDao.deleteUnused();
+            Log.i(TAG, "习惯 " + habitId + " 已删除，共删除" + deleted + "条记录、" + unusedDescriptions + "条不再使用的描述");
+            deliver(deletedHabits, callback);
+        }
+    }
+
+    /**
+     * 逐个习惯分批归档早于期限的记录，每次只归档一批，未完成时把自己重新放回写队列末尾
+     */
+    private class RetentionTask implements Runnable {
+        private final List<Long> habitIds;
+        private final long cutoffDay;
+        private final boolean keepDescriptions;
+        private int index;
+        private long archived;
+
+        RetentionTask(List<Long> habitIds, long cutoffDay, boolean keepDescriptions) {
+            this.habitIds = habitIds;
+            this.cutoffDay = cutoffDay;
+            this.keepDescriptions = keepDescriptions;
+        }
+
+        @Override
+        public void run() {
+            if (index < habitIds.size()) {
+                int count = archiveDao.archiveBatch(habitIds.get(index), cutoffDay, ARCHIVE_BATCH_DAYS,
+                        keepDescriptions);
+                if (count == 0) {
+                    index++;
+                } else {
+                    archived += count;
+                }
+                executeWrite(this, null);
+                return;
+            }
+
+            Log.i(TAG, "已归档" + archived + "条早于" + DateUtils.formatEpochDay(cutoffDay) + "的记录");
+            if (archived > 0) {
+                // 归档记录的描述已存入压缩数据，字典中不再被引用的描述可以删除
+                descriptionDao.deleteUnused();
+            }
+            if (archived >= VACUUM_THRESHOLD) {
+                long start = SystemClock.elapsedRealtime();
+                archiveDao.vacuum();
+                Log.i(TAG, "VACUUM耗时" + (SystemClock.elapsedRealtime() - start) + "ms");
+            }
+        }
+    }
+
+    /**
+     * 后台优先级的命名线程，避免与UI线程争抢CPU
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        BackgroundThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, namePrefix + "-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.felix.countbadhabits.storage;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.InvalidationTracker;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 以追加日志承接新记录的存储引擎（可选）
+ * 今天的新记录只追加到内存映射的 TriggerEventLog，不走SQLite插入；日志按组落盘，
+ * 后台压缩器定期（或日志将满时）把日志中的事件用一个批量事务写入 trigger_records 后清空日志。
+ * 读取（按日期、分页、统计）都在读锁下把日志中的事件与数据库结果合并，读路径上不压缩；
+ * 搜索和导出直接查数据库，由调用方用 getPendingRecords 的快照补上日志中的记录。
+ * 修改、删除等不频繁的写操作先压缩再交给数据库。
+ * 记录ID按小批（ID_BLOCK 个）在数据库中预留，事件从追加起就使用最终的数据库ID，压缩前后不变；
+ * 一批用到一半时由日志线程预留下一批，追加路径上通常不访问数据库。进程退出时未用完的ID留作空洞。
+ * 读操作持读锁，追加和压缩持写锁，保证读者不会在压缩前后把同一事件算两次或漏掉。
+ */
+public class EventLogHabitStore implements HabitStore {
+    private static final String TAG = "EventLogHabitStore";
+
+    // 段容量（事件数）
+    private static final int SEGMENT_CAPACITY = 4096;
+    // 日志达到该条数时安排压缩
+    private static final int COMPACT_THRESHOLD = SEGMENT_CAPACITY / 2;
+    private static final long COMPACT_INTERVAL_MINUTES = 10;
+    // 组提交：累计到 GROUP_SIZE 条立即落盘，否则在第一条未落盘事件之后 GROUP_DELAY_MS 落盘
+    private static final int GROUP_SIZE = 32;
+    private static final long GROUP_DELAY_MS = 200;
+    // 每次预留的记录ID数
+    private static final int ID_BLOCK = 64;
+
+    private final SQLiteHabitStore database;
+    private final TriggerRecordDao recordDao;
+    private final InvalidationTracker invalidationTracker;
+    private final File directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService executor;
+
+    // 打开日志并恢复中断的压缩，在日志线程上只执行一次
+    private final FutureTask<TriggerEventLog> opening = new FutureTask<>(this::openAndRecover);
+    private volatile TriggerEventLog log;
+    private int unsynced;
+    // 当前一批预留ID中还未使用的 [nextId, endId)、后台预留好的下一批（0表示没有），均由写锁保护
+    private long nextId;
+    private long endId;
+    private long spareFirstId;
+    private boolean reservingSpare;
+
+    /**
+     * 日志文件在构造后立即交给日志线程打开（恢复时的数据库写入都在该线程上），读写方法等待打开完成
+     */
+    public EventLogHabitStore(DatabaseHelper dbHelper, File directory) {
+        this.database = new SQLiteHabitStore(dbHelper);
+        this.recordDao = new TriggerRecordDao(dbHelper);
+        this.invalidationTracker = dbHelper.getInvalidationTracker();
+        this.directory = directory;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "event-log"));
+        executor.execute(opening);
+        executor.scheduleWithFixedDelay(this::compactQuietly, COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    /**
+     * 把目录中遗留的日志写入数据库并删除日志文件（关闭该引擎后调用，在后台线程执行）
+     */
+    public static void drain(DatabaseHelper dbHelper, File directory) {
+        if (!new File(directory, TriggerEventLog.EVENTS_FILE).exists()) return;
+
+        EventLogHabitStore store = new EventLogHabitStore(dbHelper, directory);
+        try {
+            store.compact();
+            store.close();
+            new File(directory, TriggerEventLog.EVENTS_FILE).delete();
+            new File(directory, TriggerEventLog.DESCRIPTIONS_FILE).delete();
+        } catch (IOException e) {
+            Log.e(TAG, "写入遗留日志失败", e);
+        }
+    }
+
+    // ---------- 坏习惯 ----------
+
+    @Override
+    public List<BadHabit> getAllActiveHabits() {
+        return database.getAllActiveHabits();
+    }
+
+    @Override
+    public int getDailyLimit(long habitId) {
+        return database.getDailyLimit(habitId);
+    }
+
+    @Override
+    public long insertHabit(BadHabit habit) {
+        return database.insertHabit(habit);
+    }
+
+    @Override
+    public int updateHabit(BadHabit habit) {
+        return database.updateHabit(habit);
+    }
+
+    @Override
+    public int permanentDeleteHabit(long habitId) {
+        lock.writeLock().lock();
+        try {
+            // 日志中该习惯的事件先写入数据库，再随习惯一起级联删除
+            compactLocked();
+            return database.permanentDeleteHabit(habitId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long markHabitPendingDelete(long habitId) {
+        lock.writeLock().lock();
+        try {
+            // 日志中该习惯的事件先写入数据库，之后由 deleteHabitRecords 分批删除
+            compactLocked();
+            return database.markHabitPendingDelete(habitId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteHabitRecords(long habitId, int limit) {
+        return database.deleteHabitRecords(habitId, limit);
+    }
+
+    @Override
+    public List<Long> getPendingDeleteHabitIds() {
+        return database.getPendingDeleteHabitIds();
+    }
+
+    // ---------- 触发记录 ----------
+
+    @Override
+    public List<TriggerRecord> getTodayRecords(long habitId) {
+        return getRecordsByDate(habitId, DateUtils.getTodayString());
+    }
+
+    @Override
+    public List<TriggerRecord> getRecordsByDate(long habitId, String date) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            List<TriggerRecord> records = database.getRecordsByDate(habitId, date);
+            long day = DateUtils.toEpochDay(date);
+            int sequenceNumber = records.size();
+            boolean merged = false;
+            for (TriggerEventLog.Event event : log.getEvents()) {
+                if (event.habitId == habitId && DateUtils.epochDayOfLocalMillis(event.millis) == day) {
+                    records.add(toRecord(event, ++sequenceNumber));
+                    merged = true;
+                }
+            }
+            if (merged) {
+                Collections.sort(records, (a, b) -> a.getTriggerDateTime().compareTo(b.getTriggerDateTime()));
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TriggerRecord> getRecordsPage(long habitId, String startDate, String endDate,
+                                              TriggerRecord after, int pageSize) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            List<TriggerRecord> records = database.getRecordsPage(habitId, startDate, endDate, after, pageSize);
+            // 日志中的事件已使用预留的数据库ID，按同样的 时间+ID 游标取出排在上一页之后的部分
+            long startDay = DateUtils.toEpochDay(startDate);
+            long endDay = DateUtils.toEpochDay(endDate);
+            long afterMillis = after != null ? DateUtils.toLocalMillis(after.getTriggerDateTime()) : Long.MIN_VALUE;
+            boolean merged = false;
+            for (TriggerRecord record : pendingRecordsLocked(log, habitId)) {
+                long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+                long day = DateUtils.epochDayOfLocalMillis(millis);
+                if (day < startDay || day > endDay) continue;
+                if (after != null && (millis < afterMillis
+                        || millis == afterMillis && record.getId() <= after.getId())) {
+                    continue;
+                }
+                records.add(record);
+                merged = true;
+            }
+            if (merged) {
+                Collections.sort(records, (a, b) -> {
+                    int order = a.getTriggerDateTime().compareTo(b.getTriggerDateTime());
+                    return order != 0 ? order : Long.compare(a.getId(), b.getId());
+                });
+                if (records.size() > pageSize) {
+                    records.subList(pageSize, records.size()).clear();
+                }
+            }
+            return records;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getRecordCountByDate(long habitId, String date) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            long day = DateUtils.toEpochDay(date);
+            return database.getRecordCountByDate(habitId, date) + countEvents(log, habitId, day, day + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getMonthlyStatistics(long habitId, int year, int month) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = database.getMonthlyStatistics(habitId, year, month);
+            LocalDate firstDay = LocalDate.of(year, month, 1);
+            long startDay = firstDay.toEpochDay();
+            long endDay = firstDay.plusMonths(1).toEpochDay();
+            for (TriggerEventLog.Event event : log.getEvents()) {
+                long day = DateUtils.epochDayOfLocalMillis(event.millis);
+                if (event.habitId == habitId && day >= startDay && day < endDay) {
+                    counts.merge(DateUtils.formatEpochDay(day), 1, Integer::sum);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getYearlyStatistics(long habitId, int year) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = database.getYearlyStatistics(habitId, year);
+            for (TriggerEventLog.Event event : log.getEvents()) {
+                LocalDate date = LocalDate.ofEpochDay(DateUtils.epochDayOfLocalMillis(event.millis));
+                if (event.habitId == habitId && date.getYear() == year) {
+                    counts.merge(String.format(Locale.US, "%04d-%02d", year, date.getMonthValue()), 1, Integer::sum);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public StatisticsMatrix getMonthlyStatistics(long[] habitIds, int year, int month) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            StatisticsMatrix matrix = database.getMonthlyStatistics(habitIds, year, month);
+            long startDay = LocalDate.of(year, month, 1).toEpochDay();
+            for (TriggerEventLog.Event event : log.getEvents()) {
+                int row = matrix.rowOf(event.habitId);
+                long bucket = DateUtils.epochDayOfLocalMillis(event.millis) - startDay;
+                if (row >= 0 && bucket >= 0 && bucket < matrix.getBucketCount()) {
+                    matrix.add(row, (int) bucket, 1);
+                }
+            }
+            return matrix;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public StatisticsMatrix getYearlyStatistics(long[] habitIds, int year) {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            StatisticsMatrix matrix = database.getYearlyStatistics(habitIds, year);
+            for (TriggerEventLog.Event event : log.getEvents()) {
+                int row = matrix.rowOf(event.habitId);
+                LocalDate date = LocalDate.ofEpochDay(DateUtils.epochDayOfLocalMillis(event.millis));
+                if (row >= 0 && date.getYear() == year) {
+                    matrix.add(row, date.getMonthValue() - 1, 1);
+                }
+            }
+            return matrix;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long insertRecord(TriggerRecord record) {
+        long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+        long day = DateUtils.epochDayOfLocalMillis(millis);
+        if (day != DateUtils.getTodayEpochDay()) {
+            // 只有今天的点击是高频写入，补录其他日期直接写数据库
+            return database.insertRecord(record);
+        }
+
+        // 今日的次数在锁外载入内存计数器，锁内只读内存（其间计数器被清空时才在锁内重新加载）
+        recordDao.loadTodayRecordCount(record.getHabitId());
+        TriggerEventLog log = openLog();
+        TriggerEventLog.Event event;
+        lock.writeLock().lock();
+        try {
+            record.setSequenceNumber(recordDao.loadTodayRecordCount(record.getHabitId())
+                    + countEvents(log, record.getHabitId(), day, day + 1) + 1);
+            if (log.size() >= log.getCapacity()) {
+                // 段已满（压缩跟不上），就地压缩
+                compactLocked();
+            }
+            event = log.append(takeIdLocked(), record.getHabitId(), millis, record.getDescription());
+            if (++unsynced >= GROUP_SIZE) {
+                syncLocked();
+            } else if (unsynced == 1) {
+                executor.schedule(this::sync, GROUP_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+            if (log.size() == COMPACT_THRESHOLD) {
+                executor.execute(this::compactQuietly);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        record.setId(event.id);
+        invalidationTracker.notifyRecordsChanged(record.getHabitId(), day);
+        return event.id;
+    }
+
+    @Override
+    public int updateRecord(TriggerRecord record) {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+            return database.updateRecord(record);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int deleteRecord(long recordId) {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+            return database.deleteRecord(recordId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 日志中还未写入数据库的全部记录（快照，序号接在数据库中当天已有的条数之后）
+     * 搜索、导出等直接查数据库的读取用它补上日志中的记录；取快照之后日志若被压缩，
+     * 同一条记录会同时出现在数据库中，ID相同，调用方按ID去重。
+     */
+    public List<TriggerRecord> getPendingRecords() {
+        TriggerEventLog log = openLog();
+        lock.readLock().lock();
+        try {
+            return pendingRecordsLocked(log, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------- 日志维护 ----------
+
+    /**
+     * 把日志中的事件全部写入数据库
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 落盘并关闭日志（之后不能再使用该实例）
+     */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void sync() {
+        lock.writeLock().lock();
+        try {
+            syncLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void syncLocked() {
+        try {
+            if (log != null) {
+                log.sync();
+            }
+            unsynced = 0;
+        } catch (IOException e) {
+            Log.e(TAG, "日志落盘失败", e);
+        }
+    }
+
+    /**
+     * 取下一个预留的记录ID（需持有写锁）
+     * 当前一批用完时换上后台预留好的下一批，没有时才就地预留；用到一半时安排后台预留下一批
+     */
+    private long takeIdLocked() {
+        if (nextId == endId) {
+            long firstId = spareFirstId != 0 ? spareFirstId : recordDao.reserveRecordIds(ID_BLOCK);
+            spareFirstId = 0;
+            nextId = firstId;
+            endId = firstId + ID_BLOCK;
+        }
+        if (endId - nextId == ID_BLOCK / 2 && spareFirstId == 0 && !reservingSpare) {
+            reservingSpare = true;
+            executor.execute(this::reserveSpareIds);
+        }
+        return nextId++;
+    }
+
+    /**
+     * 在日志线程上预留下一批记录ID，数据库事务不占用写锁
+     */
+    private void reserveSpareIds() {
+        long firstId = 0;
+        try {
+            firstId = recordDao.reserveRecordIds(ID_BLOCK);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "预留记录ID失败", e);
+        }
+        lock.writeLock().lock();
+        try {
+            spareFirstId = firstId;
+            reservingSpare = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "压缩日志失败", e);
+        }
+    }
+
+    /**
+     * 用一个批量事务写入日志中的全部事件后清空日志（需持有写锁）
+     * 写入前先在段头标记“压缩中”，若中途中断，下次打开时据此检查这一批是否已经提交
+     */
+    private void compactLocked() {
+        TriggerEventLog log = openLog();
+        List<TriggerEventLog.Event> events = log.getEvents();
+        if (events.isEmpty()) return;
+
+        try {
+            log.markCompacting();
+            List<TriggerRecord> records = new ArrayList<>(events.size());
+            for (TriggerEventLog.Event event : events) {
+                records.add(toRecord(event, 0));
+            }
+            recordDao.insertRecords(records);
+            log.reset();
+            unsynced = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 等待日志线程打开日志
+     */
+    private TriggerEventLog openLog() {
+        TriggerEventLog current = log;
+        if (current != null) return current;
+
+        try {
+            return opening.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待打开日志时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("打开日志失败", e.getCause());
+        }
+    }
+
+    /**
+     * 打开日志；上次压缩中断时，按是否已提交决定重新写入或直接清空
+     * 不加锁：其他线程都经 openLog 等待本任务完成后才会访问日志，持写锁等待的线程也不会与之死锁
+     */
+    private TriggerEventLog openAndRecover() throws IOException {
+        TriggerEventLog opened = new TriggerEventLog(directory, SEGMENT_CAPACITY);
+        if (opened.isCompacting()) {
+            recoverCompaction(opened);
+        }
+        log = opened;
+        return opened;
+    }
+
+    /**
+     * 整批事件在一个事务中以预留ID写入：第一条事件的ID已在数据库中说明已经提交，只差清空日志；否则整批都未写入
+     */
+    private void recoverCompaction(TriggerEventLog opened) throws IOException {
+        List<TriggerEventLog.Event> events = opened.getEvents();
+        if (!events.isEmpty() && !recordDao.recordExists(events.get(0).id)) {
+            List<TriggerRecord> records = new ArrayList<>(events.size());
+            for (TriggerEventLog.Event event : events) {
+                records.add(toRecord(event, 0));
+            }
+            recordDao.insertRecords(records);
+            Log.w(TAG, "恢复中断的压缩，补写 " + records.size() + " 条");
+        }
+        opened.reset();
+    }
+
+    /**
+     * 日志事件转换为记录（需持有锁），habitId 为-1时包括所有习惯
+     */
+    private List<TriggerRecord> pendingRecordsLocked(TriggerEventLog log, long habitId) {
+        List<TriggerRecord> records = new ArrayList<>();
+        Map<String, int[]> sequenceNumbers = new HashMap<>();
+        for (TriggerEventLog.Event event : log.getEvents()) {
+            if (habitId != -1 && event.habitId != habitId) continue;
+            String date = DateUtils.formatEpochDay(DateUtils.epochDayOfLocalMillis(event.millis));
+            String key = event.habitId + "/" + date;
+            int[] sequenceNumber = sequenceNumbers.get(key);
+            if (sequenceNumber == null) {
+                sequenceNumber = new int[]{database.getRecordCountByDate(event.habitId, date)};
+                sequenceNumbers.put(key, sequenceNumber);
+            }
+            records.add(toRecord(event, ++sequenceNumber[0]));
+        }
+        return records;
+    }
+
+    private static int countEvents(TriggerEventLog log, long habitId, long startDay, long endDay) {
+        long startMillis = startDay * DateUtils.MILLIS_PER_DAY;
+        long endMillis = endDay * DateUtils.MILLIS_PER_DAY;
+        int count = 0;
+        for (TriggerEventLog.Event event : log.getEvents()) {
+            if (event.habitId == habitId && event.millis >= startMillis && event.millis < endMillis) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static TriggerRecord toRecord(TriggerEventLog.Event event, int sequenceNumber) {
+        return new TriggerRecord(event.id, event.habitId,
+                DateUtils.formatEpochDay(DateUtils.epochDayOfLocalMillis(event.millis)),
+                DateUtils.formatLocalMillisTime(event.millis),
+                DateUtils.formatLocalMillis(event.millis),
+                event.description, sequenceNumber);
+    }
+}
@@ -0,0 +1,120 @@
+package com.felix.countbadhabits.storage;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 存储引擎接口
+ * 覆盖界面（经由 HabitRepository）实际使用的全部操作，默认实现为 SQLiteHabitStore；
+ * InMemoryHabitStore 不依赖 Android，可在JVM上运行和测量界面侧的查询与统计逻辑。
+ * 实现需要是线程安全的：仓库在多个读线程和一个写线程上调用。
+ */
+public interface HabitStore {
+
+    // ---------- 坏习惯 ----------
+
+    /**
+     * 获取所有活跃的坏习惯（按创建日期升序）
+     */
+    List<BadHabit> getAllActiveHabits();
+
+    /**
+     * 获取坏习惯的每日上限，习惯不存在时返回-1
+     */
+    int getDailyLimit(long habitId);
+
+    /**
+     * 插入新的坏习惯，返回新ID（失败时为-1）
+     */
+    long insertHabit(BadHabit habit);
+
+    /**
+     * 更新坏习惯的名称、上限和活跃状态，返回受影响的行数
+     */
+    int updateHabit(BadHabit habit);
+
+    /**
+     * 彻底删除坏习惯及其剩余的记录，返回删除的习惯数
+     * 记录多的习惯先用 markHabitPendingDelete 和 deleteHabitRecords 分批删除记录，再调用此方法。
+     */
+    int permanentDeleteHabit(long habitId);
+
+    /**
+     * 把坏习惯标记为待删除，此后不再出现在 getAllActiveHabits 中
+     * @return 该习惯现有的记录数，习惯不存在时返回-1
+     */
+    long markHabitPendingDelete(long habitId);
+
+    /**
+     * 删除待删除习惯最多 limit 条记录，返回本次删除的条数（0表示已删完）
+     */
+    int deleteHabitRecords(long habitId, int limit);
+
+    /**
+     * 获取所有已标记待删除、尚未删完的坏习惯ID
+     */
+    List<Long> getPendingDeleteHabitIds();
+
+    // ---------- 触发记录 ----------
+
+    /**
+     * 获取今日的触发记录（按时间升序）
+     */
+    List<TriggerRecord> getTodayRecords(long habitId);
+
+    /**
+     * 获取指定日期的触发记录（按时间升序）
+     */
+    List<TriggerRecord> getRecordsByDate(long habitId, String date);
+
+    /**
+     * 分页获取日期范围内的记录（按 时间+ID 升序）
+     * @param after 上一页的最后一条记录，首页传null
+     */
+    List<TriggerRecord> getRecordsPage(long habitId, String startDate, String endDate,
+                                       TriggerRecord after, int pageSize);
+
+    /**
+     * 获取指定日期的触发次数
+     */
+    int getRecordCountByDate(long habitId, String date);
+
+    /**
+     * 获取月度统计数据（yyyy-MM-dd -> 触发次数），只包含有记录的天
+     */
+    Map<String, Integer> getMonthlyStatistics(long habitId, int year, int month);
+
+    /**
+     * 获取年度统计数据（yyyy-MM -> 触发次数），只包含有记录的月
+     */
+    Map<String, Integer> getYearlyStatistics(long habitId, int year);
+
+    /**
+     * 一次获取多个习惯的月度统计，行与 habitIds 顺序一致，列为当月第几天（从0起）
+     */
+    StatisticsMatrix getMonthlyStatistics(long[] habitIds, int year, int month);
+
+    /**
+     * 一次获取多个习惯的年度统计，行与 habitIds 顺序一致，列为月份减1
+     */
+    StatisticsMatrix getYearlyStatistics(long[] habitIds, int year);
+
+    /**
+     * 插入新的触发记录并分配当日序号，返回新ID（失败时为-1）
+     */
+    long insertRecord(TriggerRecord record);
+
+    /**
+     * 更新触发记录的时间和描述，返回受影响的行数
+     */
+    int updateRecord(TriggerRecord record);
+
+    /**
+     * 删除触发记录，返回受影响的行数
+     */
+    int deleteRecord(long recordId);
+}
@@ -0,0 +1,375 @@
+package com.felix.countbadhabits.storage;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 内存存储引擎
+ * 每个习惯的记录按 (时间, ID) 排序保存在并列的基本类型数组中：按天/按月的计数用二分查找定位区间，
+ * 不需要汇总表；新记录通常追加在末尾，插入为均摊O(1)。
+ * 不依赖Android，用于在JVM上运行和测量界面侧的统计逻辑；进程结束后数据不保留。
+ */
+public class InMemoryHabitStore implements HabitStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<Long, BadHabit> habits = new LinkedHashMap<>();
+    private final Map<Long, RecordArray> records = new HashMap<>();
+    // 记录ID -> 所属习惯ID，修改/删除时定位记录
+    private final Map<Long, Long> recordHabits = new HashMap<>();
+    // 已标记待删除的习惯ID
+    private final Set<Long> pendingDelete = new HashSet<>();
+    private long nextHabitId = 1;
+    private long nextRecordId = 1;
+
+    // ---------- 坏习惯 ----------
+
+    @Override
+    public synchronized List<BadHabit> getAllActiveHabits() {
+        List<BadHabit> result = new ArrayList<>();
+        for (BadHabit habit : habits.values()) {
+            if (habit.isActive() && !pendingDelete.contains(habit.getId())) {
+                result.add(new BadHabit(habit));
+            }
+        }
+        // 与SQLite实现一致按创建日期排序（稳定排序，同一天的按插入顺序）
+        Collections.sort(result, (a, b) -> a.getCreatedDate().compareTo(b.getCreatedDate()));
+        return result;
+    }
+
+    @Override
+    public synchronized int getDailyLimit(long habitId) {
+        BadHabit habit = habits.get(habitId);
+        return habit != null ? habit.getDailyLimit() : -1;
+    }
+
+    @Override
+    public synchronized long insertHabit(BadHabit habit) {
+        long id = nextHabitId++;
+        habit.setId(id);
+        habits.put(id, new BadHabit(habit));
+        records.put(id, new RecordArray());
+        return id;
+    }
+
+    @Override
+    public synchronized int updateHabit(BadHabit habit) {
+        BadHabit stored = habits.get(habit.getId());
+        if (stored == null) return 0;
+
+        stored.setName(habit.getName());
+        stored.setDailyLimit(habit.getDailyLimit());
+        stored.setActive(habit.isActive());
+        return 1;
+    }
+
+    @Override
+    public synchronized int permanentDeleteHabit(long habitId) {
+        if (habits.remove(habitId) == null) return 0;
+
+        pendingDelete.remove(habitId);
+        RecordArray array = records.remove(habitId);
+        for (int i = 0; i < array.size; i++) {
+            recordHabits.remove(array.ids[i]);
+        }
+        return 1;
+    }
+
+    @Override
+    public synchronized long markHabitPendingDelete(long habitId) {
+        if (!habits.containsKey(habitId)) return -1;
+
+        pendingDelete.add(habitId);
+        return records.get(habitId).size;
+    }
+
+    @Override
+    public synchronized int deleteHabitRecords(long habitId, int limit) {
+        RecordArray array = records.get(habitId);
+        if (array == null) return 0;
+
+        // 从末尾删除，不需要移动数组元素
+        int count = Math.min(limit, array.size);
+        for (int i = 0; i < count; i++) {
+            recordHabits.remove(array.ids[array.size - 1]);
+            array.remove(array.size - 1);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized List<Long> getPendingDeleteHabitIds() {
+        return new ArrayList<>(pendingDelete);
+    }
+
+    // ---------- 触发记录 ----------
+
+    @Override
+    public List<TriggerRecord> getTodayRecords(long habitId) {
+        return getRecordsByDate(habitId, DateUtils.getTodayString());
+    }
+
+    @Override
+    public synchronized List<TriggerRecord> getRecordsByDate(long habitId, String date) {
+        RecordArray array = records.get(habitId);
+        if (array == null) return new ArrayList<>();
+
+        long day = DateUtils.toEpochDay(date);
+        int from = array.lowerBound(startOfDay(day), Long.MIN_VALUE);
+        int to = array.lowerBound(startOfDay(day + 1), Long.MIN_VALUE);
+        List<TriggerRecord> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(array.toRecord(habitId, i));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<TriggerRecord> getRecordsPage(long habitId, String startDate, String endDate,
+                                                           TriggerRecord after, int pageSize) {
+        RecordArray array = records.get(habitId);
+        if (array == null) return new ArrayList<>();
+
+        int from = array.lowerBound(startOfDay(DateUtils.toEpochDay(startDate)), Long.MIN_VALUE);
+        if (after != null) {
+            // 跳过 (时间, ID) 不大于游标的记录
+            from = Math.max(from, array.lowerBound(DateUtils.toLocalMillis(after.getTriggerDateTime()),
+                    after.getId() + 1));
+        }
+        int to = array.lowerBound(startOfDay(DateUtils.toEpochDay(endDate) + 1), Long.MIN_VALUE);
+        to = Math.min(to, from + pageSize);
+
+        List<TriggerRecord> result = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            result.add(array.toRecord(habitId, i));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int getRecordCountByDate(long habitId, String date) {
+        RecordArray array = records.get(habitId);
+        if (array == null) return 0;
+
+        long day = DateUtils.toEpochDay(date);
+        return array.countBetween(startOfDay(day), startOfDay(day + 1));
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getMonthlyStatistics(long habitId, int year, int month) {
+        Map<String, Integer> counts = new HashMap<>();
+        RecordArray array = records.get(habitId);
+        if (array == null) return counts;
+
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        long startDay = firstDay.toEpochDay();
+        long endDay = firstDay.plusMonths(1).toEpochDay();
+
+        // 一次扫描本月区间，按天累计
+        int from = array.lowerBound(startOfDay(startDay), Long.MIN_VALUE);
+        int to = array.lowerBound(startOfDay(endDay), Long.MIN_VALUE);
+        int i = from;
+        while (i < to) {
+            long day = DateUtils.epochDayOfLocalMillis(array.millis[i]);
+            int dayEnd = array.lowerBound(startOfDay(day + 1), Long.MIN_VALUE);
+            counts.put(DateUtils.formatEpochDay(day), dayEnd - i);
+            i = dayEnd;
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getYearlyStatistics(long habitId, int year) {
+        Map<String, Integer> counts = new HashMap<>();
+        RecordArray array = records.get(habitId);
+        if (array == null) return counts;
+
+        for (int month = 1; month <= 12; month++) {
+            LocalDate firstDay = LocalDate.of(year, month, 1);
+            int count = array.countBetween(startOfDay(firstDay.toEpochDay()),
+                    startOfDay(firstDay.plusMonths(1).toEpochDay()));
+            if (count > 0) {
+                counts.put(String.format(Locale.US, "%04d-%02d", year, month), count);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized StatisticsMatrix getMonthlyStatistics(long[] habitIds, int year, int month) {
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        long startDay = firstDay.toEpochDay();
+        StatisticsMatrix matrix = new StatisticsMatrix(habitIds, firstDay.lengthOfMonth());
+        for (int row = 0; row < habitIds.length; row++) {
+            RecordArray array = records.get(habitIds[row]);
+            if (array == null) continue;
+
+            for (int bucket = 0; bucket < matrix.getBucketCount(); bucket++) {
+                matrix.add(row, bucket, array.countBetween(startOfDay(startDay + bucket),
+                        startOfDay(startDay + bucket + 1)));
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public synchronized StatisticsMatrix getYearlyStatistics(long[] habitIds, int year) {
+        StatisticsMatrix matrix = new StatisticsMatrix(habitIds, 12);
+        for (int row = 0; row < habitIds.length; row++) {
+            RecordArray array = records.get(habitIds[row]);
+            if (array == null) continue;
+
+            for (int month = 1; month <= 12; month++) {
+                LocalDate firstDay = LocalDate.of(year, month, 1);
+                matrix.add(row, month - 1, array.countBetween(startOfDay(firstDay.toEpochDay()),
+                        startOfDay(firstDay.plusMonths(1).toEpochDay())));
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public synchronized long insertRecord(TriggerRecord record) {
+        RecordArray array = records.get(record.getHabitId());
+        if (array == null) return -1;
+
+        long millis = DateUtils.toLocalMillis(record.getTriggerDateTime());
+        long day = DateUtils.epochDayOfLocalMillis(millis);
+        long id = nextRecordId++;
+        record.setSequenceNumber(array.countBetween(startOfDay(day), startOfDay(day + 1)) + 1);
+        record.setId(id);
+
+        array.insert(millis, id, record.getDescription(), record.getSequenceNumber());
+        recordHabits.put(id, record.getHabitId());
+        return id;
+    }
+
+    @Override
+    public synchronized int updateRecord(TriggerRecord record) {
+        Long habitId = recordHabits.get(record.getId());
+        if (habitId == null) return 0;
+
+        RecordArray array = records.get(habitId);
+        int index = array.indexOf(record.getId());
+        int sequenceNumber = array.sequences[index];
+        array.remove(index);
+        // 时间可能改变，按新时间重新放入；与SQLite实现一致，序号保持不变
+        array.insert(DateUtils.toLocalMillis(record.getTriggerDateTime()), record.getId(),
+                record.getDescription(), sequenceNumber);
+        return 1;
+    }
+
+    @Override
+    public synchronized int deleteRecord(long recordId) {
+        Long habitId = recordHabits.remove(recordId);
+        if (habitId == null) return 0;
+
+        RecordArray array = records.get(habitId);
+        array.remove(array.indexOf(recordId));
+        return 1;
+    }
+
+    private static long startOfDay(long epochDay) {
+        return epochDay * DateUtils.MILLIS_PER_DAY;
+    }
+
+    /**
+     * 一个习惯的全部记录，按 (时间, ID) 升序排列的并列数组
+     */
+    private static class RecordArray {
+        long[] millis = new long[INITIAL_CAPACITY];
+        long[] ids = new long[INITIAL_CAPACITY];
+        String[] descriptions = new String[INITIAL_CAPACITY];
+        int[] sequences = new int[INITIAL_CAPACITY];
+        int size;
+
+        /**
+         * 第一个 (时间, ID) 不小于给定值的位置
+         */
+        int lowerBound(long targetMillis, long targetId) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (millis[mid] < targetMillis || (millis[mid] == targetMillis && ids[mid] < targetId)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * 时间在 [fromMillis, toMillis) 内的记录数
+         */
+        int countBetween(long fromMillis, long toMillis) {
+            return lowerBound(toMillis, Long.MIN_VALUE) - lowerBound(fromMillis, Long.MIN_VALUE);
+        }
+
+        int indexOf(long id) {
+            // 记录ID不是按时间分布的，只能线性查找；修改/删除的频率远低于查询
+            for (int i = size - 1; i >= 0; i--) {
+                if (ids[i] == id) return i;
+            }
+            throw new IllegalStateException("记录不存在: " + id);
+        }
+
+        void insert(long recordMillis, long id, String description, int sequenceNumber) {
+            if (size == millis.length) {
+                int capacity = size * 2;
+                millis = Arrays.copyOf(millis, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                descriptions = Arrays.copyOf(descriptions, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+            }
+            int index = lowerBound(recordMillis, id);
+            int moved = size - index;
+            if (moved > 0) {
+                System.arraycopy(millis, index, millis, index + 1, moved);
+                System.arraycopy(ids, index, ids, index + 1, moved);
+                System.arraycopy(descriptions, index, descriptions, index + 1, moved);
+                System.arraycopy(sequences, index, sequences, index + 1, moved);
+            }
+            millis[index] = recordMillis;
+            ids[index] = id;
+            descriptions[index] = description;
+            sequences[index] = sequenceNumber;
+            size++;
+        }
+
+        void remove(int index) {
+            int moved = size - index - 1;
+            if (moved > 0) {
+                System.arraycopy(millis, index + 1, millis, index, moved);
+                System.arraycopy(ids, index + 1, ids, index, moved);
+                System.arraycopy(descriptions, index + 1, descriptions, index, moved);
+                System.arraycopy(sequences, index + 1, sequences, index, moved);
+            }
+            size--;
+            descriptions[size] = null;
+        }
+
+        TriggerRecord toRecord(long habitId, int index) {
+            long recordMillis = millis[index];
+            return new TriggerRecord(ids[index], habitId,
+                    DateUtils.formatEpochDay(DateUtils.epochDayOfLocalMillis(recordMillis)),
+                    DateUtils.formatLocalMillisTime(recordMillis),
+                    DateUtils.formatLocalMillis(recordMillis),
+                    descriptions[index], sequences[index]);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.felix.countbadhabits.storage;
+
+import com.felix.countbadhabits.database.BadHabitDao;
+import com.felix.countbadhabits.database.DatabaseHelper;
+import com.felix.countbadhabits.database.TriggerRecordDao;
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于SQLite的存储引擎，直接委托给 BadHabitDao 和 TriggerRecordDao
+ */
+public class SQLiteHabitStore implements HabitStore {
+    private final BadHabitDao habitDao;
+    private final TriggerRecordDao recordDao;
+
+    public SQLiteHabitStore(DatabaseHelper dbHelper) {
+        this.habitDao = new BadHabitDao(dbHelper);
+        this.recordDao = new TriggerRecordDao(dbHelper);
+    }
+
+    @Override
+    public List<BadHabit> getAllActiveHabits() {
+        return habitDao.getAllActiveHabits();
+    }
+
+    @Override
+    public int getDailyLimit(long habitId) {
+        return habitDao.getDailyLimit(habitId);
+    }
+
+    @Override
+    public long insertHabit(BadHabit habit) {
+        return habitDao.insertHabit(habit);
+    }
+
+    @Override
+    public int updateHabit(BadHabit habit) {
+        return habitDao.updateHabit(habit);
+    }
+
+    @Override
+    public int permanentDeleteHabit(long habitId) {
+        return habitDao.permanentDeleteHabit(habitId);
+    }
+
+    @Override
+    public long markHabitPendingDelete(long habitId) {
+        return habitDao.markPendingDelete(habitId);
+    }
+
+    @Override
+    public int deleteHabitRecords(long habitId, int limit) {
+        return recordDao.deleteHabitRecords(habitId, limit);
+    }
+
+    @Override
+    public List<Long> getPendingDeleteHabitIds() {
+        return habitDao.getPendingDeleteHabitIds();
+    }
+
+    @Override
+    public List<TriggerRecord> getTodayRecords(long habitId) {
+        return recordDao.getTodayRecords(habitId);
+    }
+
+    @Override
+    public List<TriggerRecord> getRecordsByDate(long habitId, String date) {
+        return recordDao.getRecordsByDate(habitId, date);
+    }
+
+    @Override
+    public List<TriggerRecord> getRecordsPage(long habitId, String startDate, String endDate,
+                                              TriggerRecord after, int pageSize) {
+        return recordDao.getRecordsPage(habitId, startDate, endDate, after, pageSize);
+    }
+
+    @Override
+    public int getRecordCountByDate(long habitId, String date) {
+        return recordDao.getRecordCountByDate(habitId, date);
+    }
+
+    @Override
+    public Map<String, Integer> getMonthlyStatistics(long habitId, int year, int month) {
+        return recordDao.getMonthlyStatistics(habitId, year, month);
+    }
+
+    @Override
+    public Map<String, Integer> getYearlyStatistics(long habitId, int year) {
+        return recordDao.getYearlyStatistics(habitId, year);
+    }
+
+    @Override
+    public StatisticsMatrix getMonthlyStatistics(long[] habitIds, int year, int month) {
+        return recordDao.getMonthlyStatistics(habitIds, year, month);
+    }
+
+    @Override
+    public StatisticsMatrix getYearlyStatistics(long[] habitIds, int year) {
+        return recordDao.getYearlyStatistics(habitIds, year);
+    }
+
+    @Override
+    public long insertRecord(TriggerRecord record) {
+        return recordDao.insertRecord(record);
+    }
+
+    @Override
+    public int updateRecord(TriggerRecord record) {
+        return recordDao.updateRecord(record);
+    }
+
+    @Override
+    public int deleteRecord(long recordId) {
+        return recordDao.deleteRecord(recordId);
+    }
+}
@@ -0,0 +1,223 @@
+package com.felix.countbadhabits.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只追加的触发事件日志
+ * 事件为定长记录（记录ID、习惯ID、本地秒数、描述偏移），写入内存映射的段文件；描述原文追加到旁边的描述文件。
+ * 追加只是内存写入，由调用方按组调用 sync() 落盘：进程崩溃不丢数据，断电最多丢失最后一组未同步的事件。
+ * 段头中的事件数和描述长度在事件写完后才更新，打开时只承认段头记录的部分，半写的事件被忽略。
+ * 所有事件同时保存在内存中供查询合并；段写满或定期由压缩器整体写入数据库后清空。
+ * 记录ID由调用方在数据库中预留后随事件写入，压缩前后不变。
+ * 非线程安全，由 EventLogHabitStore 的锁保护。
+ */
+class TriggerEventLog implements Closeable {
+    private static final int MAGIC = 0x43424845;    // "CBHE"
+    private static final int VERSION = 2;
+
+    // 段头：魔数(4) 版本(4) 事件数(4) 状态(4) 描述文件有效长度(8)
+    private static final int HEADER_SIZE = 24;
+    private static final int OFFSET_COUNT = 8;
+    private static final int OFFSET_STATE = 12;
+    private static final int OFFSET_DESCRIPTION_LENGTH = 16;
+
+    // 事件：记录ID(8) 习惯ID(8) 本地秒数(8) 描述偏移(8，-1表示null)
+    static final int EVENT_SIZE = 32;
+
+    static final int STATE_IDLE = 0;
+    // 正在写入数据库；打开时处于此状态说明上次压缩中途中断，整批事件可能已经提交
+    static final int STATE_COMPACTING = 1;
+
+    static final String EVENTS_FILE = "trigger-events.log";
+    static final String DESCRIPTIONS_FILE = "trigger-events.desc";
+
+    /**
+     * 日志中的一条事件
+     */
+    static final class Event {
+        final long id;          // 预留的数据库记录ID
+        final long habitId;
+        final long millis;
+        final String description;
+
+        Event(long id, long habitId, long millis, String description) {
+            this.id = id;
+            this.habitId = habitId;
+            this.millis = millis;
+            this.description = description;
+        }
+    }
+
+    private final RandomAccessFile eventsFile;
+    private final RandomAccessFile descriptionsFile;
+    private final MappedByteBuffer segment;
+    private final FileChannel descriptions;
+    private final int capacity;
+    private final List<Event> events = new ArrayList<>();
+    private long descriptionLength;
+    private boolean dirty;
+
+    /**
+     * 打开（或创建）目录中的日志并载入已提交的事件
+     * @param capacity 段能容纳的事件数
+     */
+    TriggerEventLog(File directory, int capacity) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录: " + directory);
+        }
+        this.capacity = capacity;
+        eventsFile = new RandomAccessFile(new File(directory, EVENTS_FILE), "rw");
+        descriptionsFile = new RandomAccessFile(new File(directory, DESCRIPTIONS_FILE), "rw");
+        segment = eventsFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * EVENT_SIZE);
+        descriptions = descriptionsFile.getChannel();
+
+        if (segment.getInt(0) != MAGIC || segment.getInt(4) != VERSION) {
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, VERSION);
+            writeHeader(0, STATE_IDLE, 0);
+            segment.force();
+        } else {
+            load();
+        }
+    }
+
+    private void load() throws IOException {
+        int count = Math.min(segment.getInt(OFFSET_COUNT), capacity);
+        descriptionLength = Math.min(segment.getLong(OFFSET_DESCRIPTION_LENGTH), descriptions.size());
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + i * EVENT_SIZE;
+            long id = segment.getLong(position);
+            long habitId = segment.getLong(position + 8);
+            long seconds = segment.getLong(position + 16);
+            long descriptionOffset = segment.getLong(position + 24);
+            events.add(new Event(id, habitId, seconds * 1000, readDescription(descriptionOffset)));
+        }
+    }
+
+    /**
+     * 追加一条事件，段已满时返回null（需要先压缩）
+     * @param id 在数据库中预留的记录ID
+     */
+    Event append(long id, long habitId, long millis, String description) throws IOException {
+        if (events.size() >= capacity) return null;
+
+        long descriptionOffset = -1;
+        if (description != null) {
+            byte[] utf8 = description.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + utf8.length);
+            buffer.putInt(utf8.length).put(utf8).flip();
+            descriptionOffset = descriptionLength;
+            while (buffer.hasRemaining()) {
+                descriptions.write(buffer, descriptionLength + buffer.position());
+            }
+            descriptionLength += 4 + utf8.length;
+        }
+
+        int position = HEADER_SIZE + events.size() * EVENT_SIZE;
+        segment.putLong(position, id);
+        segment.putLong(position + 8, habitId);
+        segment.putLong(position + 16, Math.floorDiv(millis, 1000));
+        segment.putLong(position + 24, descriptionOffset);
+
+        Event event = new Event(id, habitId, Math.floorDiv(millis, 1000) * 1000, description);
+        events.add(event);
+        // 事件写完后再更新段头，使其成为已提交的一部分
+        writeHeader(events.size(), segment.getInt(OFFSET_STATE), descriptionLength);
+        dirty = true;
+        return event;
+    }
+
+    /**
+     * 把未同步的事件和描述落盘（组提交）
+     */
+    void sync() throws IOException {
+        if (!dirty) return;
+        descriptions.force(false);
+        segment.force();
+        dirty = false;
+    }
+
+    /**
+     * 标记开始压缩并落盘
+     */
+    void markCompacting() throws IOException {
+        writeHeader(events.size(), STATE_COMPACTING, descriptionLength);
+        dirty = true;
+        sync();
+    }
+
+    boolean isCompacting() {
+        return segment.getInt(OFFSET_STATE) == STATE_COMPACTING;
+    }
+
+    /**
+     * 事件已全部写入数据库后清空日志
+     */
+    void reset() throws IOException {
+        events.clear();
+        descriptionLength = 0;
+        writeHeader(0, STATE_IDLE, 0);
+        descriptions.truncate(0);
+        dirty = true;
+        sync();
+    }
+
+    /**
+     * 当前所有事件（按追加顺序，只读视图由调用方负责不修改）
+     */
+    List<Event> getEvents() {
+        return events;
+    }
+
+    int size() {
+        return events.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        descriptionsFile.close();
+        eventsFile.close();
+    }
+
+    private void writeHeader(int count, int state, long descriptionLength) {
+        segment.putInt(OFFSET_COUNT, count);
+        segment.putInt(OFFSET_STATE, state);
+        segment.putLong(OFFSET_DESCRIPTION_LENGTH, descriptionLength);
+    }
+
+    private String readDescription(long offset) throws IOException {
+        if (offset < 0 || offset + 4 > descriptionLength) return null;
+
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(lengthBuffer, offset);
+        int length = lengthBuffer.getInt(0);
+        if (length < 0 || offset + 4 + length > descriptionLength) return null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(buffer, offset + 4);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (descriptions.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("描述文件不完整");
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.felix.countbadhabits.widget.BarChartView;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -55,7 +56,7 @@ public class ChartUtils {
                               "7月", "8月", "9月", "10月", "11月", "12月"};
         
         for (int i = 1; i <= 12; i++) {
-            String monthKey = String.format("%04d-%02d", year, i);
+            String monthKey = String.format(Locale.US, "%04d-%02d", year, i);
             Integer count = yearlyData.get(monthKey);
             if (count != null && count > 0) {
                 chartData.add(new BarChartView.ChartData(monthNames[i - 1], count));
@@ -2,6 +2,10 @@ package com.felix.countbadhabits.utils;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
@@ -15,6 +19,9 @@ public class DateUtils {
     public static final String DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
     public static final String DISPLAY_DATE_FORMAT = "MM月dd日";
     public static final String DISPLAY_MONTH_FORMAT = "yyyy年MM月";
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern(DATETIME_FORMAT, Locale.US);
 
     /**
      * 获取今日日期字符串
@@ -195,4 +202,62 @@ public class DateUtils {
         }
         return "";
     }
-}
\ No newline at end of file
+
+    /**
+     * 日期字符串（yyyy-MM-dd）转换为纪元日（距1970-01-01的天数）
+     */
+    public static long toEpochDay(String dateString) {
+        return LocalDate.parse(dateString).toEpochDay();
+    }
+
+    /**
+     * 指定年月日的纪元日
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    /**
+     * 今日的纪元日
+     */
+    public static long getTodayEpochDay() {
+        return LocalDate.now().toEpochDay();
+    }
+
+    /**
+     * 纪元日转换为日期字符串（yyyy-MM-dd）
+     */
+    public static String formatEpochDay(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    /**
+     * 日期时间字符串（yyyy-MM-dd HH:mm:ss）转换为本地毫秒数
+     * 本地毫秒数是把本地墙上时间按UTC解释得到的毫秒值，与时区无关，除以一天的毫秒数即为纪元日
+     */
+    public static long toLocalMillis(String dateTimeString) {
+        return LocalDateTime.parse(dateTimeString, DATETIME_FORMATTER).toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+
+    /**
+     * 本地毫秒数所在的纪元日
+     */
+    public static long epochDayOfLocalMillis(long localMillis) {
+        return Math.floorDiv(localMillis, MILLIS_PER_DAY);
+    }
+
+    /**
+     * 本地毫秒数转换为时间字符串（HH:mm）
+     */
+    public static String formatLocalMillisTime(long localMillis) {
+        int secondOfDay = (int) (Math.floorMod(localMillis, MILLIS_PER_DAY) / 1000);
+        return buildTimeString(secondOfDay / 3600, secondOfDay / 60 % 60);
+    }
+
+    /**
+     * 本地毫秒数转换为日期时间字符串（yyyy-MM-dd HH:mm:ss）
+     */
+    public static String formatLocalMillis(long localMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(localMillis, 1000), 0, ZoneOffset.UTC).format(DATETIME_FORMATTER);
+    }
+}
@@ -11,6 +11,12 @@ public class PreferenceUtils {
     private static final String KEY_CURRENT_HABIT_ID = "current_habit_id";
     private static final String KEY_CALENDAR_VIEW_MODE = "calendar_view_mode"; // true=月视图, false=周视图
     private static final String KEY_CHART_VIEW_MODE = "chart_view_mode"; // true=月统计, false=年统计
+    private static final String KEY_IMPORT_SOURCE = "import_source";       // 未完成导入的来源
+    private static final String KEY_IMPORT_PROCESSED = "import_processed"; // 该来源已提交的输入条数
+    private static final String KEY_EVENT_LOG_ENABLED = "event_log_enabled"; // 是否用追加日志记录新触发
+    private static final String KEY_RETENTION_MONTHS = "retention_months"; // 原始记录保留的月数，0表示永久保留
+    private static final String KEY_RETENTION_KEEP_DESCRIPTIONS = "retention_keep_descriptions"; // 归档时是否保留描述
+    private static final String KEY_QUERY_METRICS_ENABLED = "query_metrics_enabled"; // 是否统计DAO查询耗时
 
     private static SharedPreferences getPreferences(Context context) {
         return context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
@@ -64,6 +70,101 @@ public class PreferenceUtils {
         return getPreferences(context).getBoolean(KEY_CHART_VIEW_MODE, true);
     }
 
+    /**
+     * 保存是否启用追加日志存储（下次启动时生效）
+     */
+    public static void setEventLogEnabled(Context context, boolean enabled) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putBoolean(KEY_EVENT_LOG_ENABLED, enabled);
+        editor.apply();
+    }
+
+    /**
+     * 是否启用追加日志存储
+     */
+    public static boolean isEventLogEnabled(Context context) {
+        return getPreferences(context).getBoolean(KEY_EVENT_LOG_ENABLED, false);
+    }
+
+    /**
+     * 保存原始记录的保留期限（月），0表示永久保留
+     */
+    public static void setRetentionMonths(Context context, int months) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putInt(KEY_RETENTION_MONTHS, months);
+        editor.apply();
+    }
+
+    /**
+     * 获取原始记录的保留期限（月），0表示永久保留
+     */
+    public static int getRetentionMonths(Context context) {
+        return getPreferences(context).getInt(KEY_RETENTION_MONTHS, 0);
+    }
+
+    /**
+     * 保存归档时是否保留记录的时刻和描述
+     */
+    public static void setRetentionKeepDescriptions(Context context, boolean keep) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putBoolean(KEY_RETENTION_KEEP_DESCRIPTIONS, keep);
+        editor.apply();
+    }
+
+    /**
+     * 归档时是否保留记录的时刻和描述
+     */
+    public static boolean isRetentionKeepDescriptions(Context context) {
+        return getPreferences(context).getBoolean(KEY_RETENTION_KEEP_DESCRIPTIONS, true);
+    }
+
+    /**
+     * 保存是否统计DAO查询耗时
+     */
+    public static void setQueryMetricsEnabled(Context context, boolean enabled) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putBoolean(KEY_QUERY_METRICS_ENABLED, enabled);
+        editor.apply();
+    }
+
+    /**
+     * 是否统计DAO查询耗时
+     */
+    public static boolean isQueryMetricsEnabled(Context context) {
+        return getPreferences(context).getBoolean(KEY_QUERY_METRICS_ENABLED, false);
+    }
+
+    /**
+     * 保存导入进度（每提交一批记录后调用）
+     */
+    public static void setImportProgress(Context context, String source, long processed) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.putString(KEY_IMPORT_SOURCE, source);
+        editor.putLong(KEY_IMPORT_PROCESSED, processed);
+        editor.apply();
+    }
+
+    /**
+     * 获取某个来源上次中断时已提交的输入条数，没有未完成的导入时返回0
+     */
+    public static long getImportProgress(Context context, String source) {
+        SharedPreferences preferences = getPreferences(context);
+        if (!source.equals(preferences.getString(KEY_IMPORT_SOURCE, null))) {
+            return 0;
+        }
+        return preferences.getLong(KEY_IMPORT_PROCESSED, 0);
+    }
+
+    /**
+     * 清除导入进度（导入完成后调用）
+     */
+    public static void clearImportProgress(Context context) {
+        SharedPreferences.Editor editor = getPreferences(context).edit();
+        editor.remove(KEY_IMPORT_SOURCE);
+        editor.remove(KEY_IMPORT_PROCESSED);
+        editor.apply();
+    }
+
     /**
      * 清除所有偏好设置
      */
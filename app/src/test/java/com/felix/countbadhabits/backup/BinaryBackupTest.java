@@ -0,0 +1,234 @@
+package com.felix.countbadhabits.backup;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 二进制备份格式测试
+ * 用五年的合成数据做往返校验，并与CSV比较体积；编解码耗时的对比见 androidTest 中的 BackupFormatBenchmarkTest。
+ */
+public class BinaryBackupTest {
+    private static final int YEARS = 5;
+    private static final String[] DESCRIPTIONS = {null, "无具体描述", "饭后", "工作压力大", "和朋友一起", "睡前"};
+
+    @Test
+    public void roundTripPreservesHabitsAndRecords() throws IOException {
+        List<BadHabit> habits = createHabits();
+        List<long[]> records = createRecords(habits, new Random(42));
+
+        byte[] backup = writeBinary(habits, records);
+        List<Object[]> decoded = new ArrayList<>();
+        List<BadHabit> decodedHabits = new ArrayList<>();
+        long count = new BinaryBackupReader(new ByteArrayInputStream(backup)).read(new BinaryBackupReader.Visitor() {
+            @Override
+            public void visitHabits(List<BadHabit> list) {
+                decodedHabits.addAll(list);
+            }
+
+            @Override
+            public void visitRecord(long habitId, long triggerMillis, String description) {
+                decoded.add(new Object[]{habitId, triggerMillis, description});
+            }
+
+            @Override
+            public void visitArchivedCount(long habitId, long epochDay, int count) {
+                fail("没有写入归档计数");
+            }
+        });
+
+        assertEquals(records.size(), count);
+        assertEquals(habits.size(), decodedHabits.size());
+        for (int i = 0; i < habits.size(); i++) {
+            assertEquals(habits.get(i).getId(), decodedHabits.get(i).getId());
+            assertEquals(habits.get(i).getName(), decodedHabits.get(i).getName());
+            assertEquals(habits.get(i).getDailyLimit(), decodedHabits.get(i).getDailyLimit());
+            assertEquals(habits.get(i).getCreatedDate(), decodedHabits.get(i).getCreatedDate());
+            assertEquals(habits.get(i).isActive(), decodedHabits.get(i).isActive());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            long[] record = records.get(i);
+            assertEquals(record[0], decoded.get(i)[0]);
+            assertEquals(record[1], decoded.get(i)[1]);
+            assertEquals(DESCRIPTIONS[(int) record[2]], decoded.get(i)[2]);
+        }
+    }
+
+    @Test
+    public void archivedCountsFollowTheirHabitsRecords() throws IOException {
+        List<BadHabit> habits = createHabits();
+        long firstDay = DateUtils.toEpochDay(2019, 12, 30);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBackupWriter writer = new BinaryBackupWriter(out);
+        writer.writeHabits(habits);
+        writer.beginRecords(1);
+        writer.writeRecord(DateUtils.toLocalMillis("2020-02-01 08:00:00"), "饭后");
+        for (int i = 0; i < BinaryBackupWriter.RECORDS_PER_BLOCK + 10; i++) {
+            writer.writeArchivedCount(firstDay + i * 2, i % 7 + 1);
+        }
+        writer.endRecords();
+        writer.beginRecords(2);
+        writer.writeArchivedCount(DateUtils.toEpochDay(1969, 12, 31), 3);
+        writer.endRecords();
+        writer.finish();
+
+        List<long[]> counts = new ArrayList<>();
+        long records = new BinaryBackupReader(new ByteArrayInputStream(out.toByteArray())).read(
+                new BinaryBackupReader.Visitor() {
+                    @Override
+                    public void visitHabits(List<BadHabit> list) {
+                    }
+
+                    @Override
+                    public void visitRecord(long habitId, long triggerMillis, String description) {
+                    }
+
+                    @Override
+                    public void visitArchivedCount(long habitId, long epochDay, int count) {
+                        counts.add(new long[]{habitId, epochDay, count});
+                    }
+                });
+
+        assertEquals(1, records);
+        assertEquals(BinaryBackupWriter.RECORDS_PER_BLOCK + 11, counts.size());
+        for (int i = 0; i < BinaryBackupWriter.RECORDS_PER_BLOCK + 10; i++) {
+            assertArrayEquals(new long[]{1, firstDay + i * 2, i % 7 + 1}, counts.get(i));
+        }
+        assertArrayEquals(new long[]{2, -1, 3}, counts.get(counts.size() - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedSectionFailsChecksum() throws IOException {
+        List<BadHabit> habits = createHabits();
+        byte[] backup = writeBinary(habits, createRecords(habits, new Random(7)));
+        backup[backup.length / 2] ^= 0x10;
+
+        new BinaryBackupReader(new ByteArrayInputStream(backup)).read(new BinaryBackupReader.Visitor() {
+            @Override
+            public void visitHabits(List<BadHabit> list) {
+            }
+
+            @Override
+            public void visitRecord(long habitId, long triggerMillis, String description) {
+            }
+
+            @Override
+            public void visitArchivedCount(long habitId, long epochDay, int count) {
+            }
+        });
+    }
+
+    @Test
+    public void binaryIsSmallerThanCsv() throws IOException {
+        List<BadHabit> habits = createHabits();
+        List<long[]> records = createRecords(habits, new Random(42));
+        byte[] csv = writeCsv(habits, records);
+        byte[] binary = writeBinary(habits, records);
+
+        int csvRows = 0;
+        CsvReader reader = new CsvReader(new InputStreamReader(new ByteArrayInputStream(csv),
+                StandardCharsets.UTF_8));
+        reader.readRow();    // 表头
+        while (reader.readRow() != null) {
+            csvRows++;
+        }
+        long binaryRows = new BinaryBackupReader(new ByteArrayInputStream(binary)).read(new BinaryBackupReader.Visitor() {
+            @Override
+            public void visitHabits(List<BadHabit> list) {
+            }
+
+            @Override
+            public void visitRecord(long habitId, long triggerMillis, String description) {
+            }
+
+            @Override
+            public void visitArchivedCount(long habitId, long epochDay, int count) {
+            }
+        });
+
+        assertEquals(records.size(), csvRows);
+        assertEquals(records.size(), binaryRows);
+        assertTrue(binary.length * 4 < csv.length);
+    }
+
+    private static List<BadHabit> createHabits() {
+        return Arrays.asList(
+                new BadHabit(1, "抽烟", 5, "2020-01-01", true),
+                new BadHabit(2, "刷手机", 10, "2020-01-01", true),
+                new BadHabit(3, "熬夜", 1, "2021-06-15", false));
+    }
+
+    /**
+     * 每个习惯每天 0~dailyLimit+2 条记录，按习惯、时间排序；long[]{习惯ID, 本地毫秒数, 描述下标}
+     */
+    private static List<long[]> createRecords(List<BadHabit> habits, Random random) {
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        int days = YEARS * 365;
+        List<long[]> records = new ArrayList<>();
+        for (BadHabit habit : habits) {
+            for (long day = firstDay; day < firstDay + days; day++) {
+                int count = random.nextInt(habit.getDailyLimit() + 3);
+                long[] seconds = new long[count];
+                for (int i = 0; i < count; i++) {
+                    seconds[i] = day * 86400 + random.nextInt(86400);
+                }
+                Arrays.sort(seconds);
+                for (long second : seconds) {
+                    records.add(new long[]{habit.getId(), second * 1000, random.nextInt(DESCRIPTIONS.length)});
+                }
+            }
+        }
+        return records;
+    }
+
+    private static byte[] writeBinary(List<BadHabit> habits, List<long[]> records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryBackupWriter writer = new BinaryBackupWriter(out);
+        writer.writeHabits(habits);
+        long currentHabit = -1;
+        for (long[] record : records) {
+            if (record[0] != currentHabit) {
+                writer.beginRecords(record[0]);
+                currentHabit = record[0];
+            }
+            writer.writeRecord(record[1], DESCRIPTIONS[(int) record[2]]);
+        }
+        writer.endRecords();
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static byte[] writeCsv(List<BadHabit> habits, List<long[]> records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        DataExporter.writeCsvRow(writer, DataExporter.CSV_HEADER);
+        String[] row = new String[DataExporter.CSV_HEADER.length];
+        for (long[] record : records) {
+            BadHabit habit = habits.get((int) record[0] - 1);
+            row[0] = String.valueOf(habit.getId());
+            row[1] = habit.getName();
+            row[2] = String.valueOf(habit.getDailyLimit());
+            row[3] = DateUtils.formatLocalMillis(record[1]);
+            row[4] = DESCRIPTIONS[(int) record[2]];
+            row[5] = "1";
+            DataExporter.writeCsvRow(writer, row);
+        }
+        writer.flush();
+        return out.toByteArray();
+    }
+}
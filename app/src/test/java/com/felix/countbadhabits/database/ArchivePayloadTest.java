@@ -0,0 +1,62 @@
+package com.felix.countbadhabits.database;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 归档记录压缩格式测试
+ */
+public class ArchivePayloadTest {
+
+    @Test
+    public void roundTripSortsBySecondOfDay() throws IOException {
+        ArchivePayload payload = new ArchivePayload();
+        payload.add(43200, "午饭后");
+        payload.add(3600, null);
+        payload.add(43200, "");
+        payload.add(86399, "睡前，\n换行");
+
+        ArchivePayload decoded = ArchivePayload.decode(payload.encode());
+
+        assertEquals(4, decoded.size());
+        assertEquals(3600, decoded.getSecondOfDay(0));
+        assertNull(decoded.getDescription(0));
+        // 同一秒内保持加入顺序
+        assertEquals("午饭后", decoded.getDescription(1));
+        assertEquals("", decoded.getDescription(2));
+        assertEquals(86399, decoded.getSecondOfDay(3));
+        assertEquals("睡前，\n换行", decoded.getDescription(3));
+    }
+
+    @Test
+    public void mergedPayloadKeepsAllEntries() throws IOException {
+        ArchivePayload existing = new ArchivePayload();
+        existing.add(7200, "旧");
+        ArchivePayload added = new ArchivePayload();
+        added.add(60, "新");
+        added.addAll(ArchivePayload.decode(existing.encode()));
+
+        ArchivePayload decoded = ArchivePayload.decode(added.encode());
+        assertEquals(2, decoded.size());
+        assertEquals("新", decoded.getDescription(0));
+        assertEquals("旧", decoded.getDescription(1));
+    }
+
+    @Test
+    public void repeatedDescriptionsCompressWell() {
+        ArchivePayload payload = new ArchivePayload();
+        for (int i = 0; i < 20; i++) {
+            payload.add(i * 600, "饭后一支烟");
+        }
+        // 20条 × (8字节 + 15字节描述) 未压缩约460字节
+        assertTrue(payload.encode().length < 150);
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedPayloadIsRejected() throws IOException {
+        ArchivePayload.decode(new byte[]{1, 2, 3});
+    }
+}
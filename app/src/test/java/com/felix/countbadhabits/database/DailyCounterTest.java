@@ -0,0 +1,66 @@
+package com.felix.countbadhabits.database;
+
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 当日计数器测试：写事务中的增减在提交前只对写线程可见，回滚时丢弃
+ */
+public class DailyCounterTest {
+    private static final long HABIT_ID = 1;
+
+    private DailyCounter counter;
+    private long today;
+
+    @Before
+    public void setUp() {
+        counter = new DailyCounter();
+        today = DateUtils.getTodayEpochDay();
+    }
+
+    @Test
+    public void adjustmentsVisibleToReadersOnlyAfterCommit() {
+        assertEquals(-1, counter.peek(HABIT_ID, today));
+        assertEquals(3, counter.getOrLoad(HABIT_ID, today, () -> 3));
+
+        counter.adjust(HABIT_ID, today, 1);
+        counter.adjust(HABIT_ID, today, 1);
+        assertEquals(3, counter.peek(HABIT_ID, today));
+        assertEquals(5, counter.getOrLoad(HABIT_ID, today, () -> notLoaded()));
+
+        counter.commit();
+        assertEquals(5, counter.peek(HABIT_ID, today));
+        assertEquals(5, counter.getOrLoad(HABIT_ID, today, () -> notLoaded()));
+    }
+
+    @Test
+    public void rollbackDiscardsPendingAdjustments() {
+        counter.getOrLoad(HABIT_ID, today, () -> 3);
+        counter.adjust(HABIT_ID, today, -1);
+
+        counter.invalidateAll();
+        counter.commit();
+        assertEquals(-1, counter.peek(HABIT_ID, today));
+        assertEquals(3, counter.getOrLoad(HABIT_ID, today, () -> 3));
+    }
+
+    @Test
+    public void uncachedAndOtherDaysAreNotTracked() {
+        counter.adjust(HABIT_ID, today, 1);
+        counter.getOrLoad(HABIT_ID + 1, today, () -> 0);
+        counter.adjust(HABIT_ID + 1, today - 1, 1);
+        counter.commit();
+
+        assertEquals(-1, counter.peek(HABIT_ID, today));
+        assertEquals(0, counter.peek(HABIT_ID + 1, today));
+        assertEquals(-1, counter.peek(HABIT_ID + 1, today - 1));
+    }
+
+    private static int notLoaded() {
+        throw new AssertionError("计数已缓存，不应查库");
+    }
+}
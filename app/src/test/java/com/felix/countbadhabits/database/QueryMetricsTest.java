@@ -0,0 +1,93 @@
+package com.felix.countbadhabits.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 查询耗时统计测试：未启用时不记录、直方图分桶、分位数估算和慢查询环形缓冲区
+ */
+public class QueryMetricsTest {
+
+    @Before
+    public void setUp() {
+        QueryMetrics.reset();
+        QueryMetrics.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        QueryMetrics.setEnabled(false);
+        QueryMetrics.reset();
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        QueryMetrics.setEnabled(false);
+        long start = QueryMetrics.start();
+        QueryMetrics.setEnabled(true);
+        QueryMetrics.end("query", start, 10);
+
+        assertTrue(QueryMetrics.getStats().isEmpty());
+    }
+
+    @Test
+    public void bucketsDoubleInWidth() {
+        assertEquals(0, QueryMetrics.bucketOf(999));
+        assertEquals(1, QueryMetrics.bucketOf(1_000));
+        assertEquals(2, QueryMetrics.bucketOf(2_000));
+        assertEquals(2, QueryMetrics.bucketOf(3_999));
+        assertEquals(11, QueryMetrics.bucketOf(1_500_000));
+        assertEquals(QueryMetrics.BUCKET_COUNT - 1, QueryMetrics.bucketOf(Long.MAX_VALUE));
+        // 耗时总在所在桶的上限以内
+        for (long nanos = 0; nanos < 100_000_000L; nanos = nanos * 3 + 1) {
+            int bucket = QueryMetrics.bucketOf(nanos);
+            assertTrue(nanos / 1000 < QueryMetrics.bucketUpperMicros(bucket));
+            assertTrue(bucket == 0 || nanos / 1000 >= QueryMetrics.bucketUpperMicros(bucket - 1));
+        }
+    }
+
+    @Test
+    public void statsAccumulatePerQuery() {
+        for (int i = 0; i < 99; i++) {
+            QueryMetrics.end("fast", System.nanoTime(), 2);
+        }
+        QueryMetrics.end("fast", System.nanoTime() - 50_000_000L, 1);
+        QueryMetrics.end("other", System.nanoTime(), 0);
+
+        List<QueryMetrics.QueryStats> stats = QueryMetrics.getStats();
+        assertEquals(2, stats.size());
+        QueryMetrics.QueryStats fast = stats.get(0);
+        assertEquals("fast", fast.getQuery());
+        assertEquals(100, fast.getCount());
+        assertEquals(199, fast.getRows());
+        assertTrue(fast.getMaxNanos() >= 50_000_000L);
+        assertTrue(fast.percentileMicros(0.5) <= 1024);
+        assertTrue(fast.percentileMicros(1.0) > 50_000);
+    }
+
+    @Test
+    public void slowQueriesKeepMostRecent() {
+        long now = System.nanoTime();
+        QueryMetrics.end("fast", now, 1);
+        for (int i = 0; i < 40; i++) {
+            QueryMetrics.end("slow" + i, now - QueryMetrics.SLOW_QUERY_NANOS, i);
+        }
+
+        List<QueryMetrics.SlowQuery> slow = QueryMetrics.getSlowQueries();
+        assertEquals(32, slow.size());
+        assertEquals("slow39", slow.get(0).getQuery());
+        assertEquals("slow8", slow.get(31).getQuery());
+
+        StringWriter text = new StringWriter();
+        QueryMetrics.dump("", new PrintWriter(text, true));
+        assertTrue(text.toString().contains("slow39"));
+        assertTrue(text.toString().contains("fast: count=1"));
+    }
+}
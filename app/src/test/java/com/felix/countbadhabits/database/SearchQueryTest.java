@@ -0,0 +1,50 @@
+package com.felix.countbadhabits.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 搜索词到FTS4 MATCH表达式的转换，以及内存中按 unicode61 规则匹配的测试
+ */
+public class SearchQueryTest {
+
+    @Test
+    public void termsAreQuotedAndJoined() {
+        SearchQuery query = SearchQuery.parse("  饭后   coffee ");
+
+        assertFalse(query.isEmpty());
+        assertEquals("\"饭后\" \"coffee\"", query.exact());
+        assertEquals("\"饭后*\" \"coffee*\"", query.prefix());
+    }
+
+    @Test
+    public void ftsSyntaxIsNeutralized() {
+        SearchQuery query = SearchQuery.parse("\"work\" OR sl*eep NEAR (x)");
+
+        assertEquals("\"work\" \"OR\" \"sleep\" \"NEAR\" \"(x)\"", query.exact());
+    }
+
+    @Test
+    public void inputWithoutLettersIsEmpty() {
+        assertTrue(SearchQuery.parse(null).isEmpty());
+        assertTrue(SearchQuery.parse("   ").isEmpty());
+        assertTrue(SearchQuery.parse("* \"\" - ，").isEmpty());
+    }
+
+    @Test
+    public void matchesFollowsUnicode61Tokens() {
+        SearchQuery query = SearchQuery.parse("Café");
+        assertTrue(query.matches("饭后 cafe-time", false));
+        assertFalse(query.matches("cafeteria", false));
+        assertTrue(query.matches("cafeteria", true));
+        assertFalse(query.matches(null, true));
+
+        // 每个词都要出现，词内的多个部分须连续
+        SearchQuery phrase = SearchQuery.parse("late-night snack");
+        assertTrue(phrase.matches("Snack, LATE night", false));
+        assertFalse(phrase.matches("late snack at night", false));
+        assertTrue(SearchQuery.parse("饭后").matches("饭后咖啡", true));
+        assertFalse(SearchQuery.parse("饭后").matches("饭后咖啡", false));
+    }
+}
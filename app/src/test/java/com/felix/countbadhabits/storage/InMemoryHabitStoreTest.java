@@ -0,0 +1,232 @@
+package com.felix.countbadhabits.storage;
+
+import com.felix.countbadhabits.model.BadHabit;
+import com.felix.countbadhabits.model.StatisticsMatrix;
+import com.felix.countbadhabits.model.TriggerRecord;
+import com.felix.countbadhabits.utils.DateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 内存存储引擎测试
+ * 用暴力计数核对按天/按月统计和分页结果，以及五年数据上按月、按年统计的合计。
+ * 与SQLite实现的耗时对比见 androidTest 中的 StorageEngineBenchmarkTest。
+ */
+public class InMemoryHabitStoreTest {
+    private InMemoryHabitStore store;
+    private long habitId;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryHabitStore();
+        habitId = store.insertHabit(new BadHabit("抽烟", 5));
+    }
+
+    @Test
+    public void insertAssignsDailySequenceNumbers() {
+        TriggerRecord first = insert("2024-03-01 09:00:00", "饭后");
+        TriggerRecord second = insert("2024-03-01 08:00:00", null);
+        TriggerRecord nextDay = insert("2024-03-02 00:00:00", null);
+
+        assertEquals(1, first.getSequenceNumber());
+        assertEquals(2, second.getSequenceNumber());
+        assertEquals(1, nextDay.getSequenceNumber());
+        assertEquals(2, store.getRecordCountByDate(habitId, "2024-03-01"));
+
+        // 同一天内按时间升序返回
+        List<TriggerRecord> records = store.getRecordsByDate(habitId, "2024-03-01");
+        assertEquals(second.getId(), records.get(0).getId());
+        assertEquals(first.getId(), records.get(1).getId());
+        assertEquals("饭后", records.get(1).getDescription());
+    }
+
+    @Test
+    public void updateMovesRecordToAnotherDay() {
+        TriggerRecord record = insert("2024-03-01 09:00:00", null);
+        TriggerRecord moved = new TriggerRecord(record.getId(), habitId, "2024-03-05", "10:30",
+                "2024-03-05 10:30:00", "改了", record.getSequenceNumber());
+
+        assertEquals(1, store.updateRecord(moved));
+        assertEquals(0, store.getRecordCountByDate(habitId, "2024-03-01"));
+        assertEquals(1, store.getRecordCountByDate(habitId, "2024-03-05"));
+        assertEquals("改了", store.getRecordsByDate(habitId, "2024-03-05").get(0).getDescription());
+    }
+
+    @Test
+    public void deleteAndPermanentDeleteRemoveRecords() {
+        TriggerRecord record = insert("2024-03-01 09:00:00", null);
+        insert("2024-03-01 10:00:00", null);
+
+        assertEquals(1, store.deleteRecord(record.getId()));
+        assertEquals(0, store.deleteRecord(record.getId()));
+        assertEquals(1, store.getRecordCountByDate(habitId, "2024-03-01"));
+
+        assertEquals(1, store.permanentDeleteHabit(habitId));
+        assertEquals(0, store.getRecordCountByDate(habitId, "2024-03-01"));
+        assertEquals(-1, store.getDailyLimit(habitId));
+        assertTrue(store.getAllActiveHabits().isEmpty());
+    }
+
+    @Test
+    public void pendingDeleteRemovesRecordsInBatches() {
+        for (int i = 0; i < 25; i++) {
+            insert("2024-03-01 09:00:00", null);
+        }
+
+        assertEquals(25, store.markHabitPendingDelete(habitId));
+        assertTrue(store.getAllActiveHabits().isEmpty());
+        assertEquals(1, store.getPendingDeleteHabitIds().size());
+
+        int deleted = 0;
+        int batch;
+        while ((batch = store.deleteHabitRecords(habitId, 10)) > 0) {
+            assertTrue(batch <= 10);
+            deleted += batch;
+        }
+        assertEquals(25, deleted);
+        assertEquals(0, store.getRecordCountByDate(habitId, "2024-03-01"));
+
+        assertEquals(1, store.permanentDeleteHabit(habitId));
+        assertTrue(store.getPendingDeleteHabitIds().isEmpty());
+        assertEquals(-1, store.markHabitPendingDelete(habitId));
+    }
+
+    @Test
+    public void statisticsMatchBruteForceCounts() {
+        Map<String, Integer> expectedDaily = new HashMap<>();
+        Map<String, Integer> expectedMonthly = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            long day = DateUtils.toEpochDay(2023, 1, 1) + random.nextInt(730);
+            long millis = day * DateUtils.MILLIS_PER_DAY + random.nextInt(86400) * 1000L;
+            insert(DateUtils.formatLocalMillis(millis), null);
+            String date = DateUtils.formatEpochDay(day);
+            expectedDaily.merge(date, 1, Integer::sum);
+            expectedMonthly.merge(date.substring(0, 7), 1, Integer::sum);
+        }
+
+        for (int year = 2023; year <= 2024; year++) {
+            Map<String, Integer> yearly = store.getYearlyStatistics(habitId, year);
+            for (int month = 1; month <= 12; month++) {
+                String monthKey = String.format("%04d-%02d", year, month);
+                assertEquals(expectedMonthly.get(monthKey), yearly.get(monthKey));
+
+                Map<String, Integer> monthly = store.getMonthlyStatistics(habitId, year, month);
+                int days = LocalDate.of(year, month, 1).lengthOfMonth();
+                for (int day = 1; day <= days; day++) {
+                    String date = DateUtils.buildDateString(year, month, day);
+                    assertEquals(expectedDaily.get(date), monthly.get(date));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void statisticsMatrixMatchesPerHabitStatistics() {
+        long otherHabitId = store.insertHabit(new BadHabit("熬夜", 3));
+        long emptyHabitId = store.insertHabit(new BadHabit("空", 1));
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            long day = DateUtils.toEpochDay(2024, 1, 1) + random.nextInt(366);
+            String dateTime = DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY + random.nextInt(86400) * 1000L);
+            long target = i % 3 == 0 ? otherHabitId : habitId;
+            store.insertRecord(new TriggerRecord(0, target, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                    dateTime, null, 0));
+        }
+
+        // 行顺序与传入顺序一致，不要求ID有序
+        long[] habitIds = {otherHabitId, emptyHabitId, habitId};
+        StatisticsMatrix yearly = store.getYearlyStatistics(habitIds, 2024);
+        assertEquals(2, yearly.rowOf(habitId));
+        assertEquals(-1, yearly.rowOf(12345));
+        for (int row = 0; row < habitIds.length; row++) {
+            Map<String, Integer> expectedYearly = store.getYearlyStatistics(habitIds[row], 2024);
+            for (int month = 1; month <= 12; month++) {
+                Integer expected = expectedYearly.get(String.format("%04d-%02d", 2024, month));
+                assertEquals(expected == null ? 0 : expected, yearly.getCount(row, month - 1));
+
+                StatisticsMatrix monthly = store.getMonthlyStatistics(habitIds, 2024, month);
+                assertEquals(LocalDate.of(2024, month, 1).lengthOfMonth(), monthly.getBucketCount());
+                Map<String, Integer> expectedMonthly = store.getMonthlyStatistics(habitIds[row], 2024, month);
+                for (int day = 1; day <= monthly.getBucketCount(); day++) {
+                    expected = expectedMonthly.get(DateUtils.buildDateString(2024, month, day));
+                    assertEquals(expected == null ? 0 : expected, monthly.getCount(row, day - 1));
+                }
+            }
+        }
+        assertEquals(0, yearly.getRowTotal(1));
+        assertEquals(2000, yearly.getRowTotal(0) + yearly.getRowTotal(2));
+    }
+
+    @Test
+    public void pagesCoverRangeExactlyOnce() {
+        for (int i = 0; i < 250; i++) {
+            // 相同时间的记录靠ID区分先后
+            insert("2024-03-0" + (1 + i % 3) + " 12:00:00", null);
+        }
+
+        List<TriggerRecord> all = new ArrayList<>();
+        TriggerRecord after = null;
+        List<TriggerRecord> page;
+        do {
+            page = store.getRecordsPage(habitId, "2024-03-01", "2024-03-02", after, 40);
+            all.addAll(page);
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+        } while (page.size() == 40);
+
+        assertEquals(store.getRecordCountByDate(habitId, "2024-03-01")
+                + store.getRecordCountByDate(habitId, "2024-03-02"), all.size());
+        for (int i = 1; i < all.size(); i++) {
+            TriggerRecord a = all.get(i - 1);
+            TriggerRecord b = all.get(i);
+            int order = a.getTriggerDateTime().compareTo(b.getTriggerDateTime());
+            assertTrue(order < 0 || (order == 0 && a.getId() < b.getId()));
+        }
+    }
+
+    @Test
+    public void statisticsOverFiveYears() {
+        Random random = new Random(2);
+        long firstDay = DateUtils.toEpochDay(2020, 1, 1);
+        int inserted = 0;
+        for (long day = firstDay; day < firstDay + 5 * 365; day++) {
+            int count = random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                insert(DateUtils.formatLocalMillis(day * DateUtils.MILLIS_PER_DAY + i * 3_600_000L), null);
+            }
+            inserted += count;
+        }
+
+        int monthlyTotal = 0;
+        int yearlyTotal = 0;
+        for (int year = 2020; year <= 2024; year++) {
+            for (int month = 1; month <= 12; month++) {
+                for (int value : store.getMonthlyStatistics(habitId, year, month).values()) {
+                    monthlyTotal += value;
+                }
+            }
+            for (int value : store.getYearlyStatistics(habitId, year).values()) {
+                yearlyTotal += value;
+            }
+        }
+        assertEquals(inserted, monthlyTotal);
+        assertEquals(inserted, yearlyTotal);
+    }
+
+    private TriggerRecord insert(String dateTime, String description) {
+        TriggerRecord record = new TriggerRecord(0, habitId, dateTime.substring(0, 10), dateTime.substring(11, 16),
+                dateTime, description, 0);
+        store.insertRecord(record);
+        return record;
+    }
+}